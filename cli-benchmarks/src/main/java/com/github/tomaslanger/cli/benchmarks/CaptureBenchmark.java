@@ -0,0 +1,68 @@
+package com.github.tomaslanger.cli.benchmarks;
+
+import com.github.tomaslanger.cli.progress.ProgressBar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 64 threads logging to standard output, without a progress bar (plain synchronized print stream) and with a bar
+ * that captured the output and prints it live above itself.
+ * Everything is finally written to a stream discarding it, so we measure the capture and not the terminal.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dcliprogress.terminalRows=50")
+@Threads(64)
+public class CaptureBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Output {
+        @Param({"noBar", "liveBar"})
+        String mode;
+
+        PrintStream originalOut;
+        ProgressBar bar;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            originalOut = System.out;
+            System.setOut(Outputs.nullStream());
+            if ("liveBar".equals(mode)) {
+                bar = new ProgressBar.Builder().setLiveOutput(true).setFps(20).build();
+                //claims the null stream set above, replacing System.out with capture
+                bar.begin();
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            if (null != bar) {
+                bar.end();
+                bar = null;
+            }
+            System.setOut(originalOut);
+        }
+    }
+
+    @Benchmark
+    public void println(final Output output) {
+        System.out.println("Downloaded artifact com.github.tomas-langer.cli:cli-progress");
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.tomaslanger.cli.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Output targets for benchmarked progress bars.
+ */
+final class Outputs {
+    private Outputs() {
+    }
+
+    /**
+     * Print stream discarding everything, so we measure the progress bar and not the terminal.
+     *
+     * @return print stream writing nowhere
+     */
+    static PrintStream nullStream() {
+        return new PrintStream(new OutputStream() {
+            @Override
+            public void write(final int b) {
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+            }
+        });
+    }
+
+    /**
+     * Print stream discarding everything, counting written bytes.
+     *
+     * @param written counter of written bytes
+     * @return print stream writing nowhere
+     */
+    static PrintStream countingNullStream(final LongAdder written) {
+        return new PrintStream(new OutputStream() {
+            @Override
+            public void write(final int b) {
+                written.increment();
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+                written.add(len);
+            }
+        });
+    }
+
+    /**
+     * Print stream writing to a pipe of the operating system, read on the other end by a daemon thread (as a terminal
+     * or a process reading our output would), counting bytes written to the pipe. The pipe is closed with the stream.
+     *
+     * @param written counter of written bytes
+     * @return print stream writing to a pipe
+     */
+    static PrintStream pipe(final LongAdder written) {
+        Pipe pipe;
+        try {
+            pipe = Pipe.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Thread reader = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            try (Pipe.SourceChannel source = pipe.source()) {
+                while (source.read(buffer) >= 0) {
+                    buffer.clear();
+                }
+            } catch (IOException ignored) {
+                //pipe closed
+            }
+        }, "pipe-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        OutputStream sink = Channels.newOutputStream(pipe.sink());
+        return new PrintStream(new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                sink.write(b);
+                written.increment();
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                sink.write(b, off, len);
+                written.add(len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                sink.close();
+            }
+        });
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.tomaslanger.cli.benchmarks;
+
+import com.github.tomaslanger.cli.progress.ProgressBar;
+import com.github.tomaslanger.cli.progress.ProgressSpliterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parallel stream with a cheap operation per element on the common fork join pool, without progress and with
+ * {@link ProgressSpliterator} adding to a bar rendered in background. The difference is the overhead of progress.
+ * Meaningful on a machine with 8 or more cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelStreamBenchmark {
+    @Param({"10000000"})
+    private int size;
+
+    private List<Integer> items;
+    private ProgressBar bar;
+
+    @Setup(Level.Trial)
+    public void setUpItems() {
+        Integer[] array = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            array[i] = i;
+        }
+        items = Arrays.asList(array);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpBar() {
+        bar = new ProgressBar.Builder().setMax(Long.MAX_VALUE).setFps(20).build();
+        bar.begin(Outputs.nullStream());
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        bar.end();
+    }
+
+    private static long cheap(final Integer value) {
+        return value * 31L;
+    }
+
+    @Benchmark
+    public long noProgress() {
+        return items.parallelStream().mapToLong(ParallelStreamBenchmark::cheap).sum();
+    }
+
+    @Benchmark
+    public long progressSpliterator() {
+        return ProgressSpliterator.stream(items, bar, true).mapToLong(ParallelStreamBenchmark::cheap).sum();
+    }
+}
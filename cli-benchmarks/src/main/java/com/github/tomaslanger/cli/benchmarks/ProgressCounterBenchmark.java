@@ -0,0 +1,77 @@
+package com.github.tomaslanger.cli.benchmarks;
+
+import com.github.tomaslanger.cli.progress.ProgressBar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Many threads reporting progress of one bar: shared counter with synchronized {@link ProgressBar#setProgress(long)}
+ * compared to lock-free {@link ProgressBar#increment()} rendered in background.
+ * Run with different thread counts using -t (e.g. java -jar target/benchmarks.jar ProgressCounter -t 32).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class ProgressCounterBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SynchronizedBar {
+        final AtomicLong counter = new AtomicLong();
+        ProgressBar bar;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            counter.set(0);
+            bar = new ProgressBar.Builder().setMax(Long.MAX_VALUE).build();
+            bar.begin(Outputs.nullStream());
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            bar.end();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class BackgroundBar {
+        ProgressBar bar;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            bar = new ProgressBar.Builder().setMax(Long.MAX_VALUE).setFps(20).build();
+            bar.begin(Outputs.nullStream());
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            bar.end();
+        }
+    }
+
+    @Benchmark
+    public void sharedCounterSetProgress(final SynchronizedBar state) {
+        state.bar.setProgress(state.counter.incrementAndGet());
+    }
+
+    @Benchmark
+    public void increment(final BackgroundBar state) {
+        state.bar.increment();
+    }
+}
@@ -0,0 +1,175 @@
+package com.github.tomaslanger.cli.benchmarks;
+
+import com.github.tomaslanger.cli.progress.HeadlessMode;
+import com.github.tomaslanger.cli.progress.ProgressBar;
+import com.github.tomaslanger.cli.progress.ProgressBarMasterDetail;
+import com.github.tomaslanger.cli.progress.StatusLoc;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Render paths of in-place (plain and with a status template), batch and master/detail bars painted synchronously by
+ * the updating threads, and of a headless bar that paints nothing:
+ * <ul>
+ * <li>setProgressN - throughput of setProgress with 1, 4, 16 and 64 threads updating one bar</li>
+ * <li>millionUpdates - one million updates by a single thread, the "bytes" counter is the number of bytes written
+ * to the output for them, summed over measurement iterations (divide by the count)</li>
+ * </ul>
+ * Output goes to a stream discarding everything ("null") or to a pipe of the operating system read by another thread
+ * ("pipe"). Use -prof gc to see allocation per update, e.g.
+ * java -jar target/benchmarks.jar RenderBenchmark.setProgress1 -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+    private static final long MAX = 1_000_000;
+    private static final String STATUS = "Downloading file.zip";
+
+    @State(Scope.Benchmark)
+    public static class Bar {
+        @Param({"inPlace", "template", "batch", "masterDetail", "headless"})
+        String bar;
+
+        @Param({"null", "pipe"})
+        String output;
+
+        final AtomicLong progress = new AtomicLong();
+        final LongAdder written = new LongAdder();
+        PrintStream out;
+        ProgressBar progressBar;
+        ProgressBarMasterDetail masterDetail;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            progress.set(0);
+            written.reset();
+            out = "pipe".equals(output) ? Outputs.pipe(written) : Outputs.countingNullStream(written);
+
+            switch (bar) {
+                case "inPlace":
+                    progressBar = new ProgressBar.Builder().setMax(MAX).claimNoOuts().build();
+                    progressBar.begin(out);
+                    break;
+                case "template":
+                    progressBar = new ProgressBar.Builder()
+                            .setMax(MAX)
+                            .setStatusLocation(StatusLoc.SAME_LINE)
+                            .setStatusTemplate("{status:-24} {current:bytes:9}/{max:bytes} {rate:bytes:9}/s ETA {eta}")
+                            .claimNoOuts()
+                            .build();
+                    progressBar.begin(out);
+                    break;
+                case "batch":
+                    progressBar = new ProgressBar.Builder().setMax(MAX).setBatch().claimNoOuts().build();
+                    progressBar.begin(out);
+                    break;
+                case "headless":
+                    progressBar = new ProgressBar.Builder()
+                            .setMax(MAX)
+                            .setHeadless(HeadlessMode.SUMMARY)
+                            .claimNoOuts()
+                            .build();
+                    progressBar.begin(out);
+                    break;
+                case "masterDetail":
+                    masterDetail = new ProgressBarMasterDetail.Builder()
+                            .setMasterPbBuilder(new ProgressBar.Builder().setMax(MAX))
+                            .setChildPbBuilder(new ProgressBar.Builder())
+                            .claimNoOuts()
+                            .build();
+                    masterDetail.begin(out);
+                    masterDetail.nextTask(MAX, STATUS);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown bar " + bar);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            if (null == masterDetail) {
+                progressBar.end();
+            } else {
+                masterDetail.end();
+            }
+            out.close();
+            progressBar = null;
+            masterDetail = null;
+        }
+
+        void update() {
+            //progress wraps to zero after max, so the bar keeps painting
+            long value = progress.incrementAndGet() % (MAX + 1);
+            if (null == masterDetail) {
+                progressBar.setProgress(value, STATUS);
+            } else {
+                masterDetail.setProgress(value, STATUS);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Written {
+        public long bytes;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void setProgress1(final Bar state) {
+        state.update();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void setProgress4(final Bar state) {
+        state.update();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void setProgress16(final Bar state) {
+        state.update();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void setProgress64(final Bar state) {
+        state.update();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5, batchSize = 1)
+    @Threads(1)
+    public void millionUpdates(final Bar state, final Written written) {
+        long before = state.written.sum();
+        for (long i = 0; i < MAX; i++) {
+            state.update();
+        }
+        state.out.flush();
+        written.bytes += state.written.sum() - before;
+    }
+}
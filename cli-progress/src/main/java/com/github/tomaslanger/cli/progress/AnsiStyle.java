@@ -0,0 +1,102 @@
+package com.github.tomaslanger.cli.progress;
+
+import com.github.tomaslanger.chalk.Ansi;
+import com.github.tomaslanger.chalk.Chalk;
+
+import java.util.Set;
+
+/**
+ * Escape sequences of a color, background color and modifiers, computed once. Printing prefix, text and suffix
+ * is the same as printing the text chalked with the same codes, without creating a {@link Chalk} for each text.
+ */
+final class AnsiStyle {
+    //chalk a single marker character and split around it
+    private static final String MARKER = "\u0000";
+
+    private final String prefix;
+    private final String suffix;
+
+    private AnsiStyle(final String prefix, final String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    static AnsiStyle of(final Ansi.Color color, final Ansi.BgColor bgColor, final Set<Ansi.Modifier> modifiers) {
+        Chalk chalk = Chalk.on(MARKER);
+
+        if (null != color) {
+            chalk.apply(color);
+        }
+
+        if (null != bgColor) {
+            chalk.apply(bgColor);
+        }
+
+        for (final Ansi.Modifier modifier : modifiers) {
+            chalk.apply(modifier);
+        }
+
+        String chalked = chalk.toString();
+        int index = chalked.indexOf(MARKER);
+
+        return new AnsiStyle(chalked.substring(0, index), chalked.substring(index + 1));
+    }
+
+    /**
+     * Number of characters the text occupies on screen, ignoring ANSI escape sequences (such as colors added by
+     * {@link Chalk}).
+     *
+     * @param text text that may contain escape sequences
+     * @return number of printable characters
+     */
+    static int visibleLength(final String text) {
+        return visibleLength(text, 0, text.length());
+    }
+
+    /**
+     * Number of characters part of the text occupies on screen, see {@link #visibleLength(String)}.
+     *
+     * @param text  text that may contain escape sequences
+     * @param start index of the first character
+     * @param end   index after the last character
+     * @return number of printable characters
+     */
+    static int visibleLength(final CharSequence text, final int start, final int end) {
+        int length = 0;
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c == '\u001B' && i + 1 < end && text.charAt(i + 1) == '[') {
+                //control sequence: parameters and intermediate characters are terminated by a letter (or ~ etc.)
+                i += 2;
+                while (i < end && (text.charAt(i) < 0x40 || text.charAt(i) > 0x7E)) {
+                    i++;
+                }
+                i++;
+            } else {
+                length++;
+                i++;
+            }
+        }
+
+        return length;
+    }
+
+    String getPrefix() {
+        return prefix;
+    }
+
+    String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * Styled text. Allocates, so use only for texts that are cached.
+     *
+     * @param text text to style
+     * @return text wrapped in the escape sequences of this style
+     */
+    String apply(final String text) {
+        return prefix + text + suffix;
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When a batch progress bar flushes its output (see {@link ProgressBar.Builder#setBatchFlush(BatchFlush)}). Progress
+ * characters earned since the last flush are kept and written together as a single chunk, so a log on a network
+ * share (such as on a CI agent) gets a few bigger writes instead of one tiny write per character.
+ * The end of the bar is always written and flushed.
+ */
+public final class BatchFlush {
+    private static final BatchFlush EACH_CHANGE = new BatchFlush(1, 0);
+    private static final BatchFlush AT_END = new BatchFlush(0, 0);
+
+    private final int chars;
+    private final long nanos;
+
+    private BatchFlush(final int chars, final long nanos) {
+        this.chars = chars;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Flush when at least the number of progress characters is waiting. With 1 each change of the bar is flushed
+     * right away (the default).
+     *
+     * @param chars number of characters, at least 1
+     * @return flush policy
+     */
+    public static BatchFlush everyChars(final int chars) {
+        if (chars < 1) {
+            throw new IllegalArgumentException("Number of characters must be positive: " + chars);
+        }
+
+        return (chars == 1) ? EACH_CHANGE : new BatchFlush(chars, 0);
+    }
+
+    /**
+     * Flush characters waiting when the time passed since the last flush. The bar is rendered in background (see
+     * {@link ProgressBarBase.Builder#setFps(int)}, 10 frames per second unless set), so waiting characters are
+     * flushed when the interval expires even if the bar does not progress any more.
+     *
+     * @param millis interval in milliseconds, at least 1
+     * @return flush policy
+     */
+    public static BatchFlush everyMillis(final long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("Interval must be positive: " + millis);
+        }
+
+        return new BatchFlush(0, TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * Write the whole bar only when it ends (or is cancelled).
+     *
+     * @return flush policy
+     */
+    public static BatchFlush atEnd() {
+        return AT_END;
+    }
+
+    /**
+     * Whether characters waiting should be flushed now.
+     *
+     * @param waitingChars     number of progress characters not flushed yet
+     * @param nanosSinceFlush  nanoseconds since the last flush
+     * @return true to flush
+     */
+    boolean shouldFlush(final int waitingChars, final long nanosSinceFlush) {
+        if (chars > 0) {
+            return waitingChars >= chars;
+        }
+        if (nanos > 0) {
+            return waitingChars > 0 && nanosSinceFlush >= nanos;
+        }
+
+        return false;
+    }
+
+    /**
+     * Whether the time of flush needs to be tracked.
+     *
+     * @return true for time based policy
+     */
+    boolean isTimed() {
+        return nanos > 0;
+    }
+
+    /**
+     * Interval of time based policy.
+     *
+     * @return nanoseconds between flushes, 0 if not time based
+     */
+    long getNanos() {
+        return nanos;
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Output captured while a progress bar owns standard or error output. Keeps up to a limit in memory (see
+ * {@link #getMemoryLimit()}), the rest is written to a temporary file, that is deleted when the buffer is closed.
+ * If the temporary file cannot be created, output is kept in memory, as losing it would be worse.
+ */
+final class CaptureBuffer extends OutputStream {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int DEFAULT_MEMORY_LIMIT = 1024 * 1024;
+
+    private final int memoryLimit;
+    private final byte[] single = new byte[1];
+    private byte[] memory = new byte[0];
+    private int memorySize;
+    private FileChannel spill;
+    private long spilledBytes;
+    private boolean spillFailed;
+
+    CaptureBuffer() {
+        this(getMemoryLimit());
+    }
+
+    CaptureBuffer(final int memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Bytes kept in memory by each capture buffer, configured by system property "cliprogress.captureMemory",
+     * default is 1 MB.
+     *
+     * @return memory limit in bytes
+     */
+    static int getMemoryLimit() {
+        return Math.max(0, Integer.getInteger("cliprogress.captureMemory", DEFAULT_MEMORY_LIMIT));
+    }
+
+    @Override
+    public synchronized void write(final int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(final byte[] b, final int off, final int len) throws IOException {
+        int toMemory;
+        if (spillFailed) {
+            toMemory = len;
+        } else if (null == spill) {
+            toMemory = Math.min(len, memoryLimit - memorySize);
+        } else {
+            toMemory = 0;
+        }
+        if (toMemory > 0) {
+            ensureCapacity(toMemory);
+            System.arraycopy(b, off, memory, memorySize, toMemory);
+            memorySize += toMemory;
+        }
+
+        int rest = len - toMemory;
+        if (rest > 0) {
+            if (null == spill && !openSpill()) {
+                //keep it in memory rather than losing output
+                write(b, off + toMemory, rest);
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(b, off + toMemory, rest);
+            while (buffer.hasRemaining()) {
+                spill.write(buffer);
+            }
+            spilledBytes += rest;
+        }
+    }
+
+    private boolean openSpill() {
+        try {
+            Path file = Files.createTempFile("cli-progress", ".out");
+            spill = FileChannel.open(file,
+                                     StandardOpenOption.READ,
+                                     StandardOpenOption.WRITE,
+                                     StandardOpenOption.DELETE_ON_CLOSE);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            spillFailed = true;
+            return false;
+        }
+    }
+
+    private void ensureCapacity(final int toAdd) {
+        if (memorySize + toAdd > memory.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, memory.length * 2);
+            if (!spillFailed) {
+                capacity = Math.min(memoryLimit, capacity);
+            }
+            memory = Arrays.copyOf(memory, Math.max(capacity, memorySize + toAdd));
+        }
+    }
+
+    /**
+     * Number of bytes captured (in memory and in temporary file).
+     *
+     * @return captured bytes
+     */
+    synchronized long size() {
+        return memorySize + spilledBytes;
+    }
+
+    /**
+     * Number of bytes written to temporary file.
+     *
+     * @return spilled bytes
+     */
+    synchronized long spilledSize() {
+        return spilledBytes;
+    }
+
+    /**
+     * Write all captured bytes to the stream. The part in temporary file is transferred by the file channel,
+     * without reading it into heap.
+     *
+     * @param out stream to write to
+     * @throws IOException in case of failure of writing or reading the temporary file
+     */
+    synchronized void writeTo(final OutputStream out) throws IOException {
+        out.write(memory, 0, memorySize);
+        if (null != spill) {
+            out.flush();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = 0;
+            while (position < spilledBytes) {
+                position += spill.transferTo(position, spilledBytes - position, target);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Release the memory and delete the temporary file.
+     */
+    @Override
+    public synchronized void close() {
+        memory = new byte[0];
+        memorySize = 0;
+        spilledBytes = 0;
+        if (null != spill) {
+            try {
+                spill.close();
+            } catch (IOException ignored) {
+                //temporary file is deleted on close, nothing else to do
+            }
+            spill = null;
+        }
+    }
+}
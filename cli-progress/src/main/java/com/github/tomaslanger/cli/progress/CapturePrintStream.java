@@ -0,0 +1,204 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Print stream replacing standard or error output while a progress bar runs. Unlike {@link PrintStream}, it does not
+ * lock - each print is written as one record to the buffer of the current thread (see {@link ThreadCapture}), so
+ * threads printing at the same time do not wait for each other.
+ */
+final class CapturePrintStream extends PrintStream {
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(Charset.defaultCharset());
+
+    private final ThreadCapture capture;
+    private final boolean isErr;
+
+    CapturePrintStream(final ThreadCapture capture, final boolean isErr) {
+        //methods writing to the wrapped stream are all overridden, this is just in case
+        super(new CaptureOutputStream(capture, isErr), false);
+        this.capture = capture;
+        this.isErr = isErr;
+    }
+
+    private void print(final String s, final boolean newLine) {
+        byte[] bytes = String.valueOf(s).getBytes(Charset.defaultCharset());
+        capture.write(isErr, bytes, 0, bytes.length, newLine ? LINE_SEPARATOR : null);
+    }
+
+    @Override
+    public void write(final int b) {
+        capture.write(isErr, b);
+    }
+
+    @Override
+    public void write(final byte[] buf, final int off, final int len) {
+        capture.write(isErr, buf, off, len);
+    }
+
+    @Override
+    public void flush() {
+        //nothing is buffered in this stream
+    }
+
+    @Override
+    public void close() {
+        //replaced system streams are never closed
+    }
+
+    @Override
+    public boolean checkError() {
+        return false;
+    }
+
+    @Override
+    public void print(final boolean b) {
+        print(String.valueOf(b), false);
+    }
+
+    @Override
+    public void print(final char c) {
+        print(String.valueOf(c), false);
+    }
+
+    @Override
+    public void print(final int i) {
+        print(String.valueOf(i), false);
+    }
+
+    @Override
+    public void print(final long l) {
+        print(String.valueOf(l), false);
+    }
+
+    @Override
+    public void print(final float f) {
+        print(String.valueOf(f), false);
+    }
+
+    @Override
+    public void print(final double d) {
+        print(String.valueOf(d), false);
+    }
+
+    @Override
+    public void print(final char[] s) {
+        print(new String(s), false);
+    }
+
+    @Override
+    public void print(final String s) {
+        print(s, false);
+    }
+
+    @Override
+    public void print(final Object obj) {
+        print(String.valueOf(obj), false);
+    }
+
+    @Override
+    public void println() {
+        capture.write(isErr, LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+    }
+
+    @Override
+    public void println(final boolean x) {
+        print(String.valueOf(x), true);
+    }
+
+    @Override
+    public void println(final char x) {
+        print(String.valueOf(x), true);
+    }
+
+    @Override
+    public void println(final int x) {
+        print(String.valueOf(x), true);
+    }
+
+    @Override
+    public void println(final long x) {
+        print(String.valueOf(x), true);
+    }
+
+    @Override
+    public void println(final float x) {
+        print(String.valueOf(x), true);
+    }
+
+    @Override
+    public void println(final double x) {
+        print(String.valueOf(x), true);
+    }
+
+    @Override
+    public void println(final char[] x) {
+        print(new String(x), true);
+    }
+
+    @Override
+    public void println(final String x) {
+        print(x, true);
+    }
+
+    @Override
+    public void println(final Object x) {
+        print(String.valueOf(x), true);
+    }
+
+    @Override
+    public PrintStream format(final String format, final Object... args) {
+        print(String.format(format, args), false);
+        return this;
+    }
+
+    @Override
+    public PrintStream format(final Locale l, final String format, final Object... args) {
+        print(String.format(l, format, args), false);
+        return this;
+    }
+
+    @Override
+    public PrintStream append(final CharSequence csq) {
+        print(String.valueOf(csq), false);
+        return this;
+    }
+
+    @Override
+    public PrintStream append(final CharSequence csq, final int start, final int end) {
+        CharSequence cs = (null == csq) ? "null" : csq;
+        print(cs.subSequence(start, end).toString(), false);
+        return this;
+    }
+
+    @Override
+    public PrintStream append(final char c) {
+        print(String.valueOf(c), false);
+        return this;
+    }
+
+    /**
+     * Stream wrapped by the print stream, only used by methods of {@link PrintStream} not overridden above.
+     */
+    private static final class CaptureOutputStream extends OutputStream {
+        private final ThreadCapture capture;
+        private final boolean isErr;
+
+        private CaptureOutputStream(final ThreadCapture capture, final boolean isErr) {
+            this.capture = capture;
+            this.isErr = isErr;
+        }
+
+        @Override
+        public void write(final int b) {
+            capture.write(isErr, b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            capture.write(isErr, b, off, len);
+        }
+    }
+}
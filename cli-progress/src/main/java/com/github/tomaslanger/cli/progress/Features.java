@@ -20,6 +20,8 @@ public class Features {
         f.masterDetail(false);
         f.masterDetail(true);
 
+        f.group();
+
         f.replicateBowerSummary();
 
         //progress bars
@@ -39,8 +41,10 @@ public class Features {
 
         pb.begin();
         try {
+            //placeholders are expanded when painted, no need to create a status for each update
+            pb.setStatus("Downloading {progress} KB of {max} KB, {rate} KB/s, {eta} left");
             for (int i = 0; i <= 100; i++) {
-                pb.setProgress(i, "Downloading " + i + " KB of 100 KB");
+                pb.setProgress(i);
                 Thread.sleep(50);
             }
         } finally {
@@ -88,6 +92,38 @@ public class Features {
         pbmd.end();
     }
 
+    private void group() throws InterruptedException {
+        System.out.println();
+        System.out.println("***************************************************");
+        System.out.println("** Group of progress bars, parallel downloads    **");
+        System.out.println("***************************************************");
+        System.out.println();
+
+        ProgressBarGroup group = new ProgressBarGroup.Builder().setViewport(4).build();
+        group.begin();
+
+        ProgressBar[] bars = new ProgressBar[6];
+        for (int i = 0; i < bars.length; i++) {
+            bars[i] = group.add(new ProgressBar.Builder().setMax(100 * (i + 1)));
+        }
+
+        for (int step = 0; step < 100; step++) {
+            for (int i = 0; i < bars.length; i++) {
+                bars[i].add(i + 1);
+                bars[i].setStatus("Download " + i + ": " + (step + 1) * (i + 1) + " KB");
+            }
+            if (step == 60) {
+                bars[2].end();
+            }
+            Thread.sleep(30);
+        }
+
+        for (final ProgressBar bar : bars) {
+            bar.end();
+        }
+        group.end();
+    }
+
     private void replicateBowerSummary() {
         System.out.println();
         System.out.println("***************************************************");
@@ -137,6 +173,10 @@ public class Features {
         pb = new ProgressBar.Builder().setBatch().setBatchHeader(true).build();
         executeProgressingTask(pb, false);
 
+        System.out.println("Rendered in background, 10 frames per second:");
+        pb = new ProgressBar.Builder().setFps(10).build();
+        executeProgressingTask(pb, false);
+
         System.out.println("No percentage:");
         pb = new ProgressBar.Builder().disablePercents().build();
         executeProgressingTask(pb, false);
@@ -244,11 +284,13 @@ public class Features {
     private static void executeDifferentMax(final ProgressBar pb) {
         pb.begin();
         try {
-            for (int progress = 0; progress < pb.getMax(); progress += 1) {
-                pb.setProgress(progress, "Progress " + Chalk.on("at").yellow() + " " + progress);
+            for (long progress = 0; progress < pb.getMaxLong(); progress += 1) {
+                final long at = progress;
+                //status is built only when the bar is painted
+                pb.setProgress(progress, () -> "Progress " + Chalk.on("at").yellow() + " " + at);
                 Thread.sleep(20);
             }
-            pb.setProgress(pb.getMax(), "Progress " + Chalk.on("at").yellow() + " " + pb.getMax());
+            pb.setProgress(pb.getMaxLong(), "Progress " + Chalk.on("at").yellow() + " " + pb.getMaxLong());
         } catch (InterruptedException e) {
             System.err.println("Interrupted");
         } finally {
@@ -0,0 +1,214 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Reusable buffer to assemble a whole frame (cursor movements, bar, percentage and status) as bytes, so it can be
+ * written to the output with a single write and a single flush.
+ * Text is encoded with the default charset (same as {@link PrintStream} without explicit encoding), ASCII text
+ * is copied directly without an encoder. Not thread safe, each progress bar paints into its own buffer.
+ */
+final class FrameBuffer {
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private byte[] bytes;
+    private int size;
+
+    FrameBuffer(final int initialCapacity) {
+        this.bytes = new byte[initialCapacity];
+    }
+
+    /**
+     * Clear the buffer for the next frame. The allocated memory is kept.
+     */
+    void reset() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Whether this buffer holds the same bytes as another one (such as the frame that is on screen).
+     *
+     * @param other buffer to compare with
+     * @return true if the content is the same
+     */
+    boolean sameContent(final FrameBuffer other) {
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (bytes[i] != other.bytes[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    FrameBuffer append(final char c) {
+        if (c < 0x80) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) c;
+            return this;
+        }
+
+        return append(String.valueOf(c));
+    }
+
+    /**
+     * Append the same character multiple times (e.g. the remaining part of the bar, or padding spaces).
+     *
+     * @param c     character to append
+     * @param count how many times, nothing is appended for zero or negative count
+     * @return this buffer
+     */
+    FrameBuffer append(final char c, final int count) {
+        if (count <= 0) {
+            return this;
+        }
+        if (c < 0x80) {
+            ensureCapacity(count);
+            Arrays.fill(bytes, size, size + count, (byte) c);
+            size += count;
+            return this;
+        }
+
+        for (int i = 0; i < count; i++) {
+            append(c);
+        }
+        return this;
+    }
+
+    FrameBuffer append(final CharSequence text) {
+        if (null == text) {
+            return this;
+        }
+
+        return append(text, 0, text.length());
+    }
+
+    /**
+     * Append part of a text, without creating a substring.
+     *
+     * @param text  text to append
+     * @param start index of the first character to append
+     * @param end   index after the last character to append
+     * @return this buffer
+     */
+    FrameBuffer append(final CharSequence text, final int start, final int end) {
+        ensureCapacity(end - start);
+
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                //rest of the text needs an encoder
+                encode(text, i, end);
+                return this;
+            }
+            bytes[size++] = (byte) c;
+        }
+
+        return this;
+    }
+
+    /**
+     * Append bytes that are already encoded (such as output of other code printed with the frame).
+     *
+     * @param source array with bytes
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return this buffer
+     */
+    FrameBuffer append(final byte[] source, final int offset, final int length) {
+        ensureCapacity(length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+
+        return this;
+    }
+
+    /**
+     * Append decimal representation of a number, without creating a string.
+     *
+     * @param number number to append
+     * @return this buffer
+     */
+    FrameBuffer appendNumber(final long number) {
+        if (number < 0) {
+            if (number == Long.MIN_VALUE) {
+                return append(String.valueOf(number));
+            }
+            append('-');
+            return appendNumber(-number);
+        }
+
+        int digits = 1;
+        for (long rest = number / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+
+        long rest = number;
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = (byte) ('0' + (rest % 10));
+            rest /= 10;
+        }
+        size += digits;
+
+        return this;
+    }
+
+    private void encode(final CharSequence text, final int from, final int end) {
+        CharBuffer chars = CharBuffer.wrap(text, from, end);
+        encoder.reset();
+
+        boolean overflow;
+        do {
+            ByteBuffer target = ByteBuffer.wrap(bytes, size, bytes.length - size);
+            overflow = encoder.encode(chars, target, true).isOverflow();
+            size = target.position();
+            if (overflow) {
+                ensureCapacity(Math.max(16, chars.remaining() * 4));
+            }
+        } while (overflow);
+
+        do {
+            ByteBuffer target = ByteBuffer.wrap(bytes, size, bytes.length - size);
+            overflow = encoder.flush(target).isOverflow();
+            size = target.position();
+            if (overflow) {
+                ensureCapacity(16);
+            }
+        } while (overflow);
+    }
+
+    /**
+     * Write the frame with a single write and flush the stream.
+     *
+     * @param out stream to write to
+     * @return number of bytes written
+     */
+    int writeTo(final PrintStream out) {
+        out.write(bytes, 0, size);
+        out.flush();
+
+        return size;
+    }
+
+    private void ensureCapacity(final int toAdd) {
+        if (size + toAdd > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + toAdd));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.tomaslanger.cli.progress;
+
+/**
+ * Whether progress bars render anything. A headless bar only records progress and status, it does not replace
+ * outputs and does not paint - updates cost a volatile write.
+ */
+public enum HeadlessMode {
+    /**
+     * Headless with a summary line when the bar prints to standard output that is not a terminal (output is
+     * redirected to a file or a pipe), unless in batch environment. Bars started with a stream of their own
+     * are never headless.
+     */
+    AUTO,
+    /**
+     * Always render.
+     */
+    NEVER,
+    /**
+     * Headless, print a single summary line when the bar ends.
+     */
+    SUMMARY,
+    /**
+     * Headless, print nothing.
+     */
+    SILENT
+}
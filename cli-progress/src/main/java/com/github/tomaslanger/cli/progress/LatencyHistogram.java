@@ -0,0 +1,53 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with buckets by powers of two nanoseconds. Recording is a single atomic increment,
+ * percentiles are the upper bounds of buckets, so they are precise to a factor of two - good enough to see how
+ * long painting takes.
+ */
+final class LatencyHistogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private volatile long max;
+
+    void record(final long nanos) {
+        long value = Math.max(1, nanos);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value) - 1);
+        if (value > max) {
+            //only the render thread records, no need to compare and set
+            max = value;
+        }
+    }
+
+    /**
+     * Duration below which the given fraction of recorded durations are.
+     *
+     * @param fraction between 0 and 1, such as 0.99
+     * @return upper bound in nanoseconds, 0 if nothing was recorded
+     */
+    long percentile(final double fraction) {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            count += buckets.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long wanted = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= wanted) {
+                //values in bucket i are between 2^i and 2^(i+1) - 1
+                return Math.min(max, (i == 62) ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+            }
+        }
+        return max;
+    }
+
+    long getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Output written to replaced standard and error outputs, passed to the terminal while a progress bar runs
+ * (see {@link ProgressBar.Builder#setLiveOutput(boolean)}).
+ * Output is captured per thread (see {@link ThreadCapture}) and merged by the render thread. Complete lines are
+ * printed with the next frame of the bar with a single write. Memory is bounded - when a thread writes too much
+ * output before next frame, it asks for a frame right away and waits for it.
+ * <p>
+ * Lines of error output are printed with the frame only if both outputs are the same terminal, otherwise they are
+ * written to the original error output when the frame is painted (so {@code 2>err.log} still works).
+ */
+final class LiveOutput implements ThreadCapture.Target {
+    //longer lines are printed in parts
+    private static final int LINE_LIMIT = 64 * 1024;
+    private static final byte[] NEW_LINE = {'\n'};
+
+    private final ThreadCapture capture;
+    private final Line stdOut;
+    private final Line stdErr;
+
+    //complete lines (each terminated by new line) waiting for a frame, error lines share it when not separated
+    private final Pending pendingOut = new Pending();
+    private final Pending pendingErr;
+    //null if error lines are printed with the frame
+    private final PrintStream errors;
+    private final FrameBuffer errorFrame;
+
+    /**
+     * Create new live output.
+     *
+     * @param linesAvailable called when output was written since the last frame
+     * @param flushNow       called when output must be printed without waiting for the next frame
+     * @param errors         where to write lines of error output, null to print them with the frame (when both
+     *                       outputs are the same terminal)
+     */
+    LiveOutput(final Runnable linesAvailable, final Runnable flushNow, final PrintStream errors) {
+        this.capture = new ThreadCapture(this, linesAvailable, flushNow);
+        this.errors = errors;
+        this.pendingErr = (null == errors) ? pendingOut : new Pending();
+        this.errorFrame = (null == errors) ? null : new FrameBuffer(1024);
+        this.stdOut = new Line(pendingOut);
+        this.stdErr = new Line(pendingErr);
+    }
+
+    /**
+     * Capture writing to this output.
+     *
+     * @return capture to replace outputs with
+     */
+    ThreadCapture getCapture() {
+        return capture;
+    }
+
+    /**
+     * Number of bytes written to both outputs.
+     *
+     * @return written bytes
+     */
+    long size() {
+        return capture.size();
+    }
+
+    /**
+     * Append all complete lines written by all threads to the frame and remove them from here. Lines of error output
+     * are written to the error output instead, if separated (see {@link #LiveOutput(Runnable, Runnable, PrintStream)}).
+     *
+     * @param target      frame to write to
+     * @param lineByLine  if true, each line is prefixed with carriage return and new line instead of being
+     *                    terminated by it (so the last line does not scroll the screen), otherwise lines are
+     *                    appended as written
+     * @return true if any line was appended
+     */
+    boolean drainTo(final FrameBuffer target, final boolean lineByLine) {
+        //merge calls write of this instance, never lock this before merge
+        capture.merge();
+        if (null != errors) {
+            drainErrors();
+        }
+        synchronized (this) {
+            return pendingOut.drainTo(target, lineByLine);
+        }
+    }
+
+    private void drainErrors() {
+        synchronized (errorFrame) {
+            errorFrame.reset();
+            synchronized (this) {
+                if (!pendingErr.drainTo(errorFrame, false)) {
+                    return;
+                }
+            }
+            errorFrame.writeTo(errors);
+        }
+    }
+
+    /**
+     * Terminate incomplete lines, so they are printed with the next frame.
+     */
+    void completeLines() {
+        capture.merge();
+        synchronized (this) {
+            stdOut.complete();
+            stdErr.complete();
+        }
+    }
+
+    /**
+     * Merged output of a thread, called by {@link ThreadCapture#merge()} in order of writes.
+     */
+    @Override
+    public synchronized void write(final boolean isErr, final byte[] b, final int off, final int len) {
+        Line line = isErr ? stdErr : stdOut;
+        Pending pending = isErr ? pendingErr : pendingOut;
+
+        int lastNewLine = -1;
+        for (int i = off + len - 1; i >= off; i--) {
+            if (b[i] == '\n') {
+                lastNewLine = i;
+                break;
+            }
+        }
+
+        if (lastNewLine < 0) {
+            line.append(b, off, len);
+            return;
+        }
+
+        int lineEnd = lastNewLine + 1;
+        pending.add(line.bytes, 0, line.size);
+        line.size = 0;
+        pending.add(b, off, lineEnd - off);
+        line.append(b, lineEnd, off + len - lineEnd);
+    }
+
+    /**
+     * Complete lines waiting for a frame.
+     */
+    private static final class Pending {
+        private byte[] bytes = new byte[1024];
+        private int size;
+
+        private void add(final byte[] b, final int off, final int len) {
+            if (size + len > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + len));
+            }
+            System.arraycopy(b, off, bytes, size, len);
+            size += len;
+        }
+
+        private boolean drainTo(final FrameBuffer target, final boolean lineByLine) {
+            if (size == 0) {
+                return false;
+            }
+
+            if (lineByLine) {
+                int start = 0;
+                for (int i = 0; i < size; i++) {
+                    if (bytes[i] == '\n') {
+                        int end = (i > start && bytes[i - 1] == '\r') ? i - 1 : i;
+                        target.append('\r').append('\n');
+                        target.append(bytes, start, end - start);
+                        start = i + 1;
+                    }
+                }
+            } else {
+                target.append(bytes, 0, size);
+            }
+
+            size = 0;
+
+            return true;
+        }
+    }
+
+    /**
+     * Incomplete line of one of the outputs.
+     */
+    private static final class Line {
+        private final Pending pending;
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        private Line(final Pending pending) {
+            this.pending = pending;
+        }
+
+        private void append(final byte[] b, final int off, final int len) {
+            if (size + len > LINE_LIMIT) {
+                //a line this long is printed in parts
+                complete();
+            }
+            if (size + len > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + len));
+            }
+            System.arraycopy(b, off, bytes, size, len);
+            size += len;
+        }
+
+        private void complete() {
+            if (size == 0) {
+                return;
+            }
+            pending.add(bytes, 0, size);
+            pending.add(NEW_LINE, 0, 1);
+            size = 0;
+        }
+    }
+}
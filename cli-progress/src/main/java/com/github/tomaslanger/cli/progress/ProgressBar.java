@@ -3,9 +3,18 @@ package com.github.tomaslanger.cli.progress;
 import com.github.tomaslanger.chalk.Ansi;
 import com.github.tomaslanger.chalk.Chalk;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /**
  * ProgressBar allows you to print nice progressing colored bar to use in standard output console, as long
@@ -20,19 +29,53 @@ import java.util.Set;
  * @author Tomas Langer (tomas.langer@gmail.com)
  */
 public abstract class ProgressBar extends ProgressBarBase {
+    //frames per second of bars with live output, unless configured
+    private static final int LIVE_OUTPUT_FPS = 10;
+    private static final int JSON_FPS = 10;
+    private static final int BATCH_FPS = 10;
+    //summary line of headless bars
+    private static final String HEADLESS_SUMMARY = "{progress}/{max} ({percent}) in {elapsed}";
+    private static final String HEADLESS_CANCEL = "cancelled at {progress}/{max} ({percent}) after {elapsed}";
+
     protected final int charCount;
     protected final String beginString;
     protected final String endString;
     protected final char baseChar;
-    protected final int max;
+    protected final long max;
 
     protected char progressChar;
     protected Ansi.Color color;
     protected Ansi.BgColor bgColor;
     protected final Set<Ansi.Modifier> modifiers = EnumSet.noneOf(Ansi.Modifier.class);
 
-    protected int wantedProgress;
-    protected String wantedStatus;
+    //last absolute progress less additions counted when it was set - progress is this plus the sum of additions
+    protected volatile long wantedProgress;
+    protected volatile String wantedStatus;
+    //status built lazily when a frame is painted, replaces wantedStatus while set
+    private volatile Supplier<String> statusSupplier;
+    //last evaluated supplier and its value, guarded by this instance
+    private Supplier<String> evaluatedSupplier;
+    private String evaluatedStatus;
+    //relative progress (increment/add) from any number of threads, summed when painted
+    private final LongAdder added = new LongAdder();
+    //styled progress characters, computed once per style change
+    private volatile Fills fills;
+    private volatile int styleVersion;
+    //progress per second, sampled when painting
+    private final Throughput throughput = new Throughput();
+    //status with expanded placeholders, reused for each frame
+    private final StringBuilder expandedStatus = new StringBuilder();
+    //status (as set by user) of the last painted frame, read for monitoring
+    private volatile String paintedStatus;
+    //template of status line, null to show status as set
+    private final StatusTemplate statusTemplate;
+    private final String unit;
+    //compiled placeholders of the last status with placeholders, guarded by this instance
+    private StatusTemplate compiledStatus;
+    //statistics of painted frames
+    private volatile long framesPainted;
+    private volatile long bytesWritten;
+    private volatile int lastFrameBytes;
     private PrintStream sysOut;
 
     protected ProgressBar(Builder builder) {
@@ -48,6 +91,8 @@ public abstract class ProgressBar extends ProgressBarBase {
         this.bgColor = builder.bgColor;
         this.modifiers.addAll(builder.modifiers);
         this.max = builder.max;
+        this.unit = builder.unit;
+        this.statusTemplate = (null == builder.statusTemplate) ? null : StatusTemplate.compile(builder.statusTemplate, unit);
     }
 
     /**
@@ -60,6 +105,7 @@ public abstract class ProgressBar extends ProgressBarBase {
      */
     public void setProgressChar(final char progressChar) {
         this.progressChar = progressChar;
+        styleChanged();
     }
 
     /**
@@ -72,6 +118,7 @@ public abstract class ProgressBar extends ProgressBarBase {
      */
     public void setFgColor(final Ansi.Color color) {
         this.color = color;
+        styleChanged();
     }
 
     /**
@@ -84,6 +131,7 @@ public abstract class ProgressBar extends ProgressBarBase {
      */
     public void setBgColor(final Ansi.BgColor color) {
         this.bgColor = color;
+        styleChanged();
     }
 
     /**
@@ -97,14 +145,56 @@ public abstract class ProgressBar extends ProgressBarBase {
      */
     public void addModifier(final Ansi.Modifier modifier) {
         this.modifiers.add(modifier);
+        styleChanged();
     }
 
     protected void setOut(PrintStream out) {
         this.sysOut = out;
     }
 
+    /**
+     * Stream this bar prints to, when it owns the output.
+     *
+     * @return stream to print to
+     */
+    protected PrintStream getOut() {
+        return sysOut;
+    }
+
     protected abstract void printBarHeader(final PrintStream out);
 
+    private void styleChanged() {
+        fills = null;
+        styleVersion++;
+    }
+
+    /**
+     * Version of style of progress characters, changes each time color, background color, modifiers or progress
+     * character are modified.
+     *
+     * @return style version
+     */
+    protected int getStyleVersion() {
+        return styleVersion;
+    }
+
+    /**
+     * Progress characters styled with the current colors and modifiers, as a single styled segment.
+     * Cached until style is changed, so painting does not create any {@link Chalk}.
+     *
+     * @param count number of progress characters, between 0 and char count
+     * @return styled progress characters
+     */
+    protected String fill(final int count) {
+        Fills current = fills;
+        if (null == current) {
+            current = new Fills(AnsiStyle.of(color, bgColor, modifiers), progressChar, charCount);
+            fills = current;
+        }
+
+        return current.get(count);
+    }
+
     protected Chalk chalked(final String toChalk) {
         return chalked(Chalk.on(toChalk));
     }
@@ -134,66 +224,541 @@ public abstract class ProgressBar extends ProgressBarBase {
 
     /**
      * Set progress of this bar. This may or may not change the progress or percentage on screen, depends on
-     * {@link Builder#setMax(int)} and {@link Builder#setCharCount(int)}.
+     * {@link Builder#setMax(long)} and {@link Builder#setCharCount(int)}.
+     *
+     * @param progress Progress between 0 and {@link Builder#setMax(long)}.
+     */
+    public void setProgress(final long progress) {
+        super.checkSetProgress();
+
+        absoluteProgress(progress);
+        progressChanged();
+    }
+
+    /**
+     * Set progress of this bar, kept for callers compiled against int progress.
      *
-     * @param progress Progress between 0 and {@link Builder#setMax(int)}.
+     * @param progress Progress between 0 and {@link Builder#setMax(long)}.
+     * @deprecated use {@link #setProgress(long)}
      */
-    public synchronized void setProgress(final int progress) {
-        this.setProgress(progress, wantedStatus);
+    @Deprecated
+    public void setProgress(final int progress) {
+        setProgress((long) progress);
     }
 
     /**
      * Set status to be printed according to {@link Builder#setStatusLocation(StatusLoc)}. By default status
      * has same color as progress bar. It is not printed when running in batch environment.
+     * <p>
+     * Status may contain placeholders that are expanded each time the bar is painted, so callers do not need to
+     * build a new status on each update: {progress}, {max}, {percent}, {rate} (smoothed progress per second),
+     * {elapsed} and {eta} (estimated time until done), e.g. "Downloaded {progress} of {max} KB, {rate} KB/s, {eta}".
      *
      * @param status Status to print (may be colored using {@link com.github.tomaslanger.chalk.Chalk})
      */
-    public synchronized void setStatus(final String status) {
-        setProgress(wantedProgress, status);
+    public void setStatus(final String status) {
+        super.checkSetProgress();
+
+        this.wantedStatus = status;
+        this.statusSupplier = null;
+        progressChanged();
+    }
+
+    /**
+     * Set status built only when a frame is painted, see {@link #setProgress(long, Supplier)}. When the bar is painted
+     * synchronously (not in background, see {@link Builder#setFps(int)}), the status is painted right away, so the
+     * supplier is called right away.
+     *
+     * @param status supplier of status to print
+     */
+    public void setStatus(final Supplier<String> status) {
+        super.checkSetProgress();
+
+        if (!isRenderedInBackground() && !isHeadless()) {
+            setStatus(status.get());
+            return;
+        }
+        this.statusSupplier = status;
+        progressChanged();
     }
 
     /**
-     * Set progress and status of this bar. Combination of {@link #setProgress(int)} and {@link #setStatus(String)}.
+     * Set progress and status of this bar. Combination of {@link #setProgress(long)} and {@link #setStatus(String)}.
+     * When rendered in background (see {@link Builder#setFps(int)}), this only records the values, the bar
+     * is painted by the render thread.
      *
-     * @param progress progress Progress between 0 and {@link Builder#setMax(int)}.
+     * @param progress progress Progress between 0 and {@link Builder#setMax(long)}.
      * @param status   Status to print (may be colored using {@link com.github.tomaslanger.chalk.Chalk})
      */
-    public synchronized void setProgress(final int progress, final String status) {
+    public void setProgress(final long progress, final String status) {
         super.checkSetProgress();
 
         this.wantedStatus = status;
-        this.wantedProgress = progress;
+        this.statusSupplier = null;
+        absoluteProgress(progress);
+        progressChanged();
+    }
+
+    /**
+     * Set progress and status of this bar, kept for callers compiled against int progress.
+     *
+     * @param progress progress Progress between 0 and {@link Builder#setMax(long)}.
+     * @param status   Status to print (may be colored using {@link com.github.tomaslanger.chalk.Chalk})
+     * @deprecated use {@link #setProgress(long, String)}
+     */
+    @Deprecated
+    public void setProgress(final int progress, final String status) {
+        setProgress((long) progress, status);
+    }
+
+    /**
+     * Set progress and a status that is built only when a frame is painted - the supplier is called at most once
+     * per painted frame (and only for the last supplier set), not on each update, e.g.
+     * {@code setProgress(done, () -> "Copied " + file)}. When painted synchronously, a status supplied with progress
+     * is painted only together with changed progress (characters or percentage), otherwise the status on screen stays.
+     * The supplier is called by the painting thread.
+     *
+     * @param progress progress Progress between 0 and {@link Builder#setMax(long)}.
+     * @param status   supplier of status to print (may be colored using {@link com.github.tomaslanger.chalk.Chalk})
+     */
+    public void setProgress(final long progress, final Supplier<String> status) {
+        super.checkSetProgress();
+
+        this.statusSupplier = status;
+        absoluteProgress(progress);
+        progressChanged();
+    }
+
+    /**
+     * Replace whatever was added so far with absolute progress. The sum of additions is subtracted in a single volatile
+     * write, so readers never see a half applied progress, and additions concurrent with this are either replaced by
+     * it or added to it, never lost.
+     *
+     * @param progress absolute progress
+     */
+    private void absoluteProgress(final long progress) {
+        wantedProgress = progress - added.sum();
+    }
+
+    /**
+     * Set progress without requesting a frame, for bars painted by others (such as master row of a group).
+     *
+     * @param progress progress to show in the next painted frame
+     */
+    void recordProgress(final long progress) {
+        absoluteProgress(progress);
+    }
+
+    /**
+     * Set status without requesting a frame, for bars painted by others (such as detail of a master/detail bar).
+     *
+     * @param status status to show in the next painted frame
+     */
+    void recordStatus(final String status) {
+        wantedStatus = status;
+        statusSupplier = null;
+    }
+
+    /**
+     * Increase progress by one. Same as {@link #add(long)} with 1.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Increase progress by delta. This method can be safely called from many threads at once - the delta is added
+     * to a striped counter that is summed only when the bar is painted.
+     * It never blocks when rendered in background (see {@link Builder#setFps(int)}), otherwise the bar is painted
+     * synchronously as with {@link #setProgress(long)}.
+     * Additions concurrent with {@link #setProgress(long)} are either replaced by the absolute progress or added to it.
+     *
+     * @param delta progress to add to the current progress
+     */
+    public void add(final long delta) {
+        super.checkSetProgress();
+
+        added.add(delta);
+        progressChanged();
+    }
+
+    /**
+     * Current progress of this bar - last absolute progress plus all increments since, limited by max.
+     *
+     * @return progress between 0 and max
+     */
+    public long getProgress() {
+        return Math.min(max, wantedProgress + added.sum());
+    }
+
+    /**
+     * Current state of this bar with progress per second and estimated time to finish. Rate is an exponentially
+     * weighted moving average sampled when frames are painted and when snapshot is taken.
+     *
+     * @return snapshot of progress
+     */
+    @Override
+    public ProgressSnapshot getSnapshot() {
+        return snapshot(getProgress());
+    }
+
+    @Override
+    ProgressSnapshot readSnapshot() {
+        return peekSnapshot(throughput, getBeginNanos(), getProgress(), max);
+    }
 
-        if (!iOwnOutput) {
+    /**
+     * Status of the last painted frame with placeholders expanded from the given snapshot. Neither calls a status
+     * supplier nor touches buffers used for painting, so it can be called from any thread without the lock of this bar.
+     * Until a status is painted (e.g. when headless), the status set by user is used.
+     */
+    @Override
+    String getStatusText(final ProgressSnapshot snapshot) {
+        String status = paintedStatus;
+        if (null == status) {
+            status = wantedStatus;
+        }
+        if (!isLiveStatus(status)) {
+            return status;
+        }
+
+        StringBuilder text = new StringBuilder();
+        StatusPlaceholders.expand(status, text, snapshot);
+        return text.toString();
+    }
+
+    /**
+     * Status to paint in the current frame, as set by user (placeholders are not expanded). A status supplier is
+     * called here, once for each supplier set. Call while holding the lock of this bar.
+     *
+     * @return wanted status
+     */
+    protected String frameStatus() {
+        Supplier<String> supplier = statusSupplier;
+        if (null == supplier) {
+            return wantedStatus;
+        }
+        if (supplier != evaluatedSupplier) {
+            evaluatedStatus = supplier.get();
+            evaluatedSupplier = supplier;
+        }
+
+        return evaluatedStatus;
+    }
+
+    /**
+     * Whether a status supplier was set that was not called yet, so status of the next frame is not known without
+     * calling it (see {@link #frameStatus()}).
+     *
+     * @return true if there is a new status supplier
+     */
+    protected boolean isStatusSupplied() {
+        Supplier<String> supplier = statusSupplier;
+        return null != supplier && supplier != evaluatedSupplier;
+    }
+
+    private void clearStatus() {
+        wantedStatus = null;
+        statusSupplier = null;
+        evaluatedSupplier = null;
+        evaluatedStatus = null;
+    }
+
+    ProgressSnapshot snapshot(final long progress) {
+        return snapshot(throughput, getBeginNanos(), progress, max);
+    }
+
+    static ProgressSnapshot snapshot(final Throughput throughput, final long beginNanos, final long progress, final long max) {
+        throughput.sample(beginNanos, System.nanoTime(), progress);
+
+        return peekSnapshot(throughput, beginNanos, progress, max);
+    }
+
+    /**
+     * Snapshot with progress per second as last sampled, for monitoring - reading it has no effect on painted values.
+     *
+     * @param throughput measured progress per second
+     * @param beginNanos {@link System#nanoTime()} when the bar was started
+     * @param progress   current progress
+     * @param max        max progress
+     * @return snapshot
+     */
+    static ProgressSnapshot peekSnapshot(final Throughput throughput,
+                                         final long beginNanos,
+                                         final long progress,
+                                         final long max) {
+        long now = System.nanoTime();
+
+        return new ProgressSnapshot(progress,
+                                    max,
+                                    (0 == beginNanos) ? 0 : now - beginNanos,
+                                    throughput.getRate(),
+                                    throughput.etaNanos(progress, max));
+    }
+
+    /**
+     * Whether status contains placeholders, so it changes over time even without updates.
+     *
+     * @param status status text
+     * @return true if status must be expanded with {@link #statusText(String, long)}
+     */
+    protected static boolean isLiveStatus(final String status) {
+        return StatusPlaceholders.hasPlaceholders(status);
+    }
+
+    /**
+     * Status text to paint in a frame - the status with placeholders expanded. Call once per painted frame, as this
+     * samples the clock and progress per second.
+     *
+     * @param status   status as set by user
+     * @param progress progress painted in this frame
+     * @return text to paint
+     */
+    protected String statusText(final String status, final long progress) {
+        paintedStatus = status;
+        if (!isLiveStatus(status)) {
+            return status;
+        }
+
+        expandedStatus.setLength(0);
+        appendStatus(expandedStatus, status, progress);
+
+        return expandedStatus.toString();
+    }
+
+    /**
+     * Whether the status line changes over time even without updates - the status or the status template
+     * (see {@link Builder#setStatusTemplate(String)}) contain placeholders.
+     *
+     * @param status status text
+     * @return true if status line must be rendered for each frame
+     */
+    protected boolean isLiveStatusLine(final String status) {
+        return (null != statusTemplate && statusTemplate.isLive()) || isLiveStatus(status);
+    }
+
+    /**
+     * Append the status line to paint in a frame - the status template with status and values of this frame, or just
+     * the status with placeholders expanded. Nothing is allocated unless the status (with placeholders) changed.
+     * Call once per painted frame while holding the lock of this bar, as this samples the clock and progress per second.
+     *
+     * @param target   buffer to append to
+     * @param status   status as set by user
+     * @param progress progress painted in this frame
+     * @return false if there is no status line to show
+     */
+    protected boolean appendStatusLine(final StringBuilder target, final String status, final long progress) {
+        paintedStatus = status;
+        if (null == statusTemplate) {
+            return appendStatus(target, status, progress);
+        }
+
+        CharSequence statusText = status;
+        if (statusTemplate.hasStatus() && isLiveStatus(status)) {
+            expandedStatus.setLength(0);
+            appendStatus(expandedStatus, status, progress);
+            statusText = expandedStatus;
+        }
+        render(target, statusTemplate, statusText, progress);
+
+        return true;
+    }
+
+    private boolean appendStatus(final StringBuilder target, final String status, final long progress) {
+        if (null == status) {
+            return false;
+        }
+        if (!isLiveStatus(status)) {
+            target.append(status);
+            return true;
+        }
+
+        StatusTemplate compiled = compiledStatus;
+        if (null == compiled || !status.equals(compiled.getSource())) {
+            compiled = StatusTemplate.compile(status, unit);
+            compiledStatus = compiled;
+        }
+        render(target, compiled, null, progress);
+
+        return true;
+    }
+
+    private void render(final StringBuilder target,
+                        final StatusTemplate template,
+                        final CharSequence status,
+                        final long progress) {
+        long now = System.nanoTime();
+        long beginNanos = getBeginNanos();
+        throughput.sample(beginNanos, now, progress);
+
+        template.render(target,
+                        status,
+                        progress,
+                        max,
+                        (0 == beginNanos) ? 0 : now - beginNanos,
+                        throughput.getRate(),
+                        throughput.etaNanos(progress, max));
+    }
+
+    private void progressChanged() {
+        if (isHeadless()) {
+            return;
+        }
+        if (isRenderedInBackground()) {
+            markDirty();
             return;
         }
 
-        if (progress > max) {
-            setProgress(max);
-        } else {
-            printBar(sysOut, progress);
+        synchronized (this) {
+            if (iOwnOutput) {
+                printBar(sysOut, getProgress());
+            }
         }
     }
 
-    protected abstract void printBar(final PrintStream out, int progress);
+    protected abstract void printBar(final PrintStream out, long progress);
+
+    /**
+     * Record statistics of a painted frame. Called by implementations while holding the lock of this bar.
+     *
+     * @param bytes number of bytes written in this frame
+     */
+    protected void framePainted(final int bytes) {
+        Renderer.getInstance().framePainted(bytes);
+        framesPainted++;
+        bytesWritten += bytes;
+        lastFrameBytes = bytes;
+    }
+
+    /**
+     * Number of frames painted by this bar since it was built. Frames are counted only for renderers that assemble
+     * the whole frame before writing it (in-place bars, chunks written by batch bars).
+     *
+     * @return number of painted frames
+     */
+    public long getFramesPainted() {
+        return framesPainted;
+    }
+
+    /**
+     * Number of bytes written in all painted frames of this bar, see {@link #getFramesPainted()}.
+     *
+     * @return number of bytes
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Number of bytes written in the last painted frame, see {@link #getFramesPainted()}.
+     *
+     * @return number of bytes
+     */
+    public int getLastFrameBytes() {
+        return lastFrameBytes;
+    }
+
+    /**
+     * Part of scale that progress represents, such as number of characters or percents. Overflow safe for any
+     * progress and max.
+     *
+     * @param progress progress between 0 and max
+     * @param max      max progress
+     * @param scale    value of the whole (e.g. character count or 100)
+     * @return value between 0 and scale (inclusive)
+     */
+    protected static int fraction(final long progress, final long max, final int scale) {
+        if (progress >= max) {
+            return scale;
+        }
+        if (progress <= 0) {
+            return 0;
+        }
+        if (progress <= Long.MAX_VALUE / scale) {
+            return (int) ((progress * scale) / max);
+        }
+        //only for really huge numbers, precision of double is good enough for a progress bar (but never report done)
+        return Math.min(scale - 1, (int) (((double) progress / max) * scale));
+    }
+
+    @Override
+    protected synchronized void renderFrame() {
+        if (iOwnOutput) {
+            printBar(sysOut, getProgress());
+        }
+    }
 
     @Override
     protected void finishProgressBar(final boolean isCancel) {
+        ProgressBarGroup group = getGroup();
+        if (null != group) {
+            //the group prints the final state of this bar, so keep it
+            if (!isCancel) {
+                absoluteProgress(max);
+            }
+            group.rowFinished(this, getProgress());
+            return;
+        }
+
         if (iOwnOutput) {
             if (isCancel) {
+                //make sure the last recorded progress is on screen (no-op if already painted)
+                printBar(sysOut, getProgress());
                 printCancel(sysOut);
             } else {
-                setProgress(max);
+                printBar(sysOut, max);
                 printBarEnd(sysOut);
             }
         } else {
-            printBarHeader(System.out);
-            printBar(System.out, (isCancel ? wantedProgress : max));
-            printBarEnd(System.out);
+            printSummary(System.out, isCancel);
         }
 
-        wantedProgress = 0;
-        wantedStatus = null;
+        absoluteProgress(0);
+        clearStatus();
+    }
+
+    @Override
+    protected void finishHeadless(final boolean isCancel, final PrintStream out) {
+        long progress = isCancel ? getProgress() : max;
+        if (null != out) {
+            out.println(headlessSummary(statusText(frameStatus(), progress), isCancel, snapshot(progress)));
+        }
+        ProgressBarGroup group = getGroup();
+        if (null != group) {
+            group.rowFinished(this, progress);
+        }
+
+        absoluteProgress(0);
+        clearStatus();
+    }
+
+    /**
+     * Summary line printed when a headless bar ends, e.g. "Downloading: 100/100 (100%) in 0:05".
+     *
+     * @param status   status of the bar, may be null
+     * @param isCancel whether the bar was cancelled
+     * @param snapshot final state of the bar
+     * @return summary line
+     */
+    static String headlessSummary(final String status, final boolean isCancel, final ProgressSnapshot snapshot) {
+        StringBuilder line = new StringBuilder();
+        if (null != status && !status.isEmpty()) {
+            line.append(status).append(": ");
+        }
+        StatusPlaceholders.expand(isCancel ? HEADLESS_CANCEL : HEADLESS_SUMMARY, line, snapshot);
+        return line.toString();
+    }
+
+    /**
+     * Print the whole bar at once, when it could not be painted while progressing.
+     *
+     * @param out      stream to print to
+     * @param isCancel if true, print current progress, otherwise print finished bar
+     */
+    void printSummary(final PrintStream out, final boolean isCancel) {
+        printBarHeader(out);
+        printBar(out, (isCancel ? getProgress() : max));
+        printBarEnd(out);
     }
 
     @Override
@@ -205,10 +770,54 @@ public abstract class ProgressBar extends ProgressBarBase {
 
     protected abstract void printCancel(final PrintStream out);
 
-    public int getMax() {
+    /**
+     * Max progress of this bar.
+     *
+     * @return max progress
+     */
+    public long getMaxLong() {
         return max;
     }
 
+    /**
+     * Max progress of this bar, kept for callers compiled against int progress.
+     *
+     * @return max progress, {@link Integer#MAX_VALUE} if it is bigger
+     * @deprecated max may not fit an int, use {@link #getMaxLong()}
+     */
+    @Deprecated
+    public int getMax() {
+        return (int) Math.min(max, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Pre-rendered runs of progress characters for one style.
+     */
+    private static final class Fills {
+        private final AnsiStyle style;
+        private final char progressChar;
+        private final String[] texts;
+
+        private Fills(final AnsiStyle style, final char progressChar, final int charCount) {
+            this.style = style;
+            this.progressChar = progressChar;
+            this.texts = new String[charCount + 1];
+            this.texts[0] = "";
+        }
+
+        private String get(final int count) {
+            String text = texts[count];
+            if (null == text) {
+                char[] chars = new char[count];
+                Arrays.fill(chars, progressChar);
+                text = style.apply(new String(chars));
+                texts[count] = text;
+            }
+
+            return text;
+        }
+    }
+
     public static class Builder extends ProgressBarBase.Builder<ProgressBar.Builder> {
         /*
          * Common properties
@@ -222,26 +831,118 @@ public abstract class ProgressBar extends ProgressBarBase {
         private Ansi.BgColor bgColor = Ansi.BgColor.GREEN;
         private Set<Ansi.Modifier> modifiers = EnumSet.noneOf(Ansi.Modifier.class);
 
-        private int max = 100;
+        private long max = 100;
 
         /*
          * Batch properties
          */
         private boolean batchHeader = false;
+        private BatchFlush batchFlush = BatchFlush.everyChars(1);
 
         /*
          * In place properties
          */
         private boolean keepSingleColor = false;
         private boolean printPercents = true;
+        private boolean fullRepaint = Boolean.getBoolean("cliprogress.fullRepaint");
+        private boolean liveOutput = Boolean.getBoolean("cliprogress.liveOutput");
         private Ansi.Color statusColor;
         private Ansi.BgColor statusBgColor;
         private Set<Ansi.Modifier> statusModifiers = EnumSet.noneOf(Ansi.Modifier.class);
         private StatusLoc statusLocation = StatusLoc.FIRST_LINE;
+        private String statusTemplate;
+        private String unit;
+
+        /*
+         * JSON properties
+         */
+        private boolean jsonEvents = Boolean.getBoolean("cliprogress.json");
+        private String jsonName;
+        private long jsonInterval = Long.getLong("cliprogress.jsonInterval", 1000);
+        private int jsonPercentStep = Integer.getInteger("cliprogress.jsonPercentStep", 0);
 
         public Builder() {
         }
 
+        /**
+         * Write machine readable events instead of painting a bar - one JSON object per line for begin, progress,
+         * status change, task switch (of master/detail bar), end and cancel. Useful for CI logs and dashboards,
+         * write them to standard output or to a file (see {@link #begin(PrintStream)}).
+         * Default can be changed with system property cliprogress.json.
+         *
+         * @param jsonEvents true to write JSON lines
+         * @return Builder instance
+         */
+        public Builder setJsonEvents(final boolean jsonEvents) {
+            this.jsonEvents = jsonEvents;
+
+            return this;
+        }
+
+        public boolean isJsonEvents() {
+            return jsonEvents;
+        }
+
+        /**
+         * Name written in each JSON event, to tell events of different bars apart.
+         *
+         * @param jsonName name of the bar
+         * @return Builder instance
+         */
+        public Builder setJsonName(final String jsonName) {
+            this.jsonName = jsonName;
+
+            return this;
+        }
+
+        public String getJsonName() {
+            return jsonName;
+        }
+
+        /**
+         * Minimal time between two JSON progress (or status) events. Default is 1000 milliseconds (or value of system
+         * property cliprogress.jsonInterval), 0 to only use percent step (see {@link #setJsonPercentStep(int)}).
+         * If both are 0, each change is written. With an interval, events are written by the render thread (at 10
+         * frames per second unless set, see {@link #setFps(int)}), so the last change is written when the interval
+         * expires.
+         *
+         * @param millis milliseconds between events
+         * @return Builder instance
+         */
+        public Builder setJsonInterval(final long millis) {
+            if (millis < 0) {
+                throw new IllegalArgumentException("Interval must not be negative: " + millis);
+            }
+            this.jsonInterval = millis;
+
+            return this;
+        }
+
+        public long getJsonInterval() {
+            return jsonInterval;
+        }
+
+        /**
+         * Write a JSON progress event whenever percentage changed by this step, even if the interval (see
+         * {@link #setJsonInterval(long)}) did not pass yet. Default is 0 (or value of system property
+         * cliprogress.jsonPercentStep) - disabled.
+         *
+         * @param percentStep percent step between events, 0 to disable
+         * @return Builder instance
+         */
+        public Builder setJsonPercentStep(final int percentStep) {
+            if (percentStep < 0 || percentStep > 100) {
+                throw new IllegalArgumentException("Percent step must be between 0 and 100: " + percentStep);
+            }
+            this.jsonPercentStep = percentStep;
+
+            return this;
+        }
+
+        public int getJsonPercentStep() {
+            return jsonPercentStep;
+        }
+
         /**
          * Only valid for in-place progress bars (not for batch). Batch progress bars always keep different
          * colors if changed during progress.
@@ -260,6 +961,48 @@ public abstract class ProgressBar extends ProgressBarBase {
             return keepSingleColor;
         }
 
+        /**
+         * Only valid for in-place progress bars (not for batch). By default only the characters that changed are
+         * written (new progress characters, percentage and changed end of status), moving the cursor to their column.
+         * Set to true for terminals that do not support moving cursor to a column, to rewrite the whole bar each time.
+         * Default can be changed with system property cliprogress.fullRepaint.
+         *
+         * @param fullRepaint true to always rewrite the whole progress bar
+         * @return Builder instance
+         */
+        public Builder setFullRepaint(final boolean fullRepaint) {
+            this.fullRepaint = fullRepaint;
+
+            return this;
+        }
+
+        public boolean isFullRepaint() {
+            return fullRepaint;
+        }
+
+        /**
+         * Only valid for in-place progress bars (not for batch). By default anything printed to standard and error
+         * output while the bar runs is kept and printed when the bar ends. If set to true, it is printed while the bar
+         * runs above the bar - lines printed since last frame are written together with the next frame.
+         * If number of terminal rows is known (see system property cliprogress.terminalRows), the bar is pinned to
+         * the bottom of the terminal and output scrolls above it without repainting the bar, otherwise the bar is
+         * repainted below the printed lines.
+         * Live output is rendered in background, if frames per second are not configured, 10 are used.
+         * Default can be changed with system property cliprogress.liveOutput.
+         *
+         * @param liveOutput true to print output of others while the bar runs
+         * @return Builder instance
+         */
+        public Builder setLiveOutput(final boolean liveOutput) {
+            this.liveOutput = liveOutput;
+
+            return this;
+        }
+
+        public boolean isLiveOutput() {
+            return liveOutput;
+        }
+
         public StatusLoc getStatusLocation() {
             return statusLocation;
         }
@@ -281,6 +1024,43 @@ public abstract class ProgressBar extends ProgressBarBase {
             return this;
         }
 
+        /**
+         * Template of the status line of in-place progress bars, parsed once and rendered on each frame without
+         * creating garbage. Placeholders are {status} (status set on the bar), {current}, {max}, {percent}, {rate},
+         * {elapsed}, {eta} and {unit} (see {@link #setUnit(String)}). Options follow a colon - "bytes" prints
+         * current, max or rate in binary units (such as "1.5 MB"), a number sets fixed width (right aligned,
+         * left aligned if negative), e.g. "{status:-20} {current:bytes:9}/{max:bytes} {rate:bytes:9}/s ETA {eta}".
+         * Default is none - status is printed as set.
+         *
+         * @param statusTemplate template of status line
+         * @return Builder instance
+         */
+        public Builder setStatusTemplate(final String statusTemplate) {
+            this.statusTemplate = statusTemplate;
+
+            return this;
+        }
+
+        public String getStatusTemplate() {
+            return statusTemplate;
+        }
+
+        /**
+         * Unit of progress, replaces {unit} placeholder in status template and in status (such as "files").
+         *
+         * @param unit unit of progress
+         * @return Builder instance
+         */
+        public Builder setUnit(final String unit) {
+            this.unit = unit;
+
+            return this;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
         /**
          * If called, percentage will not be printed for in-place progress bars.
          *
@@ -300,15 +1080,77 @@ public abstract class ProgressBar extends ProgressBarBase {
          * Set the max progress of this bar. Used to calculate progress of the bar itself and to calculate percentage
          * of progress.
          *
-         * @param max max value that can be sent in {@link #setProgress(int)} or {@link #setProgress(int, String)}
+         * @param max max value that can be sent in {@link #setProgress(long)} or {@link #setProgress(long, String)}
          * @return Builder instance
          */
-        public Builder setMax(final int max) {
+        public Builder setMax(final long max) {
             this.max = max;
 
             return this;
         }
 
+        /**
+         * Set the max progress of this bar, kept for callers compiled against int progress.
+         *
+         * @param max max value that can be sent in {@link #setProgress(long)}
+         * @return Builder instance
+         * @deprecated use {@link #setMax(long)}
+         */
+        @Deprecated
+        public Builder setMax(final int max) {
+            return setMax((long) max);
+        }
+
+        /**
+         * Set the max progress of this bar to the size of a file in bytes, to track reading or writing it
+         * (see {@link ProgressInputStream}, {@link ProgressReadableChannel}).
+         *
+         * @param file file to get size of
+         * @return Builder instance
+         * @throws IOException in case size of the file cannot be read
+         */
+        public Builder setMax(final Path file) throws IOException {
+            return setMax(Files.size(file));
+        }
+
+        /**
+         * Set the max progress of this bar to the number of bytes remaining in a channel (from its current position
+         * to its size), to track reading it (see {@link ProgressReadableChannel}).
+         *
+         * @param channel channel to get size of
+         * @return Builder instance
+         * @throws IOException in case size or position of the channel cannot be read
+         */
+        public Builder setMax(final SeekableByteChannel channel) throws IOException {
+            return setMax(Math.max(0, channel.size() - channel.position()));
+        }
+
+        /**
+         * Set the max progress of this bar to the number of elements of a spliterator, if its size is known
+         * (see {@link ProgressSpliterator}). Otherwise max is not changed.
+         *
+         * @param spliterator spliterator to get size of
+         * @return Builder instance
+         */
+        public Builder setMax(final Spliterator<?> spliterator) {
+            long size = spliterator.getExactSizeIfKnown();
+            if (size >= 0) {
+                setMax(size);
+            }
+
+            return this;
+        }
+
+        /**
+         * Set the max progress of this bar to the number of elements of a collection (see {@link ProgressSpliterator}).
+         *
+         * @param collection collection to get size of
+         * @return Builder instance
+         */
+        public Builder setMax(final Collection<?> collection) {
+            return setMax(collection.size());
+        }
+
         /**
          * Set whether to print batch header or not. Batch header is a line indicating the width of the progress
          * bar, that is on the next line, so you can see how far the progress is.
@@ -326,6 +1168,18 @@ public abstract class ProgressBar extends ProgressBarBase {
             return this;
         }
 
+        /**
+         * Set when a batch progress bar flushes its output - every N progress characters, every T milliseconds or only
+         * at the end (see {@link BatchFlush}). Default flushes each change of the bar.
+         *
+         * @param batchFlush flush policy
+         * @return Builder instance
+         */
+        public Builder setBatchFlush(final BatchFlush batchFlush) {
+            this.batchFlush = batchFlush;
+            return this;
+        }
+
         /**
          * Number of characters of the progress bar (width of the bar).
          *
@@ -448,6 +1302,13 @@ public abstract class ProgressBar extends ProgressBarBase {
         }
 
         public ProgressBar build() {
+            if (jsonEvents) {
+                //changes skipped within the interval are written by the render thread when it expires
+                if (jsonInterval > 0 && getFps() == 0) {
+                    setFps(JSON_FPS);
+                }
+                return new ProgressBarJson(this);
+            }
             if (NO_COLOR) {
                 noColors();
             }
@@ -455,8 +1316,15 @@ public abstract class ProgressBar extends ProgressBarBase {
                 setStatusLocation(StatusLoc.SAME_LINE);
             }
             if (isBatch()) {
+                //timed flush is done by the render thread
+                if (batchFlush.isTimed() && getFps() == 0) {
+                    setFps(BATCH_FPS);
+                }
                 return new ProgressBarBatch(this);
             }
+            if (liveOutput && !ONE_LINE_ONLY && getFps() == 0) {
+                setFps(LIVE_OUTPUT_FPS);
+            }
 
             return new ProgressBarInPlace(this);
         }
@@ -465,6 +1333,10 @@ public abstract class ProgressBar extends ProgressBarBase {
             return batchHeader;
         }
 
+        public BatchFlush getBatchFlush() {
+            return batchFlush;
+        }
+
         public int getCharCount() {
             return charCount;
         }
@@ -497,9 +1369,19 @@ public abstract class ProgressBar extends ProgressBarBase {
             return modifiers;
         }
 
+        public long getMaxLong() {
+            return max;
+        }
 
+        /**
+         * Max progress, kept for callers compiled against int progress.
+         *
+         * @return max progress, {@link Integer#MAX_VALUE} if it is bigger
+         * @deprecated max may not fit an int, use {@link #getMaxLong()}
+         */
+        @Deprecated
         public int getMax() {
-            return max;
+            return (int) Math.min(max, Integer.MAX_VALUE);
         }
 
         public Ansi.Color getStatusColor() {
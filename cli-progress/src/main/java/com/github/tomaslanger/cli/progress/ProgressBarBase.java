@@ -2,8 +2,12 @@ package com.github.tomaslanger.cli.progress;
 
 import com.github.tomaslanger.chalk.Chalk;
 
+import javax.management.ObjectName;
 import java.io.PrintStream;
-import java.util.Map;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Shared stuff for all progress bars.
@@ -17,32 +21,77 @@ import java.util.Map;
 abstract class ProgressBarBase {
     protected static final boolean ONE_LINE_ONLY;
     protected static final boolean NO_COLOR;
+    //detected when the first bar is created, as it may start a process (see Terminal)
+    private static final boolean IS_TERMINAL;
 
     static {
         //initialize native if not yet done
         Chalk.on("init");
         ONE_LINE_ONLY = !Chalk.isCommandEnabled();
         NO_COLOR = !Chalk.isColorEnabled();
+        IS_TERMINAL = Terminal.isTerminal();
     }
 
     private final boolean claimStdout;
     private final boolean claimStderr;
+    private final boolean isBatchEnvironment;
+    private final HeadlessMode headlessMode;
+    private final boolean jmx;
+    //0 when painting synchronously in the updating thread, otherwise interval between frames of the render thread
+    final long frameNanos;
 
-    private boolean started;
+    private volatile boolean started;
     protected boolean iOwnOutput;
     private StreamHandler.Replace replace;
 
+    /*
+     * Background rendering state
+     */
+    private volatile boolean dirty;
+    //whether to paint without waiting for frame interval
+    private volatile boolean immediate;
+    //only accessed by render thread
+    long lastFrameNanos;
+    //group painting this bar as one of its rows, null for bars painting themselves
+    private volatile ProgressBarGroup group;
+    //System.nanoTime() when this bar was started
+    private volatile long beginNanos;
+    //bytes written to replaced outputs while this bar owned them, recorded when ended
+    private volatile long capturedBytes;
+    //whether this run is headless (see HeadlessMode)
+    private volatile boolean headless;
+    //where to print summary of a headless run, null to print nothing
+    private PrintStream headlessOut;
+    //name of the registered MBean while started, if JMX is enabled
+    private ObjectName mbeanName;
+
     protected ProgressBarBase(Builder builder) {
         this.claimStdout = builder.shouldClaimStdout();
         this.claimStderr = builder.shouldClaimStderr();
+        this.frameNanos = (builder.getFps() > 0) ? (TimeUnit.SECONDS.toNanos(1) / builder.getFps()) : 0;
+        this.isBatchEnvironment = builder.isBatch();
+        this.headlessMode = builder.getHeadless();
+        this.jmx = builder.isJmx();
     }
 
     public final synchronized void begin() {
+        if (null != group) {
+            //started by the group when added
+            return;
+        }
         if (started) {
             throw new IllegalStateException("Cannot start a started progress bar.");
         }
+        if (isHeadless(true)) {
+            beginHeadless(System.out);
+            return;
+        }
         //redirect out and error streams until progress finishes
-        this.replace = StreamHandler.replace(claimStdout, claimStderr, this::setOut);
+        this.replace = StreamHandler.replace(claimStdout,
+                                             claimStderr,
+                                             isLiveOutput() ? this::markDirty : null,
+                                             isLiveOutput() ? this::requestImmediateFrame : null,
+                                             this::setOut);
 
         switch(replace) {
             case IMPOSSIBLE:
@@ -54,12 +103,15 @@ abstract class ProgressBarBase {
                 break;
         }
 
+        beginNanos = System.nanoTime();
         if (iOwnOutput) {
             //print the progress bar header
             initProgressBar();
         }
 
         started = true;
+        startRendering();
+        registerMBean();
     }
 
     /**
@@ -70,14 +122,81 @@ abstract class ProgressBarBase {
         if (started) {
             throw new IllegalStateException("Cannot start a started progress bar.");
         }
+        if (isHeadless(false)) {
+            beginHeadless(out);
+            return;
+        }
         replace = StreamHandler.Replace.NOT_REPLACED;
         iOwnOutput = true;
 
         setOut(out);
+        beginNanos = System.nanoTime();
         initProgressBar();
 
         started = true;
+        startRendering();
+        registerMBean();
+    }
+
+    private boolean isHeadless(final boolean systemOut) {
+        switch (headlessMode) {
+            case SUMMARY:
+            case SILENT:
+                return true;
+            case AUTO:
+                return systemOut && isForTerminal() && !isBatchEnvironment && !IS_TERMINAL;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Whether output of this bar is meant for people looking at a terminal. If not, it is rendered even when
+     * standard output is not a terminal (see {@link HeadlessMode#AUTO}).
+     *
+     * @return true for bars painted for people
+     */
+    protected boolean isForTerminal() {
+        return true;
+    }
+
+    private void beginHeadless(final PrintStream out) {
+        replace = StreamHandler.Replace.NOT_REPLACED;
+        iOwnOutput = false;
+        headlessOut = (headlessMode == HeadlessMode.SILENT) ? null : out;
+        headless = true;
+        beginNanos = System.nanoTime();
+        started = true;
+        registerMBean();
+    }
+
+    private void registerMBean() {
+        if (jmx) {
+            mbeanName = ProgressMBeans.register(this);
+        }
+    }
+
+    private void unregisterMBean() {
+        ProgressMBeans.unregister(mbeanName);
+        mbeanName = null;
+    }
+
+    /**
+     * Whether this bar is started without rendering (see {@link HeadlessMode}). Updates of headless bars must only
+     * record the wanted state.
+     *
+     * @return true if nothing is painted
+     */
+    protected final boolean isHeadless() {
+        return headless;
+    }
 
+    /**
+     * Initialized elsewhere, just accept this channel. Each frame is written to the channel with a single write.
+     * @param channel Channel to use.
+     */
+    public final void begin(final WritableByteChannel channel) {
+        begin(new PrintStream(Channels.newOutputStream(channel), false));
     }
 
     /**
@@ -90,9 +209,16 @@ abstract class ProgressBarBase {
         if (!started) {
             return;
         }
+        if (headless) {
+            endHeadless(false);
+            return;
+        }
 
+        unregisterMBean();
+        stopRendering();
         finishProgressBar(false);
 
+        capturedBytes = StreamHandler.getCapturedBytes();
         StreamHandler.replaceBack(replace);
 
         iOwnOutput = false;
@@ -102,24 +228,220 @@ abstract class ProgressBarBase {
     /**
      * Cancel progress bar. Will do whatever must be done to finish and go to next line.
      */
-    public final void cancel() {
+    public final synchronized void cancel() {
         if (!started) {
             return;
         }
+        if (headless) {
+            endHeadless(true);
+            return;
+        }
 
+        unregisterMBean();
+        stopRendering();
         finishProgressBar(true);
+        capturedBytes = StreamHandler.getCapturedBytes();
         StreamHandler.replaceBack(replace);
 
         iOwnOutput = false;
         started = false;
     }
 
+    private void endHeadless(final boolean isCancel) {
+        unregisterMBean();
+        finishHeadless(isCancel, headlessOut);
+        headless = false;
+        headlessOut = null;
+        started = false;
+    }
+
+    /**
+     * Number of bytes written to standard and error outputs while this bar replaced them. These are printed when the
+     * bar ends. Once ended, the number captured during the last run is returned.
+     *
+     * @return captured bytes, zero if this bar did not replace outputs
+     */
+    public long getCapturedBytes() {
+        if (started && replace == StreamHandler.Replace.DONE) {
+            return StreamHandler.getCapturedBytes();
+        }
+        return capturedBytes;
+    }
+
     protected void checkSetProgress() {
         if (!started) {
             begin();
         }
     }
 
+    /**
+     * Whether updates are painted by the render thread (true) or synchronously by the updating thread (false).
+     *
+     * @return true if this bar is rendered in background
+     */
+    protected final boolean isRenderedInBackground() {
+        return frameNanos > 0 || null != group;
+    }
+
+    /**
+     * Record that the wanted state changed and a frame should be painted by the render thread.
+     * Only the first update after a frame is more than a volatile read.
+     */
+    protected final void markDirty() {
+        if (!dirty) {
+            dirty = true;
+            ProgressBarGroup myGroup = group;
+            if (null == myGroup) {
+                Renderer.getInstance().requestFrame();
+            } else {
+                myGroup.rowChanged(this);
+            }
+        }
+    }
+
+    /**
+     * Start this bar as a row of a group. The group paints it, so no streams are claimed.
+     *
+     * @param group group this bar belongs to
+     */
+    final synchronized void joinGroup(final ProgressBarGroup group) {
+        if (started) {
+            throw new IllegalStateException("Cannot add a started progress bar to a group.");
+        }
+        this.group = group;
+        //members of a headless group are headless too
+        ProgressBarBase groupBase = group;
+        this.headless = groupBase.headless;
+        this.headlessOut = groupBase.headlessOut;
+        this.replace = StreamHandler.Replace.NOT_REPLACED;
+        this.beginNanos = System.nanoTime();
+        this.started = true;
+        registerMBean();
+    }
+
+    /**
+     * Start the clock of a bar painted as a row of another bar without being begun itself (such as master of a
+     * composed master/detail bar), so elapsed time, rate and estimate in its status are measured.
+     *
+     * @param nanos begin of the painting bar, as {@link System#nanoTime()}
+     */
+    final void startClock(final long nanos) {
+        this.beginNanos = nanos;
+    }
+
+    final ProgressBarGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * Time when this bar was last started, as {@link System#nanoTime()}.
+     *
+     * @return nanos of begin
+     */
+    protected final long getBeginNanos() {
+        return beginNanos;
+    }
+
+    /**
+     * Ask the render thread to paint the next frame right away, not waiting for frame interval. Used when output of
+     * others waits to be printed and cannot wait any longer.
+     */
+    final void requestImmediateFrame() {
+        immediate = true;
+        dirty = true;
+        Renderer.getInstance().wakeUp();
+    }
+
+    /**
+     * Ask the render thread to paint a frame at the given time even if nothing changes until then, used by bars that
+     * skip changes in a frame (e.g. rate limited events) to paint them later. Call only from {@link #renderFrame()}
+     * of a bar rendered in background.
+     *
+     * @param nanos {@link System#nanoTime()} of the frame
+     */
+    protected final void renderFrameAt(final long nanos) {
+        lastFrameNanos = nanos - frameNanos;
+        markDirty();
+    }
+
+    final boolean isImmediate() {
+        return immediate;
+    }
+
+    final boolean isDirty() {
+        return dirty;
+    }
+
+    final void clearDirty() {
+        dirty = false;
+        immediate = false;
+    }
+
+    /**
+     * Whether output of others should be printed while this bar runs (passed through with the next frame), instead
+     * of being kept until the end.
+     *
+     * @return true to pass output through
+     */
+    protected boolean isLiveOutput() {
+        return false;
+    }
+
+    /**
+     * Paint the current wanted state. Called from the render thread for bars rendered in background.
+     */
+    protected void renderFrame() {
+    }
+
+    private void startRendering() {
+        if (isRenderedInBackground()) {
+            Renderer.getInstance().register(this);
+        }
+    }
+
+    private void stopRendering() {
+        if (isRenderedInBackground()) {
+            Renderer.getInstance().unregister(this);
+            dirty = false;
+        }
+    }
+
+    /**
+     * Current state of this bar.
+     *
+     * @return snapshot of progress
+     */
+    public abstract ProgressSnapshot getSnapshot();
+
+    /**
+     * Current state of this bar for monitoring. Unlike {@link #getSnapshot()} progress per second is not sampled, so
+     * reading this has no effect on values painted.
+     *
+     * @return snapshot of progress
+     */
+    ProgressSnapshot readSnapshot() {
+        return getSnapshot();
+    }
+
+    /**
+     * Current status for monitoring, must not call user code or use buffers of the painting thread.
+     *
+     * @param snapshot state to expand placeholders of the status from
+     * @return status text, null if none
+     */
+    String getStatusText(final ProgressSnapshot snapshot) {
+        return null;
+    }
+
+    /**
+     * Finish a headless run of this bar (see {@link HeadlessMode}).
+     *
+     * @param isCancel whether cancelled
+     * @param out      stream to print a summary line to, null to print nothing
+     */
+    protected void finishHeadless(final boolean isCancel, final PrintStream out) {
+    }
+
     /**
      * Finish this progress bar and all associated stuff.
      * @param isCancel If set to true, do not change progress. If false, set progress to max
@@ -144,14 +466,18 @@ abstract class ProgressBarBase {
         private boolean isBatch;
         private boolean claimStdout = true;
         private boolean claimStderr = true;
+        private int fps;
+        private HeadlessMode headless;
+        private boolean jmx = Boolean.getBoolean("cliprogress.jmx");
 
         protected Builder() {
-            this.isBatch = Boolean.getBoolean("cliprogress.isBatch");
             //If we are in jenkins or hudson, use batch by default
-            Map<String, String> env = System.getenv();
-            if (env.containsKey("HUDSON_URL") || env.containsKey("JENKINS_URL")) {
-                this.isBatch = true;
-            }
+            this.isBatch = Boolean.getBoolean("cliprogress.isBatch") || Terminal.isCi();
+            this.fps = Integer.getInteger("cliprogress.fps", 0);
+            String headlessProperty = System.getProperty("cliprogress.headless");
+            this.headless = (null == headlessProperty)
+                    ? HeadlessMode.AUTO
+                    : HeadlessMode.valueOf(headlessProperty.trim().toUpperCase(Locale.ENGLISH));
         }
 
         /**
@@ -201,6 +527,65 @@ abstract class ProgressBarBase {
             return (T) this;
         }
 
+        /**
+         * Render in background at most fps frames per second. Updates then only record the wanted progress and status
+         * and a single daemon render thread repaints all such bars, so frequent updates are cheap.
+         * Default is 0 (or value of system property cliprogress.fps), in which case each update paints synchronously.
+         *
+         * @param fps frames per second, 0 to paint synchronously
+         * @return Builder instance
+         */
+        public T setFps(final int fps) {
+            if (fps < 0) {
+                throw new IllegalArgumentException("Frames per second must not be negative: " + fps);
+            }
+            this.fps = fps;
+
+            return (T) this;
+        }
+
+        public int getFps() {
+            return fps;
+        }
+
+        /**
+         * Set whether to render at all. Headless bars only record progress, so updates are almost free, and print
+         * a summary line when ended (or nothing).
+         * Default is {@link HeadlessMode#AUTO} (or value of system property cliprogress.headless) - headless when
+         * standard output is not a terminal.
+         *
+         * @param headless headless mode
+         * @return Builder instance
+         */
+        public T setHeadless(final HeadlessMode headless) {
+            this.headless = headless;
+
+            return (T) this;
+        }
+
+        public HeadlessMode getHeadless() {
+            return headless;
+        }
+
+        /**
+         * Register the bar as an MBean while it runs (see {@link ProgressBarMXBean}), together with metrics of
+         * rendering (see {@link RendererMXBean}), so it can be watched with JConsole or a JMX scraper.
+         * Default is false (or value of system property cliprogress.jmx). Updates cost the same either way, values
+         * are read when asked for.
+         *
+         * @param jmx true to register
+         * @return Builder instance
+         */
+        public T setJmx(final boolean jmx) {
+            this.jmx = jmx;
+
+            return (T) this;
+        }
+
+        public boolean isJmx() {
+            return jmx;
+        }
+
         boolean isBatch() {
             return isBatch;
         }
@@ -1,9 +1,14 @@
 package com.github.tomaslanger.cli.progress;
 
 import java.io.PrintStream;
+import java.util.Arrays;
 
 /**
  * Batch progress bar.
+ * <p>
+ * Each run of newly earned progress characters is appended as a single pre-styled segment and written in chunks
+ * as configured with {@link ProgressBar.Builder#setBatchFlush(BatchFlush)}. Header, base characters and end of the bar
+ * are built once.
  *
  * User: Tomas.Langer
  * Date: 20.12.2015
@@ -12,73 +17,119 @@ import java.io.PrintStream;
  * @author Tomas Langer (tomas.langer@gmail.com)
  */
 class ProgressBarBatch extends ProgressBar {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
     protected final boolean batchHeader;
 
+    private final BatchFlush flush;
+    //base characters of the whole bar, header and the rest of a cancelled bar are parts of it
+    private final String baseChars;
+    private final String header;
+
+    /*
+     * Only accessed when painting (holding the lock of this instance)
+     */
+    private final FrameBuffer chunk = new FrameBuffer(64);
     private int printedChars;
+    private int waitingChars;
+    private long flushedNanos;
     private boolean isBeginStringPrinted;
+    //last characters are written together with the end
+    private boolean isFinishing;
 
     protected ProgressBarBatch(final Builder builder) {
         super(builder);
         this.batchHeader = builder.isBatchHeader();
+        this.flush = builder.getBatchFlush();
+
+        char[] chars = new char[charCount];
+        Arrays.fill(chars, baseChar);
+        this.baseChars = new String(chars);
+        this.header = beginString + baseChars + endString;
     }
 
     @Override
     protected void printBarHeader(final PrintStream out) {
         if (batchHeader) {
-            out.print(beginString);
-
-            for (int i = 0; i < charCount; i++) {
-                out.print(baseChar);
-            }
-            out.print(endString);
-            out.flush();
+            chunk.append(header);
+            write(out);
         }
     }
 
-
     @Override
-    protected void printBar(final PrintStream out, final int progress) {
-        int shouldPrintChars = (progress * charCount) / max;
+    protected void printBar(final PrintStream out, final long progress) {
+        int shouldPrintChars = fraction(progress, max, charCount);
 
         if (printedChars == 0 && !isBeginStringPrinted) {
             if (batchHeader) {
-                out.println();
+                chunk.append(LINE_SEPARATOR);
             }
-            out.print(beginString);
+            chunk.append(beginString);
 
             isBeginStringPrinted = true;
-            out.flush();
-        }
-
-        if (shouldPrintChars == printedChars) {
-            return;
+            if (flush.isTimed()) {
+                flushedNanos = System.nanoTime();
+            }
         }
 
         if (shouldPrintChars > printedChars) {
-            for (int i = printedChars; i < shouldPrintChars; i++) {
-                out.print(chalked(progressChar));
-            }
-            out.flush();
+            //the whole run in one styled segment
+            chunk.append(fill(shouldPrintChars - printedChars));
+            waitingChars += shouldPrintChars - printedChars;
             printedChars = shouldPrintChars;
         }
+
+        if (!isFinishing && waitingChars > 0 && flush.shouldFlush(waitingChars, flush.isTimed() ? System.nanoTime() - flushedNanos : 0)) {
+            write(out);
+        }
+    }
+
+    @Override
+    protected synchronized void renderFrame() {
+        super.renderFrame();
+        if (flush.isTimed() && waitingChars > 0) {
+            //flush when the interval expires, even if there is no other update
+            renderFrameAt(flushedNanos + flush.getNanos());
+        }
+    }
+
+    @Override
+    protected synchronized void finishProgressBar(final boolean isCancel) {
+        isFinishing = true;
+        try {
+            super.finishProgressBar(isCancel);
+        } finally {
+            isFinishing = false;
+        }
     }
 
     @Override
     protected void printBarEnd(final PrintStream out) {
-        out.println(endString);
-        out.flush();
+        chunk.append(endString);
+        chunk.append(LINE_SEPARATOR);
+        write(out);
         printedChars = 0;
         isBeginStringPrinted = false;
     }
 
     @Override
     protected void printCancel(final PrintStream out) {
-        if (charCount > printedChars) {
-            for (int i = printedChars; i < charCount; i++) {
-                out.print(baseChar);
-            }
-            out.println(endString);
-            out.flush();
+        //rest of the bar, so the end is aligned with the header
+        chunk.append(baseChars, printedChars, charCount);
+        printBarEnd(out);
+    }
+
+    /**
+     * Write what is waiting with a single write and flush.
+     */
+    private void write(final PrintStream out) {
+        if (chunk.size() > 0) {
+            framePainted(chunk.writeTo(out));
+            chunk.reset();
+        }
+        waitingChars = 0;
+        if (flush.isTimed()) {
+            flushedNanos = System.nanoTime();
         }
     }
 }
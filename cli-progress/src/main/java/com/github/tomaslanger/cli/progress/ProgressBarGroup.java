@@ -0,0 +1,540 @@
+package com.github.tomaslanger.cli.progress;
+
+import com.github.tomaslanger.chalk.Ansi;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Group of progress bars running at the same time, each on its own row. The group owns the output and paints
+ * all of its bars from the render thread (see {@link Builder#setFps(int)}), writing only rows that changed in a
+ * single write.
+ * Bars can be added and ended at any time. Ended bars are printed above the rows of running bars. If more bars
+ * run than fit into the viewport (see {@link Builder#setViewport(int)}), the rest is summarized in a single line,
+ * so the cost of painting does not grow with number of bars.
+ * <p>
+ * In batch environment nothing is painted while progressing, each bar is printed when ended.
+ */
+public class ProgressBarGroup extends ProgressBarBase {
+    private static final int DEFAULT_FPS = 10;
+    private static final String CURSOR_UP = Ansi.cursorUp();
+    private static final String CURSOR_DOWN = Ansi.cursorDown();
+    private static final String ERASE_LINE_END = Ansi.eraseLineEnd();
+    private static final String ERASE_LINE = Ansi.eraseLine();
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final boolean isBatch;
+    private final int viewport;
+    private final boolean printEnded;
+    private final FrameBuffer frame = new FrameBuffer(1024);
+
+    //bars that changed since last frame, each is queued once until painted
+    private final Queue<ProgressBarBase> changed = new ConcurrentLinkedQueue<>();
+
+    /*
+     * Guarded by this instance
+     */
+    private final List<Row> rows = new ArrayList<>();
+    private final Map<ProgressBar, Row> rowsByBar = new IdentityHashMap<>();
+    private final List<ProgressBar> finished = new ArrayList<>();
+    private long overallMax;
+    private long overallProgress;
+    //final progress of bars that ended
+    private long completedProgress;
+    //bar showing progress of all bars including ended ones, null if none
+    private ProgressBar master;
+    //whether master is painted as the first row, otherwise its progress is set on each frame
+    private boolean masterIsRow;
+    //whether all rows must be painted in the next frame (rows were added or removed)
+    private boolean layoutChanged;
+
+    /*
+     * Only accessed when painting (holding the lock of this instance)
+     */
+    private PrintStream out;
+    //number of lines the group occupies on screen, cursor is at the beginning of the line below them
+    private int linesOnScreen;
+    private int printedHidden = -1;
+    private int printedOverallPercentage = -1;
+    private long printedMasterProgress = -1;
+    private final Throughput throughput = new Throughput();
+
+    protected ProgressBarGroup(final Builder builder) {
+        super(builder);
+
+        this.isBatch = builder.isBatch() || ONE_LINE_ONLY;
+        this.viewport = builder.getViewport();
+        this.printEnded = builder.isPrintEnded();
+    }
+
+    /**
+     * Show total progress of all bars, including ended ones, on a master bar. Its progress is computed when a frame
+     * is painted, so updates of bars in the group do not contend on a shared total.
+     *
+     * @param master master bar, not started if painted as a row of this group, otherwise started on its own output
+     * @param asRow  true to paint master as the first row of this group, false to only set its progress (and let it
+     *               paint itself)
+     */
+    synchronized void setMaster(final ProgressBar master, final boolean asRow) {
+        this.master = master;
+        this.masterIsRow = asRow;
+        if (asRow) {
+            master.joinGroup(this);
+            layoutChanged = true;
+        }
+        printedMasterProgress = -1;
+        if (!isHeadless()) {
+            markDirty();
+        }
+    }
+
+    /**
+     * Progress of all bars, ended and running. Unlike the total shown on master, this reads all running bars.
+     *
+     * @return sum of progress of bars in this group since it was started
+     */
+    synchronized long getTotalProgress() {
+        long total = completedProgress;
+        for (final Row row : rows) {
+            total += row.bar.getProgress();
+        }
+
+        return total;
+    }
+
+    /**
+     * Add a progress bar to this group, starting it. The bar is painted on its own row with status on the same
+     * line, until {@link ProgressBar#end()} or {@link ProgressBar#cancel()} is called on it.
+     * Output claims, status location, frames per second and headless mode of the builder are ignored - bars of
+     * a headless group are headless and print their summary lines when ended.
+     *
+     * @param builder builder of the progress bar
+     * @return started progress bar, update it from any thread
+     */
+    public ProgressBar add(final ProgressBar.Builder builder) {
+        super.checkSetProgress();
+
+        builder.claimNoOuts().setStatusLocation(StatusLoc.SAME_LINE).setFps(0);
+        if (isBatch) {
+            builder.setBatch();
+        }
+        ProgressBar bar = builder.build();
+        bar.joinGroup(this);
+
+        synchronized (this) {
+            Row row = new Row(bar);
+            rows.add(row);
+            rowsByBar.put(bar, row);
+            overallMax += bar.getMaxLong();
+            layoutChanged = true;
+        }
+        if (!isHeadless()) {
+            markDirty();
+        }
+
+        return bar;
+    }
+
+    /**
+     * Remove a progress bar from this group without printing it. To print the final state of a bar, end it instead.
+     *
+     * @param bar bar to remove
+     */
+    public void remove(final ProgressBar bar) {
+        synchronized (this) {
+            if (!removeRow(bar)) {
+                return;
+            }
+        }
+        if (!isHeadless()) {
+            markDirty();
+        }
+    }
+
+    /**
+     * Number of bars currently running in this group.
+     *
+     * @return number of bars
+     */
+    public synchronized int size() {
+        return rows.size();
+    }
+
+    void rowChanged(final ProgressBarBase bar) {
+        changed.offer(bar);
+        markDirty();
+    }
+
+    /**
+     * A bar of this group ended.
+     *
+     * @param bar      bar that ended
+     * @param progress its final progress
+     */
+    void rowFinished(final ProgressBar bar, final long progress) {
+        synchronized (this) {
+            if (!removeRow(bar)) {
+                return;
+            }
+            completedProgress += progress;
+            if (printEnded && !isHeadless()) {
+                finished.add(bar);
+            }
+        }
+        if (!isHeadless()) {
+            markDirty();
+        }
+    }
+
+    private boolean removeRow(final ProgressBar bar) {
+        Row row = rowsByBar.remove(bar);
+        if (null == row) {
+            return false;
+        }
+        rows.remove(row);
+        overallMax -= bar.getMaxLong();
+        overallProgress -= row.countedProgress;
+        layoutChanged = true;
+
+        return true;
+    }
+
+    @Override
+    protected synchronized void renderFrame() {
+        //overall progress is updated only from bars that changed, not by scanning all of them
+        ProgressBarBase bar;
+        while (null != (bar = changed.poll())) {
+            bar.clearDirty();
+            Row row = rowsByBar.get(bar);
+            if (null != row) {
+                long progress = row.bar.getProgress();
+                overallProgress += progress - row.countedProgress;
+                row.countedProgress = progress;
+                row.changed = true;
+            }
+        }
+        boolean masterChanged = updateMaster();
+
+        if (isBatch || !iOwnOutput) {
+            printFinishedSummaries();
+            return;
+        }
+
+        frame.reset();
+        if (layoutChanged || !finished.isEmpty()) {
+            paintAll();
+        } else {
+            paintChanged(masterChanged);
+        }
+
+        if (frame.size() > 0) {
+            frame.writeTo(out);
+        }
+    }
+
+    /**
+     * Set total progress on master.
+     *
+     * @return true if master is painted as a row and its progress changed
+     */
+    private boolean updateMaster() {
+        if (null == master) {
+            return false;
+        }
+        long total = completedProgress + overallProgress;
+        if (total == printedMasterProgress) {
+            return false;
+        }
+        printedMasterProgress = total;
+        if (masterIsRow) {
+            master.recordProgress(total);
+            return true;
+        }
+        master.setProgress(total);
+
+        return false;
+    }
+
+    private void printFinishedSummaries() {
+        PrintStream target = iOwnOutput ? out : System.out;
+        for (final ProgressBar bar : finished) {
+            //progress of ended bars is final (max unless cancelled)
+            bar.printSummary(target, true);
+        }
+        finished.clear();
+    }
+
+    /**
+     * Paint ended bars above the running ones and all rows (as they moved).
+     */
+    private void paintAll() {
+        moveUp(linesOnScreen);
+
+        int lines = 0;
+        for (final ProgressBar bar : finished) {
+            printRow(bar);
+            endLine();
+        }
+        finished.clear();
+
+        if (masterIsRow) {
+            frame.append('\r');
+            printRow(master);
+            endLine();
+            lines++;
+        }
+        int visible = visibleRows();
+        for (int i = 0; i < visible; i++) {
+            paintRow(rows.get(i));
+            endLine();
+            lines++;
+        }
+        if (visible < rows.size()) {
+            paintSummary();
+            endLine();
+            lines++;
+        }
+
+        //clear lines no longer used by rows (when less bars are running)
+        int unused = linesOnScreen - lines;
+        for (int i = 0; i < unused; i++) {
+            frame.append(ERASE_LINE);
+            frame.append(LINE_SEPARATOR);
+        }
+        moveUp(Math.max(0, unused));
+
+        linesOnScreen = lines;
+        layoutChanged = false;
+    }
+
+    /**
+     * Paint only rows that changed, cursor is moved to each of them and back below the group.
+     */
+    private void paintChanged(final boolean masterChanged) {
+        int top = 0;
+        if (masterIsRow) {
+            if (masterChanged) {
+                moveUp(linesOnScreen);
+                frame.append('\r');
+                printRow(master);
+                frame.append(ERASE_LINE_END);
+                moveDown(linesOnScreen);
+            }
+            top = 1;
+        }
+        int visible = visibleRows();
+        for (int i = 0; i < visible; i++) {
+            Row row = rows.get(i);
+            if (row.changed) {
+                int up = linesOnScreen - top - i;
+                moveUp(up);
+                paintRow(row);
+                frame.append(ERASE_LINE_END);
+                moveDown(up);
+            }
+        }
+
+        if (visible < rows.size()) {
+            int hidden = rows.size() - visible;
+            if (hidden != printedHidden || overallPercentage() != printedOverallPercentage) {
+                moveUp(1);
+                paintSummary();
+                frame.append(ERASE_LINE_END);
+                moveDown(1);
+            }
+        }
+    }
+
+    private void paintRow(final Row row) {
+        frame.append('\r');
+        printRow(row.bar);
+        row.changed = false;
+    }
+
+    private void printRow(final ProgressBar bar) {
+        if (bar instanceof ProgressBarInPlace) {
+            ((ProgressBarInPlace) bar).printRow(frame);
+        }
+        //bars built for batch cannot be painted in place, they only occupy their row
+    }
+
+    private void paintSummary() {
+        printedHidden = rows.size() - visibleRows();
+        printedOverallPercentage = overallPercentage();
+
+        frame.append('\r');
+        frame.appendNumber(printedHidden);
+        frame.append(" more running, ");
+        frame.appendNumber(printedOverallPercentage);
+        frame.append("% overall");
+    }
+
+    private void endLine() {
+        frame.append(ERASE_LINE_END);
+        frame.append(LINE_SEPARATOR);
+    }
+
+    private void moveUp(final int lines) {
+        for (int i = 0; i < lines; i++) {
+            frame.append(CURSOR_UP);
+        }
+    }
+
+    private void moveDown(final int lines) {
+        for (int i = 0; i < lines; i++) {
+            frame.append(CURSOR_DOWN);
+        }
+        frame.append('\r');
+    }
+
+    private int visibleRows() {
+        if (rows.size() <= viewport) {
+            return rows.size();
+        }
+        //last line of viewport is used by the summary
+        return viewport - 1;
+    }
+
+    /**
+     * Overall state of bars running in this group, progress is summed as of the last painted frame.
+     *
+     * @return snapshot of overall progress
+     */
+    @Override
+    public ProgressSnapshot getSnapshot() {
+        long progress;
+        long max;
+        synchronized (this) {
+            progress = overallProgress;
+            max = overallMax;
+        }
+        return ProgressBar.snapshot(throughput, getBeginNanos(), progress, max);
+    }
+
+    @Override
+    synchronized ProgressSnapshot readSnapshot() {
+        return ProgressBar.peekSnapshot(throughput, getBeginNanos(), overallProgress, overallMax);
+    }
+
+    private int overallPercentage() {
+        return ProgressBar.fraction(overallProgress, overallMax, 100);
+    }
+
+    @Override
+    protected void finishProgressBar(final boolean isCancel) {
+        //paint what is pending, running bars stay on screen as they are
+        renderFrame();
+
+        synchronized (this) {
+            rows.clear();
+            rowsByBar.clear();
+            changed.clear();
+            overallMax = 0;
+            overallProgress = 0;
+            completedProgress = 0;
+            master = null;
+            masterIsRow = false;
+            printedMasterProgress = -1;
+            linesOnScreen = 0;
+            printedHidden = -1;
+            printedOverallPercentage = -1;
+        }
+    }
+
+    @Override
+    protected synchronized void finishHeadless(final boolean isCancel, final PrintStream out) {
+        rows.clear();
+        rowsByBar.clear();
+        overallMax = 0;
+        overallProgress = 0;
+        completedProgress = 0;
+        master = null;
+    }
+
+    @Override
+    protected void initProgressBar() {
+        //nothing is printed until bars are added
+    }
+
+    @Override
+    protected void setOut(final PrintStream printStream) {
+        this.out = printStream;
+    }
+
+    /**
+     * Represents state of one bar in this group.
+     */
+    private static final class Row {
+        private final ProgressBar bar;
+        //progress of this bar included in overall progress
+        private long countedProgress;
+        private boolean changed = true;
+
+        private Row(final ProgressBar bar) {
+            this.bar = bar;
+        }
+    }
+
+    /**
+     * Builds instances for you.
+     */
+    public static class Builder extends ProgressBarBase.Builder<ProgressBarGroup.Builder> {
+        private int viewport = 10;
+        private boolean printEnded = true;
+
+        /**
+         * Maximal number of lines used by the group. If more bars run, the last line shows the number of bars
+         * that are not shown and overall percentage of all bars. Default is 10.
+         *
+         * @param viewport number of lines, at least 2
+         * @return Builder instance
+         */
+        public Builder setViewport(final int viewport) {
+            if (viewport < 2) {
+                throw new IllegalArgumentException("Viewport must have at least 2 lines: " + viewport);
+            }
+            this.viewport = viewport;
+
+            return this;
+        }
+
+        public int getViewport() {
+            return viewport;
+        }
+
+        /**
+         * Whether ended bars are printed (above running bars, or as summary lines in batch). Default is true.
+         *
+         * @param printEnded false to remove ended bars without printing them
+         * @return Builder instance
+         */
+        Builder setPrintEnded(final boolean printEnded) {
+            this.printEnded = printEnded;
+
+            return this;
+        }
+
+        boolean isPrintEnded() {
+            return printEnded;
+        }
+
+        /**
+         * Build the group instance with settings configured with this builder. Group is always rendered in
+         * background, if frames per second are not configured, 10 are used.
+         *
+         * @return ProgressBarGroup configured
+         */
+        public ProgressBarGroup build() {
+            if (getFps() == 0) {
+                setFps(DEFAULT_FPS);
+            }
+
+            return new ProgressBarGroup(this);
+        }
+    }
+}
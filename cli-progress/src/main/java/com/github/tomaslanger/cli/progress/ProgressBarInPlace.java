@@ -1,11 +1,10 @@
 package com.github.tomaslanger.cli.progress;
 
 import com.github.tomaslanger.chalk.Ansi;
-import com.github.tomaslanger.chalk.Chalk;
 
 import java.io.PrintStream;
-import java.util.EnumSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * In place progress bar.
@@ -18,21 +17,62 @@ import java.util.Set;
  */
 class ProgressBarInPlace extends ProgressBar {
     private static final String THREE_SPACES = "   ";
+    private static final String CURSOR_UP = Ansi.cursorUp();
+    private static final String CURSOR_DOWN = Ansi.cursorDown();
+    //control sequence introducer, used for cursor to column (CSI n G)
+    private static final String CSI = "\u001B[";
+    //width of formatted percentage ("  5%", " 50%", "100%" are all prefixed by spaces to this width)
+    private static final int PERCENTAGE_WIDTH = 5;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final String SAVE_CURSOR = "\u001B7";
+    private static final String RESTORE_CURSOR = "\u001B8";
+    private static final String ERASE_DOWN = "\u001B[0J";
 
     /*
      * Runtime
      */
     //when in place, this is used to store the full line of the bar to print
     private final StringBuilder textToPrint = new StringBuilder();
+    //the whole frame is assembled here and written at once
+    private final FrameBuffer frame = new FrameBuffer(256);
     private final boolean keepSingleColor;
     private final boolean shouldPrintPercents;
-    private final Ansi.Color statusColor;
-    private final Ansi.BgColor statusBgColor;
-    private final Set<Ansi.Modifier> statusModifiers = EnumSet.noneOf(Ansi.Modifier.class);
+    private final AnsiStyle statusStyle;
+    //styled "  0%" to "100%", indexed by percentage
+    private final String[] percentages;
     private final StatusLoc statusLocation;
+    //only write changed characters, using cursor column addressing
+    private final boolean partialRepaint;
+    //columns (1-based) of bar line parts, for partial repaint
+    private final int barColumn;
+    private final int percentageColumn;
+    private final int statusColumn;
+    //rows relative to the last line of the bar (where the cursor is between frames)
+    private final int barRow;
+    private final int statusRow;
+    //print output of others while running
+    private final boolean liveOutput;
+    //number of lines of this bar
+    private final int lines;
+
+    //output of others to print with frames, when live output is enabled and we own the outputs
+    private LiveOutput live;
+    //last row of the scroll region above the bar pinned to the bottom of terminal, 0 if not pinned
+    //(read without lock when restoring terminal on shutdown)
+    private volatile int scrollBottom;
 
     private int printedChars;
-    private String statusTextOnScreen;
+    private int printedStyleVersion;
+    //row of cursor while assembling a partial frame
+    private int cursorRow;
+    //status line on screen and its width, -1 if there is none
+    private final StringBuilder statusOnScreen = new StringBuilder();
+    private int statusWidthOnScreen = -1;
+    //status as set by user when last painted (before placeholders were expanded)
+    private String statusTemplateOnScreen;
+    //status line to paint in the current frame, rendered into the same buffer for each frame
+    private final StringBuilder frameStatus = new StringBuilder();
+    private boolean hasFrameStatus;
     private int wantedPercentage;
     private int printedPercentage;
 
@@ -43,56 +83,260 @@ class ProgressBarInPlace extends ProgressBar {
         super(builder);
         this.keepSingleColor = builder.shouldKeepSingleColor();
         this.shouldPrintPercents = builder.shouldPrintPercents();
-        this.statusColor = builder.getStatusColor();
-        this.statusBgColor = builder.getStatusBgColor();
-        this.statusModifiers.addAll(builder.getStatusModifiers());
+        this.statusStyle = AnsiStyle.of(builder.getStatusColor(), builder.getStatusBgColor(), builder.getStatusModifiers());
         this.statusLocation = builder.getStatusLocation();
+        this.percentages = shouldPrintPercents ? formatPercentages(statusStyle) : null;
+        this.partialRepaint = !builder.isFullRepaint() && !ONE_LINE_ONLY;
+
+        this.barColumn = 1 + AnsiStyle.visibleLength(beginString);
+        this.percentageColumn = barColumn + charCount + AnsiStyle.visibleLength(endString);
+        this.statusColumn = (statusLocation == StatusLoc.SAME_LINE)
+                ? percentageColumn + (shouldPrintPercents ? PERCENTAGE_WIDTH : 0) + 1
+                : 1;
+        this.barRow = (statusLocation == StatusLoc.LAST_LINE) ? 1 : 0;
+        this.statusRow = (statusLocation == StatusLoc.FIRST_LINE) ? 1 : 0;
+        this.liveOutput = builder.isLiveOutput() && !ONE_LINE_ONLY;
+        this.lines = (statusLocation == StatusLoc.SAME_LINE) ? 1 : 2;
     }
 
-    protected void printBar(final PrintStream out, final int progress) {
-        int shouldPrintChars = (progress * charCount) / max;
+    @Override
+    protected boolean isLiveOutput() {
+        return liveOutput;
+    }
 
-        if (shouldPrintPercents) {
-            wantedPercentage = (progress * 100) / max;
-            if (wantedPercentage == 100 && progress != max) {
-                //only set 100% if we are really done
-                wantedPercentage = 99;
-            }
+    @Override
+    protected void initProgressBar() {
+        super.initProgressBar();
+
+        live = liveOutput ? StreamHandler.getLiveOutput() : null;
+        if (null != live) {
+            pinToBottom();
         }
+    }
 
-        if (!requiresUpdate(shouldPrintChars)) {
+    /**
+     * Reserve the last lines of terminal for this bar and make the rest a scroll region (DECSTBM), so output of
+     * others scrolls above the bar without touching it. Rows of the terminal are detected once per process, unless
+     * configured (see {@link Terminal#getRows()}); if the terminal is resized while the bar runs, output scrolls within
+     * the old region until the bar ends. The region is reset when the bar ends, or on shutdown of the JVM if the bar
+     * does not end (see {@link PinnedBars}).
+     */
+    private void pinToBottom() {
+        int rows = Terminal.getRows();
+        if (rows <= lines + 1) {
+            //not known (or too small), the bar is repainted below printed lines instead
             return;
         }
+        scrollBottom = rows - lines;
 
-        if (keepSingleColor) {
-            StringBuilder colorless = new StringBuilder(shouldPrintChars);
-            for (int i = 0; i < shouldPrintChars; i++) {
-                colorless.append(progressChar);
-            }
+        frame.reset();
+        //make sure lines below the cursor are free (scrolls if at the bottom)
+        for (int i = 0; i < lines; i++) {
+            frame.append(LINE_SEPARATOR);
+        }
+        frame.append(CSI).append("1;").appendNumber(scrollBottom).append('r');
+        frame.append(CSI).appendNumber(scrollBottom + 1).append(";1H");
+        frame.writeTo(getOut());
+        PinnedBars.pinned(this);
+    }
 
-            textToPrint.setLength(0);
-            textToPrint.append(chalked(colorless.toString()));
+    private void unpin() {
+        if (scrollBottom == 0) {
+            return;
+        }
+        scrollBottom = 0;
+        PinnedBars.unpinned(this);
+
+        frame.reset();
+        //resetting scroll region moves cursor home
+        frame.append(SAVE_CURSOR);
+        frame.append(CSI).append('r');
+        frame.append(RESTORE_CURSOR);
+        frame.writeTo(getOut());
+    }
+
+    @Override
+    protected synchronized void renderFrame() {
+        if (null != live) {
+            printOutput();
+        }
+        super.renderFrame();
+    }
+
+    /**
+     * Print output of others written since last frame with a single write - into the scroll region above a pinned
+     * bar, or in place of the bar (that is then repainted below).
+     */
+    private void printOutput() {
+        frame.reset();
+        if (scrollBottom > 0) {
+            frame.append(SAVE_CURSOR);
+            frame.append(CSI).appendNumber(scrollBottom).append(";1H");
+            if (!live.drainTo(frame, true)) {
+                return;
+            }
+            frame.append(RESTORE_CURSOR);
         } else {
-            if (shouldPrintChars > printedChars) {
-                for (int i = printedChars; i < shouldPrintChars; i++) {
-                    textToPrint.append(chalked(progressChar));
+            if (isVisible) {
+                for (int i = 1; i < lines; i++) {
+                    frame.append(CURSOR_UP);
                 }
+                frame.append('\r').append(ERASE_DOWN);
             }
-
-            if (shouldPrintChars < printedChars) {
-                textToPrint.delete(textToPrint.length() - (printedChars - shouldPrintChars), textToPrint.length());
+            if (!live.drainTo(frame, false)) {
+                return;
             }
+            isVisible = false;
+        }
+
+        frame.writeTo(getOut());
+    }
+
+    @Override
+    protected void finishProgressBar(final boolean isCancel) {
+        if (null != live) {
+            printOutput();
+            live.completeLines();
+            printOutput();
+            unpin();
+            live = null;
+        }
+
+        super.finishProgressBar(isCancel);
+    }
+
+    protected void printBar(final PrintStream out, final long progress) {
+        int shouldPrintChars = computeProgress(progress);
+        if (!isRenderedInBackground() && isStatusSupplied() && !progressRequiresUpdate(shouldPrintChars)) {
+            //status supplied with progress is built only when progress changes on screen
+            return;
         }
+        String status = frameStatus();
+
+        if (!requiresUpdate(shouldPrintChars, status)) {
+            return;
+        }
+
+        frameStatus.setLength(0);
+        hasFrameStatus = appendStatusLine(frameStatus, status, progress);
+        statusTemplateOnScreen = status;
+        boolean wholeBar = updateProgressText(shouldPrintChars);
 
-        printProgressBar(out, shouldPrintChars);
+        if (partialRepaint && isVisible) {
+            printChanges(out, shouldPrintChars, wholeBar);
+        } else {
+            printProgressBar(out, shouldPrintChars);
+        }
         printedChars = shouldPrintChars;
     }
 
-    private boolean requiresUpdate(final int shouldPrintChars) {
-        if (shouldPrintChars != printedChars) {
+    /**
+     * Append this bar as a single line (bar, percentage and status after it) to a frame of a
+     * {@link ProgressBarGroup}. The line is always written whole, cursor is positioned by the group.
+     *
+     * @param target frame to append the line to
+     */
+    void printRow(final FrameBuffer target) {
+        printBarRow(target);
+        if (hasFrameStatus) {
+            target.append(' ');
+        }
+        appendFrameStatus(target);
+    }
+
+    /**
+     * Append only the bar with percentage (status is not appended, but it is prepared for
+     * {@link #printStatusRow(FrameBuffer)}) to a frame composed by others. The line is always written whole.
+     *
+     * @param target frame to append the bar to
+     */
+    void printBarRow(final FrameBuffer target) {
+        long progress = getProgress();
+        int shouldPrintChars = computeProgress(progress);
+        updateProgressText(shouldPrintChars);
+
+        appendBar(target, shouldPrintChars);
+        frameStatus.setLength(0);
+        hasFrameStatus = appendStatusLine(frameStatus, frameStatus(), progress);
+
+        printedChars = shouldPrintChars;
+        isVisible = true;
+    }
+
+    /**
+     * Append status prepared by the last {@link #printBarRow(FrameBuffer)} as a line of its own.
+     *
+     * @param target frame to append the status to
+     */
+    void printStatusRow(final FrameBuffer target) {
+        appendFrameStatus(target);
+    }
+
+    private void appendFrameStatus(final FrameBuffer target) {
+        if (hasFrameStatus) {
+            target.append(statusStyle.getPrefix());
+            target.append(frameStatus);
+            target.append(statusStyle.getSuffix());
+        }
+        statusShown();
+    }
+
+    /**
+     * Compute wanted percentage and number of progress characters.
+     *
+     * @param progress progress to show
+     * @return number of progress characters to show
+     */
+    private int computeProgress(final long progress) {
+        if (shouldPrintPercents) {
+            wantedPercentage = fraction(progress, max, 100);
+            if (wantedPercentage == 100 && progress != max) {
+                //only set 100% if we are really done
+                wantedPercentage = 99;
+            }
+        }
+
+        return fraction(progress, max, charCount);
+    }
+
+    /**
+     * Update the styled progress characters to show.
+     *
+     * @param shouldPrintChars number of progress characters to show
+     * @return true if the whole bar changed, false if only new characters were added (or nothing changed)
+     */
+    private boolean updateProgressText(final int shouldPrintChars) {
+        int styleVersion = getStyleVersion();
+        boolean restyled = keepSingleColor && (styleVersion != printedStyleVersion);
+        boolean wholeBar = restyled || shouldPrintChars < printedChars;
+
+        if (wholeBar) {
+            //whole bar in current style (also when going back, as we cannot cut styled segments)
+            textToPrint.setLength(0);
+            textToPrint.append(fill(shouldPrintChars));
+        } else if (shouldPrintChars > printedChars) {
+            //new characters in current style, already printed keep their style
+            textToPrint.append(fill(shouldPrintChars - printedChars));
+        }
+        printedStyleVersion = styleVersion;
+
+        return wholeBar;
+    }
+
+    private boolean requiresUpdate(final int shouldPrintChars, final String status) {
+        if (!same(status, statusTemplateOnScreen)) {
             return true;
         }
-        if (statusChanged()) {
+        if (isLiveStatusLine(status) && isRenderedInBackground()) {
+            //rate and times change with each frame, frames are limited by frames per second
+            return true;
+        }
+
+        return progressRequiresUpdate(shouldPrintChars);
+    }
+
+    private boolean progressRequiresUpdate(final int shouldPrintChars) {
+        if (shouldPrintChars != printedChars) {
             return true;
         }
 
@@ -114,7 +358,11 @@ class ProgressBarInPlace extends ProgressBar {
         out.println();
         textToPrint.setLength(0);
         printedChars = 0;
-        statusTextOnScreen = null;
+        statusOnScreen.setLength(0);
+        statusWidthOnScreen = -1;
+        statusTemplateOnScreen = null;
+        frameStatus.setLength(0);
+        hasFrameStatus = false;
     }
 
     @Override
@@ -124,72 +372,190 @@ class ProgressBarInPlace extends ProgressBar {
     }
 
     private boolean statusChanged() {
-        //this will return true if both are null... And if for any reason, they are same string instance, no problem
-        //noinspection StringEquality
-        if (wantedStatus == statusTextOnScreen) {
+        if (hasFrameStatus != (statusWidthOnScreen >= 0)) {
+            return true;
+        }
+
+        return !sameText(frameStatus, statusOnScreen);
+    }
+
+    private static boolean sameText(final CharSequence first, final CharSequence second) {
+        if (first.length() != second.length()) {
             return false;
         }
+        for (int i = 0; i < first.length(); i++) {
+            if (first.charAt(i) != second.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
 
-        if (null == statusTextOnScreen || null == wantedStatus) {
+    /**
+     * Status of the current frame was painted.
+     */
+    private void statusShown() {
+        statusOnScreen.setLength(0);
+        statusOnScreen.append(frameStatus);
+        statusWidthOnScreen = hasFrameStatus ? AnsiStyle.visibleLength(frameStatus, 0, frameStatus.length()) : -1;
+    }
+
+    /**
+     * Number of spaces to paint after status of the current frame, to erase the rest of a wider status on screen.
+     */
+    private int blanksAfterStatus() {
+        if (statusWidthOnScreen < 0) {
+            return 0;
+        }
+        if (!hasFrameStatus) {
+            //add the space between status and bar
+            return statusWidthOnScreen + 1;
+        }
+
+        return statusWidthOnScreen - AnsiStyle.visibleLength(frameStatus, 0, frameStatus.length());
+    }
+
+    private static boolean same(final String first, final String second) {
+        //this will return true if both are null... And if for any reason, they are same string instance, no problem
+        //noinspection StringEquality
+        if (first == second) {
             return true;
         }
 
-        return !statusTextOnScreen.equals(wantedStatus);
+        if (null == first || null == second) {
+            return false;
+        }
+
+        return first.equals(second);
     }
 
     private void printProgressBar(final PrintStream out, final int shouldPrintChars) {
+        frame.reset();
+
         if (isVisible) {
             if (statusLocation != StatusLoc.SAME_LINE) {
                 //max two lines, I always move just one line up
-                out.print(Ansi.cursorUp());
+                frame.append(CURSOR_UP);
             }
-            out.print('\r');
+            frame.append('\r');
         }
 
         //status if before progress bar
         if (statusLocation == StatusLoc.FIRST_LINE) {
-            printStatus(out);
-            out.println();
+            printStatus();
+            frame.append(LINE_SEPARATOR);
         }
 
         //the actual progress bar
-        out.print(beginString);
-        out.print(textToPrint);
-        for (int i = shouldPrintChars; i < charCount; i++) {
-            out.print(baseChar);
+        appendBar(frame, shouldPrintChars);
+
+        //status after progress bar
+        if (statusLocation == StatusLoc.SAME_LINE) {
+            frame.append(' ');
+            printStatus();
+        } else if (statusLocation == StatusLoc.LAST_LINE) {
+            frame.append(LINE_SEPARATOR);
+            printStatus();
         }
-        out.print(endString);
+
+        framePainted(frame.writeTo(out));
+
+        isVisible = true;
+    }
+
+    private void appendBar(final FrameBuffer target, final int shouldPrintChars) {
+        target.append(beginString);
+        target.append(textToPrint);
+        target.append(baseChar, charCount - shouldPrintChars);
+        target.append(endString);
 
         //percentage if enabled
         if (shouldPrintPercents) {
-            out.print(formatPercentage());
+            target.append(formatPercentage());
             printedPercentage = wantedPercentage;
         }
+    }
 
-        //status after progress bar
-        if (statusLocation == StatusLoc.SAME_LINE) {
-            out.print(' ');
-            printStatus(out);
-        } else if (statusLocation == StatusLoc.LAST_LINE) {
-            out.println();
-            printStatus(out);
+    /**
+     * Partial repaint - write only characters that differ from what is on screen (new progress characters,
+     * percentage and the changed end of status), positioning the cursor by column.
+     */
+    private void printChanges(final PrintStream out, final int shouldPrintChars, final boolean wholeBar) {
+        frame.reset();
+        cursorRow = 0;
+
+        if (wholeBar) {
+            moveTo(barRow, barColumn);
+            frame.append(textToPrint);
+            frame.append(baseChar, printedChars - shouldPrintChars);
+        } else if (shouldPrintChars > printedChars) {
+            moveTo(barRow, barColumn + printedChars);
+            frame.append(fill(shouldPrintChars - printedChars));
+        }
+
+        if (shouldPrintPercents && (wantedPercentage != printedPercentage)) {
+            moveTo(barRow, percentageColumn);
+            frame.append(formatPercentage());
+            printedPercentage = wantedPercentage;
         }
 
-        out.flush();
+        if (statusChanged()) {
+            int unchanged = hasFrameStatus ? unchangedChars(statusOnScreen, frameStatus) : 0;
 
-        isVisible = true;
+            moveTo(statusRow, statusColumn + unchanged);
+            if (hasFrameStatus) {
+                frame.append(statusStyle.getPrefix());
+                frame.append(frameStatus, unchanged, frameStatus.length());
+                frame.append(statusStyle.getSuffix());
+            }
+            frame.append(' ', blanksAfterStatus());
+            statusShown();
+        }
+
+        //back to the last line, where full repaint expects the cursor
+        for (; cursorRow > 0; cursorRow--) {
+            frame.append(CURSOR_DOWN);
+        }
+
+        if (frame.size() > 0) {
+            framePainted(frame.writeTo(out));
+        }
     }
 
-    private void printStatus(final PrintStream out) {
-        if (wantedStatus != null) {
-            out.print(statusChalked(wantedStatus));
+    private void moveTo(final int row, final int column) {
+        for (; cursorRow < row; cursorRow++) {
+            frame.append(CURSOR_UP);
         }
-        //now remove trailing characters if previous status was longer than current
-        int toPrint = charDif(statusTextOnScreen, wantedStatus);
-        for (int i = 0; i < toPrint; i++) {
-            out.print(" ");
+        for (; cursorRow > row; cursorRow--) {
+            frame.append(CURSOR_DOWN);
         }
-        statusTextOnScreen = wantedStatus;
+        frame.append(CSI).appendNumber(column).append('G');
+    }
+
+    /**
+     * Number of leading characters of the new status that are already on screen. Stops at first escape
+     * sequence, as we do not know the width of the rest.
+     */
+    private static int unchangedChars(final CharSequence printedStatus, final CharSequence statusText) {
+        int max = Math.min(printedStatus.length(), statusText.length());
+        int i = 0;
+        while (i < max && printedStatus.charAt(i) == statusText.charAt(i) && statusText.charAt(i) != '\u001B') {
+            i++;
+        }
+
+        return i;
+    }
+
+    private void printStatus() {
+        if (hasFrameStatus) {
+            frame.append(statusStyle.getPrefix());
+            frame.append(frameStatus);
+            frame.append(statusStyle.getSuffix());
+        }
+        //now remove trailing characters if previous status was wider than current
+        frame.append(' ', blanksAfterStatus());
+        statusShown();
     }
 
 
@@ -197,46 +563,57 @@ class ProgressBarInPlace extends ProgressBar {
         if (wantedPercentage > 100) {
             wantedPercentage = 100;
         }
-        String result = wantedPercentage + "%";
-
-        String spaces = THREE_SPACES.substring(result.length() - 2);
 
-        return spaces + statusChalked(result);
+        return percentages[wantedPercentage];
     }
 
-    private int charDif(final String printedStatus, final String statusText) {
-        if (null == printedStatus) {
-            return 0;
-        }
-        if (null == statusText) {
-            //add the space between status and bar
-            return printedStatus.length() + 1;
+    private static String[] formatPercentages(final AnsiStyle style) {
+        String[] result = new String[101];
+        for (int i = 0; i < result.length; i++) {
+            String percentage = i + "%";
+            String spaces = THREE_SPACES.substring(percentage.length() - 2);
+            result[i] = spaces + style.apply(percentage);
         }
 
-        return printedStatus.length() - statusText.length();
+        return result;
     }
 
-    protected Chalk statusChalked(final String toChalk) {
-        return statusChalked(Chalk.on(String.valueOf(toChalk)));
-    }
+    /**
+     * Bars pinned to the bottom of terminal, their scroll region is reset when the JVM exits without ending them
+     * (e.g. on System.exit or Ctrl+C), otherwise the terminal keeps scrolling only above the rows of the bar.
+     */
+    private static final class PinnedBars {
+        private static final Set<ProgressBarInPlace> BARS = ConcurrentHashMap.newKeySet();
 
-    private Chalk statusChalked(final Chalk toChalk) {
-        if (null != statusColor) {
-            toChalk.apply(statusColor);
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(PinnedBars::restoreTerminal, "cli-progress-terminal"));
         }
 
-        if (null != statusBgColor) {
-            toChalk.apply(statusBgColor);
+        private PinnedBars() {
         }
 
-        if (!statusModifiers.isEmpty()) {
-            for (final Ansi.Modifier modifier : statusModifiers) {
-                toChalk.apply(modifier);
-            }
+        private static void pinned(final ProgressBarInPlace bar) {
+            BARS.add(bar);
+        }
 
+        private static void unpinned(final ProgressBarInPlace bar) {
+            BARS.remove(bar);
         }
 
-        return toChalk;
+        /**
+         * Reset scroll region and move cursor below the bar, without the lock of the bar - the thread holding it may
+         * never release it during shutdown.
+         */
+        private static void restoreTerminal() {
+            for (final ProgressBarInPlace bar : BARS) {
+                int scrollBottom = bar.scrollBottom;
+                if (scrollBottom == 0) {
+                    continue;
+                }
+                PrintStream out = bar.getOut();
+                out.print(CSI + 'r' + CSI + (scrollBottom + bar.lines) + ";1H" + LINE_SEPARATOR);
+                out.flush();
+            }
+        }
     }
-
 }
@@ -0,0 +1,214 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress bar writing machine readable events, one JSON object per line, for CI log parsers and dashboards.
+ * Each event is a single write and flush. Fields (always in this order, unknown values are null):
+ * <ul>
+ * <li>event - begin, progress, status, task, end or cancel</li>
+ * <li>name - name of the bar (see {@link Builder#setJsonName(String)}), null if not set</li>
+ * <li>time - wall clock time in milliseconds since the epoch</li>
+ * <li>elapsed - milliseconds since the bar was started</li>
+ * <li>progress, max, percent - progress of the bar</li>
+ * <li>rate - smoothed progress per second</li>
+ * <li>eta - estimated milliseconds until done</li>
+ * <li>status - current status (with expanded placeholders)</li>
+ * <li>task, taskMax - name and max of the current task of a master/detail bar (task events only)</li>
+ * </ul>
+ * Progress and status events are rate limited (see {@link Builder#setJsonInterval(long)} and
+ * {@link Builder#setJsonPercentStep(int)}), so number of events does not depend on number of updates.
+ * With an interval, events are written by the render thread and the last change is written when the interval
+ * expires even if no other update comes. Begin, task, end and cancel events are always written.
+ */
+class ProgressBarJson extends ProgressBar {
+    private final String name;
+    private final long intervalNanos;
+    private final int percentStep;
+    private final StringBuilder line = new StringBuilder(256);
+    //line encoded as written to output
+    private final FrameBuffer frame = new FrameBuffer(256);
+
+    /*
+     * Guarded by this instance (painted while holding the lock)
+     */
+    private long lastEventNanos;
+    private long emittedProgress;
+    private int emittedPercentage;
+    private String emittedStatus;
+    //whether a change was skipped because of the interval and should be written when it expires
+    private boolean pending;
+
+    protected ProgressBarJson(final Builder builder) {
+        super(builder);
+        this.name = builder.getJsonName();
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(builder.getJsonInterval());
+        this.percentStep = builder.getJsonPercentStep();
+    }
+
+    @Override
+    protected boolean isForTerminal() {
+        return false;
+    }
+
+    @Override
+    protected void printBarHeader(final PrintStream out) {
+        lastEventNanos = System.nanoTime();
+        emittedProgress = 0;
+        emittedPercentage = 0;
+        emittedStatus = null;
+        pending = false;
+        write(out, "begin", 0, null, null, -1);
+    }
+
+    @Override
+    protected synchronized void renderFrame() {
+        super.renderFrame();
+        if (pending) {
+            renderFrameAt(lastEventNanos + intervalNanos);
+        }
+    }
+
+    @Override
+    protected void printBar(final PrintStream out, final long progress) {
+        //a status supplier is called only when an event is written
+        boolean supplied = isStatusSupplied();
+        String status = supplied ? emittedStatus : frameStatus();
+        boolean progressChanged = progress != emittedProgress;
+        boolean statusChanged = supplied || !same(status, emittedStatus);
+        if (!progressChanged && !statusChanged && !isLiveStatus(status)) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        int percentage = fraction(progress, max, 100);
+        boolean intervalPassed = intervalNanos > 0 && now - lastEventNanos >= intervalNanos;
+        boolean stepReached = percentStep > 0 && Math.abs(percentage - emittedPercentage) >= percentStep;
+        boolean unlimited = intervalNanos == 0 && percentStep == 0;
+        if (!intervalPassed && !stepReached && !unlimited) {
+            pending = intervalNanos > 0;
+            return;
+        }
+        if (supplied) {
+            status = frameStatus();
+            statusChanged = !same(status, emittedStatus);
+            if (!progressChanged && !statusChanged && !isLiveStatus(status)) {
+                return;
+            }
+        }
+
+        pending = false;
+        lastEventNanos = now;
+        emittedProgress = progress;
+        emittedPercentage = percentage;
+        emittedStatus = status;
+        write(out, statusChanged && !progressChanged ? "status" : "progress", progress, status, null, -1);
+    }
+
+    @Override
+    protected void printBarEnd(final PrintStream out) {
+        write(out, "end", max, frameStatus(), null, -1);
+    }
+
+    @Override
+    protected void printCancel(final PrintStream out) {
+        write(out, "cancel", getProgress(), frameStatus(), null, -1);
+    }
+
+    /**
+     * Write a task switch of a master/detail bar.
+     *
+     * @param task    name of the task
+     * @param taskMax max of the task
+     */
+    synchronized void printTask(final String task, final long taskMax) {
+        PrintStream out = getOut();
+        if (iOwnOutput && null != out) {
+            write(out, "task", getProgress(), frameStatus(), task, taskMax);
+        }
+    }
+
+    private static boolean same(final String first, final String second) {
+        return (null == first) ? (null == second) : first.equals(second);
+    }
+
+    private void write(final PrintStream out,
+                       final String event,
+                       final long progress,
+                       final String status,
+                       final String task,
+                       final long taskMax) {
+        ProgressSnapshot snapshot = snapshot(progress);
+
+        line.setLength(0);
+        line.append("{\"event\":\"").append(event).append('"');
+        line.append(",\"name\":");
+        appendString(name);
+        line.append(",\"time\":").append(System.currentTimeMillis());
+        line.append(",\"elapsed\":").append(snapshot.getElapsed().toMillis());
+        line.append(",\"progress\":").append(progress);
+        line.append(",\"max\":").append(max);
+        line.append(",\"percent\":").append(snapshot.getPercentage());
+        line.append(",\"rate\":");
+        double rate = snapshot.getRate();
+        if (Double.isNaN(rate) || Double.isInfinite(rate)) {
+            line.append("null");
+        } else {
+            line.append(Math.round(rate * 1000) / 1000.0);
+        }
+        line.append(",\"eta\":");
+        if (null == snapshot.getEta()) {
+            line.append("null");
+        } else {
+            line.append(snapshot.getEta().toMillis());
+        }
+        line.append(",\"status\":");
+        appendString(statusText(status, progress));
+        if (null != task || taskMax >= 0) {
+            line.append(",\"task\":");
+            appendString(task);
+            line.append(",\"taskMax\":").append(taskMax);
+        }
+        line.append('}').append(System.lineSeparator());
+
+        frame.reset();
+        frame.append(line);
+        framePainted(frame.writeTo(out));
+    }
+
+    private void appendString(final String value) {
+        if (null == value) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+}
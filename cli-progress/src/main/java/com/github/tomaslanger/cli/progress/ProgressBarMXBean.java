@@ -0,0 +1,160 @@
+package com.github.tomaslanger.cli.progress;
+
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Management interface of a running progress bar (including group and master/detail bars), registered when
+ * JMX is enabled (see {@link ProgressBarBase.Builder#setJmx(boolean)}).
+ * Values are read when asked for, nothing is recorded for JMX on updates of the bar. Each attribute is read from its
+ * own snapshot of the bar, use {@link #getSnapshot()} to read values consistent with each other.
+ */
+public interface ProgressBarMXBean {
+    /**
+     * Type of the bar, such as ProgressBarInPlace.
+     *
+     * @return simple class name of the bar
+     */
+    String getType();
+
+    /**
+     * Progress, rate, times and status read at one moment.
+     *
+     * @return state of the bar
+     */
+    State getSnapshot();
+
+    long getProgress();
+
+    long getMax();
+
+    int getPercentage();
+
+    /**
+     * Smoothed progress per second.
+     *
+     * @return rate, zero until measured
+     */
+    double getRate();
+
+    /**
+     * Estimated time until done.
+     *
+     * @return milliseconds, -1 if not known
+     */
+    long getEtaMillis();
+
+    long getElapsedMillis();
+
+    /**
+     * Status of the last painted frame (with expanded placeholders), the status supplier is never called for JMX.
+     *
+     * @return status, null if none
+     */
+    String getStatus();
+
+    boolean isHeadless();
+
+    /**
+     * Frames painted by this bar (zero for group and master/detail bars).
+     *
+     * @return frames
+     */
+    long getFramesPainted();
+
+    /**
+     * Bytes written by this bar (zero for group and master/detail bars).
+     *
+     * @return bytes
+     */
+    long getBytesWritten();
+
+    /**
+     * Bytes written to standard and error outputs while this bar replaced them.
+     *
+     * @return bytes
+     */
+    long getCapturedBytes();
+
+    /**
+     * State of a bar at one moment, exposed as a single composite attribute.
+     */
+    final class State {
+        private final long progress;
+        private final long max;
+        private final int percentage;
+        private final double rate;
+        private final long etaMillis;
+        private final long elapsedMillis;
+        private final String status;
+
+        public State(final long progress,
+                     final long max,
+                     final int percentage,
+                     final double rate,
+                     final long etaMillis,
+                     final long elapsedMillis,
+                     final String status) {
+            this.progress = progress;
+            this.max = max;
+            this.percentage = percentage;
+            this.rate = rate;
+            this.etaMillis = etaMillis;
+            this.elapsedMillis = elapsedMillis;
+            this.status = status;
+        }
+
+        /**
+         * Reconstruct from the composite value, used by MXBean proxies.
+         *
+         * @param data composite value of the attribute
+         * @return state
+         */
+        public static State from(final CompositeData data) {
+            return new State((Long) data.get("progress"),
+                             (Long) data.get("max"),
+                             (Integer) data.get("percentage"),
+                             (Double) data.get("rate"),
+                             (Long) data.get("etaMillis"),
+                             (Long) data.get("elapsedMillis"),
+                             (String) data.get("status"));
+        }
+
+        public long getProgress() {
+            return progress;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public int getPercentage() {
+            return percentage;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        /**
+         * Estimated time until done.
+         *
+         * @return milliseconds, -1 if not known
+         */
+        public long getEtaMillis() {
+            return etaMillis;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Status of the last painted frame (with expanded placeholders).
+         *
+         * @return status, null if none
+         */
+        public String getStatus() {
+            return status;
+        }
+    }
+}
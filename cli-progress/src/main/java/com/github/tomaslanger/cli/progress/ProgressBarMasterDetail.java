@@ -7,6 +7,14 @@ import java.io.PrintStream;
 
 /**
  * Progress bar combination of master (overall progress) and detail (current task progress).
+ * <p>
+ * Tasks run one after another ({@link #nextTask(long, String)}), or at the same time when enabled with
+ * {@link Builder#setParallelTasks(boolean)} - each task started with {@link #startTask(long, String)} is a bar
+ * updated from its own thread, and master with all running tasks is painted in a single frame by the render thread.
+ * <p>
+ * Many short tasks (shorter than a frame) are best run as micro tasks ({@link Builder#setMicroTasks(boolean)}) -
+ * {@link #nextTask(long, String)} then only records the task and the render thread paints the task current at the time
+ * of each frame.
  *
  * User: Tomas.Langer
  * Date: 21.12.2015
@@ -15,17 +23,57 @@ import java.io.PrintStream;
  * @author Tomas Langer (tomas.langer@gmail.com)
  */
 public class ProgressBarMasterDetail extends ProgressBarBase {
+    private static final int DEFAULT_MICRO_TASK_FPS = 10;
+    //max of the child bar of micro tasks, progress of the current task is scaled to it
+    private static final int MICRO_TASK_SCALE = 1000;
+    private static final String CSI = "\u001B[";
+    //lines longer than terminal are cut instead of wrapped while a frame is written (DECAWM), so rows stay in place
+    private static final String AUTO_WRAP_OFF = CSI + "?7l";
+    private static final String AUTO_WRAP_ON = CSI + "?7h";
+    private static final String ERASE_LINE_END = Ansi.eraseLineEnd();
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    //rows of a frame - master, info text of the task and the task bar
+    private static final int INFO_ROW = 1;
+    private static final int DETAIL_ROW = 2;
 
     private final ProgressBar.Builder childBulder;
 
     private PrintStream out;
     private boolean isBatch;
+    private final boolean isJson;
 
     private ProgressBar master;
-    private ProgressBar child;
+    private ProgressBarInPlace child;
 
-    private int currentTaskProgress;
-    private int overallProgress;
+    //volatile, as they may be read for monitoring
+    private volatile long currentTaskProgress;
+    private volatile long overallProgress;
+    private volatile String infoText;
+    private final Throughput throughput = new Throughput();
+
+    //parallel tasks are rows of a group, that also shows master
+    private final boolean isParallel;
+    private final int taskFps;
+    private ProgressBarGroup tasks;
+    private boolean masterIsRow;
+
+    //micro tasks are only recorded, current one is painted by the render thread to a single reused child
+    private final boolean isMicro;
+    //negative until the first task
+    private volatile long currentTaskMax = -1;
+    //start of the current task (painted by the child), micro tasks use start of this bar
+    private volatile long taskBeginNanos;
+
+    /*
+     * Master, info text and child are composed into a single frame, rows are positioned relative to the top row of
+     * the frame, where the cursor is between frames. Only accessed when painting (holding the lock of this instance).
+     */
+    private final boolean isComposed;
+    private FrameBuffer frame = new FrameBuffer(256);
+    private FrameBuffer frameOnScreen = new FrameBuffer(256);
+    private boolean detailOnScreen;
+    //row of the cursor while assembling a frame
+    private int cursorRow;
 
     protected ProgressBarMasterDetail(final Builder builder) {
         super(builder);
@@ -36,43 +84,120 @@ public class ProgressBarMasterDetail extends ProgressBarBase {
             masterBuilder.setBatch();
         }
         this.master = masterBuilder.build();
+        //master may be batch even if this bar is not (e.g. with system property cliprogress.batch)
+        this.isBatch = isBatch || master instanceof ProgressBarBatch;
         this.childBulder = builder.getChildPbBuilder();
+        //events of tasks are written by the master, no child bars
+        this.isJson = master instanceof ProgressBarJson;
+        this.isParallel = builder.isParallelTasks();
+        this.taskFps = builder.getTaskFps();
+        this.isMicro = builder.isMicroTasks();
+        this.isComposed = !isJson && !isBatch && !isParallel && master instanceof ProgressBarInPlace;
     }
 
     /**
-     * Indicate that we will start next task in the sequence - will create a new child progress bar.
+     * Start a task that runs at the same time as others (requires {@link Builder#setParallelTasks(boolean)}).
+     * The returned bar is the handle of the task - update it from any thread and end it when the task is done
+     * (or cancel it). Its progress is added to master when a frame is painted, so tasks do not contend on a shared
+     * total. Can be called from any thread.
+     *
+     * @param max      Maximum of the task
+     * @param infoText Status of the task (such as "Downloading test.jpg")
+     * @return started bar of the task
+     */
+    public ProgressBar startTask(final long max, final String infoText) {
+        super.checkSetProgress();
+
+        if (!isParallel) {
+            throw new IllegalStateException("Parallel tasks are not enabled, use nextTask or Builder#setParallelTasks");
+        }
+        if (isJson && !isHeadless()) {
+            ((ProgressBarJson) master).printTask(infoText, max);
+        }
+
+        ProgressBar task;
+        synchronized (this) {
+            //builder is shared by all tasks
+            task = tasks().add(childBulder.setMax(max));
+        }
+        task.setStatus(infoText);
+
+        return task;
+    }
+
+    private synchronized ProgressBarGroup tasks() {
+        if (null == tasks) {
+            ProgressBarGroup.Builder builder = new ProgressBarGroup.Builder()
+                    .setPrintEnded(masterIsRow)
+                    .claimNoOuts()
+                    .setFps(taskFps);
+            if (isHeadless()) {
+                //summary is printed by this bar
+                builder.setHeadless(HeadlessMode.SILENT);
+            } else if (!masterIsRow) {
+                //only master is painted (or written as events)
+                builder.setBatch();
+            }
+            tasks = builder.build();
+            tasks.begin(out);
+            if (!isHeadless()) {
+                tasks.setMaster(master, masterIsRow);
+            }
+        }
+
+        return tasks;
+    }
+
+    /**
+     * Whether tasks run at the same time (see {@link Builder#setParallelTasks(boolean)}).
+     *
+     * @return true for parallel tasks
+     */
+    boolean isParallel() {
+        return isParallel;
+    }
+
+    private void checkSequential() {
+        if (isParallel) {
+            throw new IllegalStateException("Parallel tasks are enabled, use startTask");
+        }
+    }
+
+    /**
+     * Indicate that we will start next task in the sequence - will show the child progress bar for the task (the same
+     * bar is reused while tasks have the same max).
+     * With micro tasks the task is only recorded, the child bar shows the task current when a frame is painted.
      *
      * @param max Maximum for the current task, to progress the child progress bar (and indirectly the master)
      * @param infoText Text to write above the child progress bar (such as "Downloading test.jpg, 0 KB of 1 MB done")
      */
-    public void nextTask(final int max, final String infoText) {
+    public void nextTask(final long max, final String infoText) {
         super.checkSetProgress();
+        checkSequential();
 
         //overall progress now must contain the previous child progress
         overallProgress += currentTaskProgress;
         currentTaskProgress = 0;
+        currentTaskMax = max;
+        this.infoText = infoText;
+        if (isComposed && !isMicro) {
+            taskBeginNanos = System.nanoTime();
+        }
 
-        if (isBatch) {
+        if (isHeadless()) {
             return;
         }
-
-        if (null == child) {
-            //first child, must go to next line from master bar
-            out.println();
-        } else {
-            //clear status line
-            child.setStatus(null);
-            child.end();
-            //compensate for last end of line after we finish the sub task
-            out.print(Ansi.cursorUp(2));
-            out.print('\r');
+        if (isMicro) {
+            microTaskChanged();
+            return;
+        }
+        if (isJson) {
+            ((ProgressBarJson) master).printTask(infoText, max);
+            return;
+        }
+        if (isComposed) {
+            paintFrame();
         }
-
-        //create new child progress bar
-        child = childBulder.setMax(max).build();
-        child.begin(out);
-
-        child.setProgress(0, infoText);
     }
 
     /**
@@ -81,32 +206,267 @@ public class ProgressBarMasterDetail extends ProgressBarBase {
      * @param currentTaskProgress Progress between 0 and current task max
      * @param infoText Text to write above the child progress bar (such as "Downloading test.jpg, 100 KB of 1 MB done")
      */
-    public void setProgress(int currentTaskProgress, String infoText) {
+    public void setProgress(long currentTaskProgress, String infoText) {
         super.checkSetProgress();
+        checkSequential();
 
         this.currentTaskProgress = currentTaskProgress;
+        this.infoText = infoText;
+
+        if (isHeadless()) {
+            return;
+        }
+        if (isMicro) {
+            microTaskChanged();
+            return;
+        }
+        if (isJson) {
+            master.setProgress(overallProgress + this.currentTaskProgress, infoText);
+            return;
+        }
 
-        if (!isBatch) {
-            out.print(Ansi.cursorUp(2));
+        if (isComposed) {
+            paintFrame();
+        } else {
+            master.setProgress(overallProgress + this.currentTaskProgress);
         }
+    }
+
+    /**
+     * Micro task started or progressed - bars are painted by the render thread, events (or characters of a batch
+     * bar) are written by master that only writes when its progress visibly changes.
+     */
+    private void microTaskChanged() {
+        if (isComposed) {
+            markDirty();
+        } else {
+            master.setProgress(overallProgress + currentTaskProgress, infoText);
+        }
+    }
+
+    @Override
+    protected void renderFrame() {
+        if (isMicro && isComposed) {
+            paintFrame();
+        }
+    }
+
+    /**
+     * Compose master, info text and bar of the current task into a single frame and write it with a single write,
+     * only if it differs from the frame on screen. Rows are positioned by relative moves from the top row of the frame
+     * and the frame ends there again, lines are not wrapped while it is written, so a long status line cannot shift
+     * the other rows. Saved cursor (DECSC) is not used, it belongs to bars pinned to the bottom of terminal.
+     * Micro tasks are scaled to a child bar that is created once and reused for all tasks.
+     */
+    private synchronized void paintFrame() {
+        if (!iOwnOutput) {
+            return;
+        }
+
+        //overall before the task, so progress of a finished task is not counted twice while moving to the next one
+        long overall = overallProgress;
+        long taskMax = currentTaskMax;
+        long taskProgress = currentTaskProgress;
+        String status = infoText;
+
+        frame.reset();
+        frame.append(AUTO_WRAP_OFF);
+        cursorRow = 0;
+        master.recordProgress(overall + taskProgress);
+        moveToRow(0);
+        ((ProgressBarInPlace) master).printBarRow(frame);
+        frame.append(ERASE_LINE_END);
+
+        if (taskMax >= 0) {
+            ProgressBarInPlace detail = detail(isMicro ? MICRO_TASK_SCALE : taskMax);
+            //child is never begun, its status measures time of the task
+            long taskBegin = isMicro ? getBeginNanos() : taskBeginNanos;
+            if (detail.getBeginNanos() != taskBegin) {
+                detail.startClock(taskBegin);
+            }
+            detail.recordStatus(status);
+            detail.recordProgress(isMicro ? ProgressBar.fraction(taskProgress, taskMax, MICRO_TASK_SCALE) : taskProgress);
+            //bar prepares the status, so status row is appended after it
+            moveToRow(DETAIL_ROW);
+            detail.printBarRow(frame);
+            frame.append(ERASE_LINE_END);
+            moveToRow(INFO_ROW);
+            detail.printStatusRow(frame);
+            frame.append(ERASE_LINE_END);
+            detailOnScreen = true;
+        }
+        moveToRow(0);
+        frame.append(AUTO_WRAP_ON);
+
+        if (frame.sameContent(frameOnScreen)) {
+            return;
+        }
+        frame.writeTo(out);
+        FrameBuffer written = frame;
+        frame = frameOnScreen;
+        frameOnScreen = written;
+    }
 
-        master.setProgress(overallProgress + this.currentTaskProgress);
+    private void moveToRow(final int row) {
+        if (row < cursorRow) {
+            frame.append(CSI).appendNumber(cursorRow - row).append('A');
+        } else if (row > cursorRow) {
+            frame.append(CSI).appendNumber(row - cursorRow).append('B');
+        }
+        frame.append('\r');
+        cursorRow = row;
+    }
 
-        if (!isBatch) {
-            out.print(Ansi.cursorDown(2));
-            child.setProgress(currentTaskProgress, infoText);
+    /**
+     * Child bar of the current task, the same bar is reused while tasks have the same max.
+     */
+    private ProgressBarInPlace detail(final long max) {
+        if (null == child || child.getMaxLong() != max) {
+            child = (ProgressBarInPlace) childBulder.setMax(max).build();
         }
+
+        return child;
     }
 
     @Override
     protected void finishProgressBar(final boolean isCancel) {
-        out.println();
+        if (isComposed) {
+            if (!iOwnOutput) {
+                //somebody else owns the outputs, nothing was painted
+                System.out.println(summary(isCancel));
+                return;
+            }
+            //last state, then continue below the frame
+            paintFrame();
+            synchronized (this) {
+                frame.reset();
+                cursorRow = 0;
+                moveToRow(detailOnScreen ? DETAIL_ROW : 0);
+                frame.append(LINE_SEPARATOR);
+                frame.writeTo(out);
+                frame.reset();
+                frameOnScreen.reset();
+                detailOnScreen = false;
+            }
+            return;
+        }
+        if (isParallel) {
+            finishTasks(isCancel);
+            //master was painted by the group, or prints its end
+            if (isCancel) {
+                master.cancel();
+            } else {
+                master.end();
+            }
+            return;
+        }
+        //master writes events or batch characters itself
+        if (isCancel) {
+            master.cancel();
+        } else {
+            master.end();
+        }
+    }
+
+    /**
+     * Overall state of all tasks.
+     *
+     * @return snapshot of overall progress
+     */
+    @Override
+    public ProgressSnapshot getSnapshot() {
+        return ProgressBar.snapshot(throughput, getBeginNanos(), totalProgress(), master.getMaxLong());
+    }
+
+    private long totalProgress() {
+        if (isParallel) {
+            ProgressBarGroup group;
+            synchronized (this) {
+                group = tasks;
+            }
+            return (null == group) ? 0 : group.getTotalProgress();
+        }
+
+        return overallProgress + currentTaskProgress;
+    }
+
+    @Override
+    ProgressSnapshot readSnapshot() {
+        return ProgressBar.peekSnapshot(throughput, getBeginNanos(), totalProgress(), master.getMaxLong());
+    }
+
+    @Override
+    String getStatusText(final ProgressSnapshot snapshot) {
+        return infoText;
+    }
+
+    @Override
+    protected boolean isForTerminal() {
+        return !isJson;
+    }
+
+    private synchronized void finishTasks(final boolean isCancel) {
+        if (null == tasks) {
+            return;
+        }
+        if (isCancel) {
+            tasks.cancel();
+        } else {
+            tasks.end();
+        }
+        tasks = null;
+    }
+
+    @Override
+    protected void finishHeadless(final boolean isCancel, final PrintStream out) {
+        if (null != out) {
+            out.println(summary(isCancel));
+        }
+        finishTasks(isCancel);
+        overallProgress = 0;
+        currentTaskProgress = 0;
+        currentTaskMax = -1;
+        infoText = null;
+    }
+
+    private String summary(final boolean isCancel) {
+        long max = master.getMaxLong();
+        long progress = isCancel ? Math.min(max, totalProgress()) : max;
+        ProgressSnapshot snapshot = new ProgressSnapshot(progress, max, System.nanoTime() - getBeginNanos(), 0, -1);
+
+        return ProgressBar.headlessSummary(null, isCancel, snapshot);
     }
 
     @Override
     protected void initProgressBar() {
+        if (isParallel) {
+            synchronized (this) {
+                masterIsRow = !isJson && !isBatch && !ONE_LINE_ONLY && (master instanceof ProgressBarInPlace);
+            }
+            if (!masterIsRow) {
+                master.begin(out);
+            }
+            tasks();
+            return;
+        }
+        if (isComposed) {
+            //master is never begun, it is painted as a row of this bar
+            master.startClock(getBeginNanos());
+            //reserve rows of the frame (scrolling the screen if needed) and go back to its top row
+            synchronized (this) {
+                frame.reset();
+                frame.append('\r');
+                frame.append(LINE_SEPARATOR);
+                frame.append(LINE_SEPARATOR);
+                frame.append(CSI).appendNumber(DETAIL_ROW).append('A');
+                frame.writeTo(out);
+                frameOnScreen.reset();
+            }
+            paintFrame();
+            return;
+        }
         master.begin(out);
-        master.setProgress(0);
+        master.setProgress(0L);
     }
 
     @Override
@@ -120,6 +480,9 @@ public class ProgressBarMasterDetail extends ProgressBarBase {
     public static class Builder extends ProgressBarBase.Builder<ProgressBarMasterDetail.Builder> {
         private ProgressBar.Builder masterPbBuilder;
         private ProgressBar.Builder childPbBuilder;
+        private boolean parallelTasks;
+        private boolean microTasks;
+        private int taskFps;
 
         /**
          * Must have set overall maximum (sum of all max of all children). Otherwise it will not measure progress
@@ -147,6 +510,49 @@ public class ProgressBarMasterDetail extends ProgressBarBase {
             return this;
         }
 
+        /**
+         * Run tasks at the same time - start each with {@link #startTask(long, String)} instead of
+         * {@link #nextTask(long, String)}. Master and all running tasks are painted by the render thread, each task
+         * on its own row (see {@link ProgressBarGroup}) at frames per second of this builder (10 if not set).
+         * Default is false.
+         *
+         * @param parallelTasks true to run tasks in parallel
+         * @return Builder this instance
+         */
+        public Builder setParallelTasks(final boolean parallelTasks) {
+            this.parallelTasks = parallelTasks;
+
+            return this;
+        }
+
+        public boolean isParallelTasks() {
+            return parallelTasks;
+        }
+
+        /**
+         * Run many short tasks one after another, such as millions of tasks shorter than a frame. Tasks are not
+         * painted one by one - {@link #nextTask(long, String)} and {@link #setProgress(long, String)} only record the
+         * current task, and the render thread paints master and the task current at the time of each frame
+         * at frames per second of this builder (10 if not set). The child bar is created once and reused, showing
+         * progress of the current task in percents. Cannot be combined with parallel tasks. Default is false.
+         *
+         * @param microTasks true to run micro tasks
+         * @return Builder this instance
+         */
+        public Builder setMicroTasks(final boolean microTasks) {
+            this.microTasks = microTasks;
+
+            return this;
+        }
+
+        public boolean isMicroTasks() {
+            return microTasks;
+        }
+
+        private int getTaskFps() {
+            return taskFps;
+        }
+
         private ProgressBar.Builder getMasterPbBuilder() {
             return masterPbBuilder;
         }
@@ -157,12 +563,20 @@ public class ProgressBarMasterDetail extends ProgressBarBase {
 
         /**
          * Build the progress bar instance with settings configured with this builder.
+         * Master and child bars are composed into a single frame painted synchronously on each update (frames per
+         * second are ignored), unless tasks run in parallel or are micro tasks.
          *
          * @return ProgressBarMasterDetail configured
          */
         public ProgressBarMasterDetail build() {
-            masterPbBuilder.claimNoOuts().setStatusLocation(StatusLoc.SAME_LINE);
-            childPbBuilder.claimNoOuts().setStatusLocation(StatusLoc.FIRST_LINE);
+            if (parallelTasks && microTasks) {
+                throw new IllegalArgumentException("Micro tasks cannot run in parallel");
+            }
+            taskFps = getFps();
+            //micro tasks are painted by the render thread of master/detail itself
+            setFps(microTasks ? ((taskFps == 0) ? DEFAULT_MICRO_TASK_FPS : taskFps) : 0);
+            masterPbBuilder.claimNoOuts().setStatusLocation(StatusLoc.SAME_LINE).setFps(0);
+            childPbBuilder.claimNoOuts().setStatusLocation(StatusLoc.FIRST_LINE).setFps(0);
 
             return new ProgressBarMasterDetail(this);
         }
@@ -0,0 +1,193 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor service counting submitted, running and finished tasks of another executor service (see
+ * {@link TaskProgress}), so tasks do not need to update a progress bar themselves.
+ * <p>
+ * Example:
+ * <pre>
+ * ProgressBar bar = new ProgressBar.Builder().setMax(files.size()).setFps(10).build();
+ * ProgressExecutorService executor = new ProgressExecutorService(Executors.newFixedThreadPool(8), bar);
+ * bar.begin();
+ * try {
+ *     files.forEach(file -&gt; executor.submit(() -&gt; process(file)));
+ *     executor.shutdown();
+ *     executor.awaitTermination(1, TimeUnit.HOURS);
+ * } finally {
+ *     bar.end();
+ * }
+ * </pre>
+ * Tasks not started when {@link #shutdownNow()} is called are counted as cancelled, tasks rejected by the executor
+ * as failed.
+ */
+public class ProgressExecutorService extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final TaskProgress progress;
+
+    /**
+     * Create executor service driving a bar.
+     *
+     * @param delegate executor service to run the tasks
+     * @param bar      bar to add finished tasks to (should be rendered in background, see {@link TaskProgress})
+     */
+    public ProgressExecutorService(final ExecutorService delegate, final ProgressBar bar) {
+        this(delegate, new TaskProgress(bar));
+    }
+
+    /**
+     * Create executor service updating counters.
+     *
+     * @param delegate executor service to run the tasks
+     * @param progress counters to update
+     */
+    public ProgressExecutorService(final ExecutorService delegate, final TaskProgress progress) {
+        this.delegate = delegate;
+        this.progress = progress;
+    }
+
+    /**
+     * Counters of tasks submitted to this executor.
+     *
+     * @return counters
+     */
+    public TaskProgress getProgress() {
+        return progress;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(final Runnable runnable, final T value) {
+        return new TrackedTask<>(Executors.callable(runnable, value), progress);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
+        return new TrackedTask<>(callable, progress);
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        //tasks of the submit methods are tracked already
+        Runnable tracked = (command instanceof TrackedTask) ? command : new TrackedRunnable(command, progress);
+        progress.submitted();
+        try {
+            delegate.execute(tracked);
+        } catch (RejectedExecutionException e) {
+            //never runs, counted as failed so the submitted tasks still finish
+            progress.finished(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> notStarted = delegate.shutdownNow();
+        for (Runnable runnable : notStarted) {
+            if (runnable instanceof TrackedTask) {
+                ((TrackedTask<?>) runnable).cancel(false);
+            } else if (runnable instanceof TrackedRunnable) {
+                progress.finished(new CancellationException());
+            }
+        }
+        return notStarted;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Task submitted with a future. Counted as finished when the future is done (also when cancelled before it
+     * started).
+     */
+    private static final class TrackedTask<T> extends FutureTask<T> {
+        private final TaskProgress progress;
+
+        private TrackedTask(final Callable<T> callable, final TaskProgress progress) {
+            super(callable);
+            this.progress = progress;
+        }
+
+        @Override
+        public void run() {
+            progress.started();
+            try {
+                super.run();
+            } finally {
+                progress.stopped();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                progress.finished(new CancellationException());
+                return;
+            }
+            try {
+                get();
+                progress.finished(null);
+            } catch (ExecutionException e) {
+                progress.finished(e.getCause());
+            } catch (InterruptedException e) {
+                //cannot happen, the task is done
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Task executed without a future, exceptions are thrown to the executing thread as usual.
+     */
+    private static final class TrackedRunnable implements Runnable {
+        private final Runnable runnable;
+        private final TaskProgress progress;
+
+        private TrackedRunnable(final Runnable runnable, final TaskProgress progress) {
+            this.runnable = runnable;
+            this.progress = progress;
+        }
+
+        @Override
+        public void run() {
+            progress.started();
+            Throwable failure = null;
+            try {
+                runnable.run();
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                throw e;
+            } finally {
+                progress.stopped();
+                progress.finished(failure);
+            }
+        }
+    }
+}
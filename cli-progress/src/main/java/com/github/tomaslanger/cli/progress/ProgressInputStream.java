@@ -0,0 +1,129 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Input stream updating a progress bar with the number of bytes read (and skipped).
+ * Small reads are folded into one update of the bar per a number of bytes (a thousandth of max of the bar by
+ * default) or per 50 milliseconds, so reading byte by byte does not paint the bar on each read.
+ * Use {@link ProgressBar.Builder#setMax(java.nio.file.Path)} to set max of the bar to the size of a file.
+ * <p>
+ * Example:
+ * <pre>
+ * ProgressBar bar = new ProgressBar.Builder().setMax(path).build();
+ * bar.begin();
+ * try (InputStream in = new ProgressInputStream(Files.newInputStream(path), bar)) {
+ *     //read the stream
+ * } finally {
+ *     bar.end();
+ * }
+ * </pre>
+ * Mark and reset are not supported, as progress cannot go back. Not thread safe, same as most input streams.
+ */
+public class ProgressInputStream extends FilterInputStream {
+    private final ProgressUpdates updates;
+
+    /**
+     * Create a stream updating the bar with default threshold and time slice.
+     *
+     * @param in  stream to read from
+     * @param bar bar to update
+     */
+    public ProgressInputStream(final InputStream in, final ProgressBar bar) {
+        super(in);
+        this.updates = new ProgressUpdates(bar);
+    }
+
+    /**
+     * Create a stream updating the bar once per the number of bytes read (or at least each 50 milliseconds).
+     *
+     * @param in        stream to read from
+     * @param bar       bar to update
+     * @param threshold number of bytes to read before the bar is updated
+     */
+    public ProgressInputStream(final InputStream in, final ProgressBar bar, final long threshold) {
+        super(in);
+        this.updates = new ProgressUpdates(bar, threshold);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = in.read();
+        if (result < 0) {
+            updates.flush();
+        } else {
+            updates.transferred(1);
+        }
+        return result;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        int result = in.read(b, off, len);
+        if (result < 0) {
+            updates.flush();
+        } else {
+            updates.transferred(result);
+        }
+        return result;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        long result = in.skip(n);
+        updates.transferred(result);
+        return result;
+    }
+
+    /**
+     * Read all remaining bytes of this stream and write them to the output stream.
+     * If this stream reads a file, bytes are transferred by its channel without copying them through the heap
+     * (see {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)}), in chunks, so the bar
+     * is updated during the transfer.
+     *
+     * @param out output stream to write to
+     * @return number of transferred bytes
+     * @throws IOException in case reading or writing fails
+     */
+    public long transferTo(final OutputStream out) throws IOException {
+        if (in instanceof FileInputStream) {
+            WritableByteChannel target = (out instanceof FileOutputStream)
+                    ? ((FileOutputStream) out).getChannel()
+                    : Channels.newChannel(out);
+            return updates.transfer(((FileInputStream) in).getChannel(), target);
+        }
+
+        return updates.copy(Channels.newChannel(in), Channels.newChannel(out));
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+        //not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("Mark and reset are not supported by progress stream");
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            in.close();
+        } finally {
+            updates.flush();
+        }
+    }
+}
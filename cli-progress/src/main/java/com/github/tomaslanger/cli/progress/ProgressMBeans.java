@@ -0,0 +1,156 @@
+package com.github.tomaslanger.cli.progress;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registration of progress bars and of the renderer in the platform MBean server. Only used when JMX is enabled
+ * (see {@link ProgressBarBase.Builder#setJmx(boolean)}), failures to register are ignored - monitoring must never
+ * break the progress bar.
+ */
+final class ProgressMBeans {
+    static final String DOMAIN = "com.github.tomaslanger.cli.progress";
+
+    private static final AtomicLong IDS = new AtomicLong();
+    private static boolean rendererRegistered;
+
+    private ProgressMBeans() {
+    }
+
+    /**
+     * Register a started bar.
+     *
+     * @param bar bar to register
+     * @return name of the registered MBean, null if not registered
+     */
+    static ObjectName register(final ProgressBarBase bar) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        registerRenderer(server);
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=ProgressBar,id=" + IDS.incrementAndGet());
+            server.registerMBean(new View(bar), name);
+            return name;
+        } catch (JMException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Unregister an ended bar.
+     *
+     * @param name name returned from {@link #register(ProgressBarBase)}, ignored if null
+     */
+    static void unregister(final ObjectName name) {
+        if (null == name) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException ignored) {
+            //already unregistered
+        }
+    }
+
+    private static synchronized void registerRenderer(final MBeanServer server) {
+        if (rendererRegistered) {
+            return;
+        }
+        rendererRegistered = true;
+        try {
+            server.registerMBean(Renderer.getInstance(), new ObjectName(DOMAIN + ":type=Renderer"));
+        } catch (JMException ignored) {
+            //registered by another class loader
+        }
+    }
+
+    /**
+     * MBean of a single bar, reads its state when asked - without sampling progress per second and without calling
+     * status suppliers, so monitoring has no effect on the bar.
+     */
+    private static final class View implements ProgressBarMXBean {
+        private final ProgressBarBase bar;
+
+        private View(final ProgressBarBase bar) {
+            this.bar = bar;
+        }
+
+        @Override
+        public String getType() {
+            return bar.getClass().getSimpleName();
+        }
+
+        @Override
+        public State getSnapshot() {
+            ProgressSnapshot snapshot = bar.readSnapshot();
+            return new State(snapshot.getProgress(),
+                             snapshot.getMax(),
+                             snapshot.getPercentage(),
+                             snapshot.getRate(),
+                             etaMillis(snapshot),
+                             snapshot.getElapsed().toMillis(),
+                             bar.getStatusText(snapshot));
+        }
+
+        @Override
+        public long getProgress() {
+            return bar.readSnapshot().getProgress();
+        }
+
+        @Override
+        public long getMax() {
+            return bar.readSnapshot().getMax();
+        }
+
+        @Override
+        public int getPercentage() {
+            return bar.readSnapshot().getPercentage();
+        }
+
+        @Override
+        public double getRate() {
+            return bar.readSnapshot().getRate();
+        }
+
+        @Override
+        public long getEtaMillis() {
+            return etaMillis(bar.readSnapshot());
+        }
+
+        @Override
+        public long getElapsedMillis() {
+            return bar.readSnapshot().getElapsed().toMillis();
+        }
+
+        @Override
+        public String getStatus() {
+            return bar.getStatusText(bar.readSnapshot());
+        }
+
+        private static long etaMillis(final ProgressSnapshot snapshot) {
+            return (null == snapshot.getEta()) ? -1 : snapshot.getEta().toMillis();
+        }
+
+        @Override
+        public boolean isHeadless() {
+            return bar.isHeadless();
+        }
+
+        @Override
+        public long getFramesPainted() {
+            return (bar instanceof ProgressBar) ? ((ProgressBar) bar).getFramesPainted() : 0;
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return (bar instanceof ProgressBar) ? ((ProgressBar) bar).getBytesWritten() : 0;
+        }
+
+        @Override
+        public long getCapturedBytes() {
+            return bar.getCapturedBytes();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node of a {@link ProgressTree}, such as a module, a file of a module or a chunk of a file. Progress of a node rolls
+ * up to its ancestors: each update adds only the change of the node's share to its parent, and so on up to the root,
+ * so the cost of an update depends on depth of the node, not on number of its siblings.
+ * <p>
+ * A node is worth its weight in progress units of its parent when done (by default its max, so units of leaves add up
+ * to units of the root). All methods can be called from any thread.
+ */
+public final class ProgressNode {
+    private final ProgressTree tree;
+    private final ProgressNode parent;
+    private final String name;
+    private final long max;
+    private final long weight;
+    private final int depth;
+    private final AtomicLong progress = new AtomicLong();
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    ProgressNode(final ProgressTree tree,
+                 final ProgressNode parent,
+                 final String name,
+                 final long max,
+                 final long weight) {
+        if (max <= 0) {
+            throw new IllegalArgumentException("Max must be positive: " + max);
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative: " + weight);
+        }
+        this.tree = tree;
+        this.parent = parent;
+        this.name = name;
+        this.max = max;
+        this.weight = weight;
+        this.depth = (null == parent) ? 0 : parent.depth + 1;
+    }
+
+    /**
+     * Create a child node worth its max in progress units of this node.
+     *
+     * @param name name shown when the node is painted
+     * @param max  max progress of the child
+     * @return new child node
+     */
+    public ProgressNode child(final String name, final long max) {
+        return child(name, max, max);
+    }
+
+    /**
+     * Create a child node worth the weight in progress units of this node, e.g. a module made of 10 files of
+     * different sizes may create each file with weight 1 (and max equal to its size).
+     *
+     * @param name   name shown when the node is painted
+     * @param max    max progress of the child
+     * @param weight progress units of this node the child represents when done
+     * @return new child node
+     */
+    public ProgressNode child(final String name, final long max, final long weight) {
+        ProgressNode child = new ProgressNode(tree, this, name, max, weight);
+        tree.nodeStarted();
+
+        return child;
+    }
+
+    /**
+     * Increase progress by one.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Increase progress by delta and roll the change up to ancestors.
+     *
+     * @param delta progress to add
+     */
+    public void add(final long delta) {
+        long updated = progress.addAndGet(delta);
+        changed(updated - delta, updated);
+    }
+
+    /**
+     * Set progress of this node and roll the change up to ancestors.
+     *
+     * @param progress progress between 0 and max
+     */
+    public void setProgress(final long progress) {
+        long previous = this.progress.getAndSet(progress);
+        changed(previous, progress);
+    }
+
+    /**
+     * Mark the node done - progress is set to max. Nodes that are not ended keep the progress they reached.
+     */
+    public void end() {
+        if (ended.compareAndSet(false, true)) {
+            setProgress(max);
+            //the root is not counted as running (see ProgressTree#getRunning())
+            if (null != parent) {
+                tree.nodeEnded();
+            }
+        }
+    }
+
+    /**
+     * Progress of this node, including progress rolled up from its children.
+     *
+     * @return progress between 0 and max
+     */
+    public long getProgress() {
+        return Math.max(0, Math.min(max, progress.get()));
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Parent of this node.
+     *
+     * @return parent, null for the root
+     */
+    public ProgressNode getParent() {
+        return parent;
+    }
+
+    /**
+     * Distance from the root.
+     *
+     * @return 0 for the root, 1 for its children etc.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public boolean isEnded() {
+        return ended.get();
+    }
+
+    /**
+     * Roll a change of progress up to the root. Changes of a node are ordered by its atomic counter and each of them
+     * adds the difference of shares, so the shares added to the parent always sum up to the share of current progress,
+     * whatever the rounding.
+     */
+    private void changed(final long previous, final long current) {
+        ProgressNode node = this;
+        long from = previous;
+        long to = current;
+        while (null != node.parent) {
+            long delta = node.share(to) - node.share(from);
+            if (delta == 0) {
+                break;
+            }
+            node = node.parent;
+            to = node.progress.addAndGet(delta);
+            from = to - delta;
+        }
+        tree.nodeChanged(this);
+    }
+
+    /**
+     * Progress units of parent this node is worth at the progress.
+     */
+    private long share(final long progress) {
+        long done = Math.max(0, Math.min(max, progress));
+        if (weight == max) {
+            return done;
+        }
+        if (weight == 0 || done == 0) {
+            return 0;
+        }
+        if (done <= Long.MAX_VALUE / weight) {
+            return (done * weight) / max;
+        }
+        //only for huge numbers, a share is never rounded up to the whole weight until done
+        return (done == max) ? weight : Math.min(weight - 1, (long) ((double) done / max * weight));
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream updating a progress bar with the number of bytes written.
+ * Small writes are folded into one update of the bar per a number of bytes (a thousandth of max of the bar by
+ * default) or per 50 milliseconds. Pending progress is added to the bar on {@link #flush()} and {@link #close()}.
+ * <p>
+ * Unlike {@link FilterOutputStream}, arrays are written to the wrapped stream at once, not byte by byte.
+ * Not thread safe, same as most output streams.
+ */
+public class ProgressOutputStream extends FilterOutputStream {
+    private final ProgressUpdates updates;
+
+    /**
+     * Create a stream updating the bar with default threshold and time slice.
+     *
+     * @param out stream to write to
+     * @param bar bar to update
+     */
+    public ProgressOutputStream(final OutputStream out, final ProgressBar bar) {
+        super(out);
+        this.updates = new ProgressUpdates(bar);
+    }
+
+    /**
+     * Create a stream updating the bar once per the number of bytes written (or at least each 50 milliseconds).
+     *
+     * @param out       stream to write to
+     * @param bar       bar to update
+     * @param threshold number of bytes to write before the bar is updated
+     */
+    public ProgressOutputStream(final OutputStream out, final ProgressBar bar, final long threshold) {
+        super(out);
+        this.updates = new ProgressUpdates(bar, threshold);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        updates.transferred(1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        updates.transferred(len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+        updates.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+        } finally {
+            updates.flush();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Readable channel updating a progress bar with the number of bytes read.
+ * Small reads are folded into one update of the bar per a number of bytes (a thousandth of max of the bar by
+ * default) or per 50 milliseconds.
+ * Use {@link ProgressBar.Builder#setMax(java.nio.channels.SeekableByteChannel)} to set max of the bar to the
+ * remaining size of the channel.
+ * <p>
+ * To copy a file without copying its bytes through the heap, use {@link #transferTo(WritableByteChannel)}.
+ * Not thread safe - concurrent reads are not expected.
+ */
+public class ProgressReadableChannel implements ReadableByteChannel {
+    private final ReadableByteChannel channel;
+    private final ProgressUpdates updates;
+
+    /**
+     * Create a channel updating the bar with default threshold and time slice.
+     *
+     * @param channel channel to read from
+     * @param bar     bar to update
+     */
+    public ProgressReadableChannel(final ReadableByteChannel channel, final ProgressBar bar) {
+        this.channel = channel;
+        this.updates = new ProgressUpdates(bar);
+    }
+
+    /**
+     * Create a channel updating the bar once per the number of bytes read (or at least each 50 milliseconds).
+     *
+     * @param channel   channel to read from
+     * @param bar       bar to update
+     * @param threshold number of bytes to read before the bar is updated
+     */
+    public ProgressReadableChannel(final ReadableByteChannel channel, final ProgressBar bar, final long threshold) {
+        this.channel = channel;
+        this.updates = new ProgressUpdates(bar, threshold);
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        int result = channel.read(dst);
+        if (result < 0) {
+            updates.flush();
+        } else {
+            updates.transferred(result);
+        }
+        return result;
+    }
+
+    /**
+     * Read all remaining bytes of this channel and write them to the target.
+     * If this channel is a file, bytes are transferred by {@link FileChannel#transferTo(long, long,
+     * WritableByteChannel)} without copying them through the heap, in chunks, so the bar is updated during
+     * the transfer.
+     *
+     * @param target channel to write to
+     * @return number of transferred bytes
+     * @throws IOException in case reading or writing fails
+     */
+    public long transferTo(final WritableByteChannel target) throws IOException {
+        if (channel instanceof FileChannel) {
+            return updates.transfer((FileChannel) channel, target);
+        }
+        if (target instanceof FileChannel) {
+            return updates.transfer(channel, (FileChannel) target);
+        }
+
+        return updates.copy(channel, target);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            updates.flush();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.time.Duration;
+
+/**
+ * Read only state of a progress bar at one moment, see {@link ProgressBar#getSnapshot()}.
+ * Rate is an exponentially weighted moving average of progress per second, sampled when frames are painted, so it
+ * reacts to changes of speed within a few seconds.
+ */
+public final class ProgressSnapshot {
+    private final long progress;
+    private final long max;
+    private final long elapsedNanos;
+    private final double rate;
+    private final long etaNanos;
+
+    ProgressSnapshot(final long progress, final long max, final long elapsedNanos, final double rate, final long etaNanos) {
+        this.progress = progress;
+        this.max = max;
+        this.elapsedNanos = elapsedNanos;
+        this.rate = rate;
+        this.etaNanos = etaNanos;
+    }
+
+    public long getProgress() {
+        return progress;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Percentage done, 100 only when progress reached max.
+     *
+     * @return percentage between 0 and 100
+     */
+    public int getPercentage() {
+        int percentage = ProgressBar.fraction(progress, max, 100);
+        if (percentage == 100 && progress < max) {
+            return 99;
+        }
+        return percentage;
+    }
+
+    /**
+     * Time since the progress bar was started.
+     *
+     * @return elapsed time
+     */
+    public Duration getElapsed() {
+        return Duration.ofNanos(elapsedNanos);
+    }
+
+    long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Smoothed progress per second.
+     *
+     * @return progress per second, zero until measured
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Estimated time until progress reaches max at current rate.
+     *
+     * @return remaining time, or null if not known yet (no progress measured)
+     */
+    public Duration getEta() {
+        return (etaNanos < 0) ? null : Duration.ofNanos(etaNanos);
+    }
+
+    long getEtaNanos() {
+        return etaNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ProgressSnapshot{" +
+                "progress=" + progress +
+                ", max=" + max +
+                ", elapsed=" + getElapsed() +
+                ", rate=" + rate +
+                ", eta=" + getEta() +
+                '}';
+    }
+}
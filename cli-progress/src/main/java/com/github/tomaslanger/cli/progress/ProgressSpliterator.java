@@ -0,0 +1,218 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spliterator adding traversed elements to progress of a bar, for sequential and parallel streams.
+ * Each split part (a leaf task of a parallel stream) counts its elements locally and adds them to the bar in
+ * batches - a thousandth of the exact size of the source by default (at least 64 but at most a hundredth of the size,
+ * at most 4096 elements; 64 if the size is not known), and the rest when the part is traversed. Threads therefore
+ * share no counter per element. Parts of sized spliterators (such as of lists and arrays) are traversed in batches
+ * split by the source, so elements are not counted one by one at all. Build the bar with
+ * {@link ProgressBar.Builder#setFps(int)}, so adding to it never blocks.
+ * <p>
+ * Example:
+ * <pre>
+ * ProgressBar bar = new ProgressBar.Builder().setMax(items).setFps(10).build();
+ * bar.begin();
+ * try {
+ *     ProgressSpliterator.stream(items, bar, true).forEach(this::process);
+ * } finally {
+ *     bar.end();
+ * }
+ * </pre>
+ * Short-circuiting operations (e.g. findFirst) may stop before the counted elements are added.
+ * <p>
+ * Max of the bar is not taken from the source when the stream is created: the bar is built (and may be painted)
+ * before, and max of a bar does not change once built. Set it on the builder from the same source with
+ * {@link ProgressBar.Builder#setMax(Collection)} or {@link ProgressBar.Builder#setMax(Spliterator)}.
+ *
+ * @param <T> type of elements
+ */
+public class ProgressSpliterator<T> implements Spliterator<T> {
+    private static final int MIN_BATCH = 64;
+    private static final int MAX_BATCH = 4096;
+
+    private final Spliterator<T> source;
+    private final ProgressBar bar;
+    private final int batch;
+
+    //elements traversed by this part, not yet added to the bar
+    private int pending;
+
+    /**
+     * Create spliterator with default batch, computed from the exact size of the source if known.
+     *
+     * @param source spliterator to traverse
+     * @param bar    bar to add traversed elements to
+     */
+    public ProgressSpliterator(final Spliterator<T> source, final ProgressBar bar) {
+        this(source, bar, defaultBatch(source.getExactSizeIfKnown()));
+    }
+
+    /**
+     * Default batch for a source - a thousandth of its size, but at least {@value #MIN_BATCH} elements so threads
+     * do not add to the bar for each few elements. Small sources are still added at least each percent.
+     *
+     * @param size exact size of the source, negative if not known
+     * @return batch size
+     */
+    static int defaultBatch(final long size) {
+        if (size < 0) {
+            return MIN_BATCH;
+        }
+        long batch = Math.max(MIN_BATCH, size / 1000);
+        batch = Math.min(batch, Math.max(1, size / 100));
+
+        return (int) Math.min(MAX_BATCH, batch);
+    }
+
+    /**
+     * Create spliterator adding elements to the bar in batches of the given size.
+     *
+     * @param source spliterator to traverse
+     * @param bar    bar to add traversed elements to
+     * @param batch  number of elements counted by a split part before they are added to the bar
+     */
+    public ProgressSpliterator(final Spliterator<T> source, final ProgressBar bar, final int batch) {
+        if (batch < 1) {
+            throw new IllegalArgumentException("Batch must be a positive number, but is " + batch);
+        }
+        this.source = source;
+        this.bar = bar;
+        this.batch = batch;
+    }
+
+    /**
+     * Stream of a collection adding processed elements to the bar.
+     * Set max of the bar with {@link ProgressBar.Builder#setMax(Collection)}.
+     *
+     * @param collection collection to stream
+     * @param bar        bar to add processed elements to
+     * @param parallel   whether the stream is parallel
+     * @param <T>        type of elements
+     * @return new stream
+     */
+    public static <T> Stream<T> stream(final Collection<T> collection, final ProgressBar bar, final boolean parallel) {
+        return stream(collection.spliterator(), bar, parallel);
+    }
+
+    /**
+     * Stream of a spliterator adding processed elements to the bar.
+     * Set max of the bar with {@link ProgressBar.Builder#setMax(Spliterator)} for sized spliterators.
+     *
+     * @param spliterator spliterator to stream
+     * @param bar         bar to add processed elements to
+     * @param parallel    whether the stream is parallel
+     * @param <T>         type of elements
+     * @return new stream
+     */
+    public static <T> Stream<T> stream(final Spliterator<T> spliterator,
+                                       final ProgressBar bar,
+                                       final boolean parallel) {
+        return StreamSupport.stream(new ProgressSpliterator<>(spliterator, bar), parallel);
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super T> action) {
+        if (source.tryAdvance(action)) {
+            if (++pending >= batch) {
+                flush();
+            }
+            return true;
+        }
+        flush();
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(final Consumer<? super T> action) {
+        flush();
+        if (source.hasCharacteristics(SIZED | SUBSIZED)) {
+            traverseSized(source, action);
+        } else {
+            source.forEachRemaining(new Counting(action));
+            flush();
+        }
+    }
+
+    /*
+     * Sizes of split parts are exact, so the part is split into batches in order (prefix first) and each batch is
+     * traversed by the source itself and added to the bar as a whole - no counting per element.
+     */
+    private void traverseSized(final Spliterator<T> part, final Consumer<? super T> action) {
+        long size = part.getExactSizeIfKnown();
+        while (size > batch) {
+            Spliterator<T> prefix = part.trySplit();
+            if (null == prefix) {
+                break;
+            }
+            traverseSized(prefix, action);
+            size = part.getExactSizeIfKnown();
+        }
+        part.forEachRemaining(action);
+        if (size > 0) {
+            bar.add(size);
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        Spliterator<T> prefix = source.trySplit();
+        if (null == prefix) {
+            return null;
+        }
+        return new ProgressSpliterator<>(prefix, bar, batch);
+    }
+
+    @Override
+    public long estimateSize() {
+        return source.estimateSize();
+    }
+
+    @Override
+    public long getExactSizeIfKnown() {
+        return source.getExactSizeIfKnown();
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics();
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+        return source.getComparator();
+    }
+
+    private void flush() {
+        if (pending > 0) {
+            bar.add(pending);
+            pending = 0;
+        }
+    }
+
+    /**
+     * Action counting elements of a traversal in a local field.
+     */
+    private final class Counting implements Consumer<T> {
+        private final Consumer<? super T> action;
+
+        private Counting(final Consumer<? super T> action) {
+            this.action = action;
+        }
+
+        @Override
+        public void accept(final T element) {
+            action.accept(element);
+            if (++pending >= batch) {
+                flush();
+            }
+        }
+    }
+}
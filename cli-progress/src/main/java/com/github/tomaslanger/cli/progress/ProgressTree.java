@@ -0,0 +1,353 @@
+package com.github.tomaslanger.cli.progress;
+
+import com.github.tomaslanger.chalk.Ansi;
+
+import java.io.PrintStream;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progress of a hierarchy of any depth, such as modules, their files and chunks of files. Create nodes from the root
+ * ({@link #getRoot()}) and update them from any thread, progress of each node rolls up to its ancestors
+ * (see {@link ProgressNode}).
+ * <p>
+ * The render thread paints only a few rows however big the tree is - the root with number of running nodes and the
+ * path from the root to the node updated last, one row per level (up to viewport, see {@link Builder#setViewport(int)}).
+ * Nodes are not kept by the tree, so finished parts of the tree can be collected.
+ * <p>
+ * In batch environment nothing is painted while progressing, a summary line is printed at the end.
+ */
+public class ProgressTree extends ProgressBarBase {
+    private static final int DEFAULT_FPS = 10;
+    private static final String CURSOR_UP = Ansi.cursorUp();
+    private static final String ERASE_LINE_END = Ansi.eraseLineEnd();
+    private static final String ERASE_LINE = Ansi.eraseLine();
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final String INDENT = "  ";
+
+    private final boolean isBatch;
+    private final int viewport;
+    private final int charCount;
+    private final char baseChar;
+    //progress characters of each length, styled once
+    private final String[] fills;
+    private final ProgressNode root;
+
+    //node updated last, its path is painted
+    private volatile ProgressNode active;
+    private final LongAdder started = new LongAdder();
+    private final LongAdder ended = new LongAdder();
+    private final Throughput throughput = new Throughput();
+
+    /*
+     * Only accessed when painting (holding the lock of this instance)
+     */
+    private final FrameBuffer frame = new FrameBuffer(1024);
+    private final ProgressNode[] path;
+    private PrintStream out;
+    private int linesOnScreen;
+
+    protected ProgressTree(final Builder builder) {
+        super(builder);
+
+        this.isBatch = builder.isBatch() || ONE_LINE_ONLY;
+        this.viewport = builder.getViewport();
+        this.charCount = builder.getCharCount();
+        boolean color = !NO_COLOR && null != builder.getBgColor();
+        this.baseChar = color ? '_' : '-';
+        this.fills = fills(color ? AnsiStyle.of(null, builder.getBgColor(), EnumSet.noneOf(Ansi.Modifier.class)) : null,
+                           color ? ' ' : '*',
+                           charCount);
+        this.root = new ProgressNode(this, null, builder.getName(), builder.getMax(), builder.getMax());
+        this.path = new ProgressNode[viewport];
+    }
+
+    private static String[] fills(final AnsiStyle style, final char progressChar, final int charCount) {
+        String[] result = new String[charCount + 1];
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i <= charCount; i++) {
+            result[i] = (null == style || i == 0) ? chars.toString() : style.apply(chars.toString());
+            chars.append(progressChar);
+        }
+
+        return result;
+    }
+
+    /**
+     * Root of the tree, starts the tree if not started yet.
+     *
+     * @return root node
+     */
+    public ProgressNode getRoot() {
+        super.checkSetProgress();
+
+        return root;
+    }
+
+    void nodeStarted() {
+        started.increment();
+    }
+
+    void nodeEnded() {
+        ended.increment();
+    }
+
+    void nodeChanged(final ProgressNode node) {
+        if (active != node) {
+            active = node;
+        }
+        if (!isHeadless()) {
+            markDirty();
+        }
+    }
+
+    /**
+     * Number of nodes (other than root) created and not ended yet.
+     *
+     * @return running nodes
+     */
+    public long getRunning() {
+        return started.sum() - ended.sum();
+    }
+
+    /**
+     * Progress of the root.
+     *
+     * @return snapshot of overall progress
+     */
+    @Override
+    public ProgressSnapshot getSnapshot() {
+        return ProgressBar.snapshot(throughput, getBeginNanos(), root.getProgress(), root.getMax());
+    }
+
+    @Override
+    ProgressSnapshot readSnapshot() {
+        return ProgressBar.peekSnapshot(throughput, getBeginNanos(), root.getProgress(), root.getMax());
+    }
+
+    @Override
+    protected synchronized void renderFrame() {
+        if (isBatch || !iOwnOutput) {
+            return;
+        }
+
+        frame.reset();
+        for (int i = 0; i < linesOnScreen; i++) {
+            frame.append(CURSOR_UP);
+        }
+
+        int lines = 0;
+        paintRow(root);
+        frame.append(" (");
+        frame.appendNumber(getRunning());
+        frame.append(" running)");
+        endLine();
+        lines++;
+
+        //path from the root to the active node, deepest levels if it does not fit
+        int count = 0;
+        for (ProgressNode node = active;
+             null != node && null != node.getParent() && count < path.length - 1;
+             node = node.getParent()) {
+            path[count++] = node;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            paintRow(path[i]);
+            endLine();
+            lines++;
+            path[i] = null;
+        }
+
+        //clear lines no longer used (when the path is shorter)
+        int unused = linesOnScreen - lines;
+        for (int i = 0; i < unused; i++) {
+            frame.append(ERASE_LINE);
+            frame.append(LINE_SEPARATOR);
+        }
+        for (int i = 0; i < unused; i++) {
+            frame.append(CURSOR_UP);
+        }
+        linesOnScreen = lines;
+
+        frame.writeTo(out);
+    }
+
+    private void paintRow(final ProgressNode node) {
+        frame.append('\r');
+        for (int i = 0; i < node.getDepth(); i++) {
+            frame.append(INDENT);
+        }
+        long progress = node.getProgress();
+        int chars = ProgressBar.fraction(progress, node.getMax(), charCount);
+        frame.append(fills[chars]);
+        frame.append(baseChar, charCount - chars);
+
+        int percentage = ProgressBar.fraction(progress, node.getMax(), 100);
+        if (percentage == 100 && progress < node.getMax()) {
+            percentage = 99;
+        }
+        frame.append(' ', (percentage < 10) ? 3 : ((percentage < 100) ? 2 : 1));
+        frame.appendNumber(percentage);
+        frame.append('%');
+        if (null != node.getName()) {
+            frame.append(' ');
+            frame.append(node.getName());
+        }
+    }
+
+    private void endLine() {
+        frame.append(ERASE_LINE_END);
+        frame.append(LINE_SEPARATOR);
+    }
+
+    @Override
+    protected void finishProgressBar(final boolean isCancel) {
+        if (isBatch || !iOwnOutput) {
+            PrintStream target = iOwnOutput ? out : System.out;
+            target.println(summary(isCancel));
+        } else {
+            renderFrame();
+        }
+        reset();
+    }
+
+    @Override
+    protected void finishHeadless(final boolean isCancel, final PrintStream out) {
+        if (null != out) {
+            out.println(summary(isCancel));
+        }
+        reset();
+    }
+
+    private String summary(final boolean isCancel) {
+        long progress = root.getProgress();
+        ProgressSnapshot snapshot = ProgressBar.snapshot(throughput, getBeginNanos(), progress, root.getMax());
+
+        return ProgressBar.headlessSummary(root.getName(), isCancel, snapshot);
+    }
+
+    private synchronized void reset() {
+        linesOnScreen = 0;
+        active = null;
+    }
+
+    @Override
+    protected void initProgressBar() {
+        //rows are painted when nodes progress
+    }
+
+    @Override
+    protected void setOut(final PrintStream printStream) {
+        this.out = printStream;
+    }
+
+    /**
+     * Builds instances for you.
+     */
+    public static class Builder extends ProgressBarBase.Builder<ProgressTree.Builder> {
+        private long max = 100;
+        private String name;
+        private int viewport = 6;
+        private int charCount = 20;
+        private Ansi.BgColor bgColor = Ansi.BgColor.GREEN;
+
+        /**
+         * Max progress of the root, e.g. number of modules (when each module is a child with weight 1) or sum of
+         * max of all children. Default is 100.
+         *
+         * @param max max of the root
+         * @return Builder instance
+         */
+        public Builder setMax(final long max) {
+            this.max = max;
+
+            return this;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Name of the root shown on its row.
+         *
+         * @param name name of the root
+         * @return Builder instance
+         */
+        public Builder setName(final String name) {
+            this.name = name;
+
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Maximal number of rows painted - the root and levels of the path to the node updated last. If the path is
+         * deeper, its deepest levels are shown. Default is 6.
+         *
+         * @param viewport number of rows, at least 2
+         * @return Builder instance
+         */
+        public Builder setViewport(final int viewport) {
+            if (viewport < 2) {
+                throw new IllegalArgumentException("Viewport must have at least 2 lines: " + viewport);
+            }
+            this.viewport = viewport;
+
+            return this;
+        }
+
+        public int getViewport() {
+            return viewport;
+        }
+
+        /**
+         * Number of characters of the bar on each row. Default is 20.
+         *
+         * @param charCount number of characters
+         * @return Builder instance
+         */
+        public Builder setCharCount(final int charCount) {
+            this.charCount = charCount;
+
+            return this;
+        }
+
+        public int getCharCount() {
+            return charCount;
+        }
+
+        /**
+         * Background color of progress characters, null to print '*' characters. Default is green.
+         *
+         * @param bgColor background color
+         * @return Builder instance
+         */
+        public Builder setBgColor(final Ansi.BgColor bgColor) {
+            this.bgColor = bgColor;
+
+            return this;
+        }
+
+        public Ansi.BgColor getBgColor() {
+            return bgColor;
+        }
+
+        /**
+         * Build the tree instance with settings configured with this builder. Tree is always rendered in
+         * background, if frames per second are not configured, 10 are used.
+         *
+         * @return ProgressTree configured
+         */
+        public ProgressTree build() {
+            if (getFps() == 0) {
+                setFps(DEFAULT_FPS);
+            }
+
+            return new ProgressTree(this);
+        }
+    }
+}
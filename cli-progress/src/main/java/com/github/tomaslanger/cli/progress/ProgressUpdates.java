@@ -0,0 +1,193 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of a transfer folded into fewer updates of a bar. Transferred bytes are counted locally and added to the
+ * bar once a threshold of bytes is reached, or a time slice passed since the last update.
+ * Not thread safe - used by a single stream or channel.
+ */
+final class ProgressUpdates {
+    //smallest threshold, when not configured
+    private static final long MIN_THRESHOLD = 8 * 1024;
+    //default time slice
+    private static final long SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    //bytes transferred by file channels at once, progress is updated between the chunks
+    private static final long CHUNK = 1024 * 1024;
+    //buffer used to copy between channels that are not files
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final ProgressBar bar;
+    private final long threshold;
+    private final long sliceNanos;
+
+    private long pending;
+    private long lastUpdateNanos = System.nanoTime();
+
+    /**
+     * Create updates with default threshold - a thousandth of max of the bar (at least 8 KB), and time slice of
+     * 50 milliseconds.
+     *
+     * @param bar bar to update
+     */
+    ProgressUpdates(final ProgressBar bar) {
+        this(bar, Math.max(MIN_THRESHOLD, bar.getMaxLong() / 1000));
+    }
+
+    /**
+     * Create updates with time slice of 50 milliseconds.
+     *
+     * @param bar       bar to update
+     * @param threshold number of bytes to fold into one update
+     */
+    ProgressUpdates(final ProgressBar bar, final long threshold) {
+        this(bar, threshold, SLICE_NANOS);
+    }
+
+    /**
+     * Create updates.
+     *
+     * @param bar        bar to update
+     * @param threshold  number of bytes to fold into one update
+     * @param sliceNanos longest time between updates (when any bytes are transferred)
+     */
+    ProgressUpdates(final ProgressBar bar, final long threshold, final long sliceNanos) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be a positive number, but is " + threshold);
+        }
+        this.bar = bar;
+        this.threshold = threshold;
+        this.sliceNanos = sliceNanos;
+    }
+
+    /**
+     * Record transferred bytes.
+     *
+     * @param count number of bytes, ignored if not positive (e.g. end of stream)
+     */
+    void transferred(final long count) {
+        if (count <= 0) {
+            return;
+        }
+
+        pending += count;
+        if (pending >= threshold) {
+            update(System.nanoTime());
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (now - lastUpdateNanos >= sliceNanos) {
+            update(now);
+        }
+    }
+
+    /**
+     * Add all recorded bytes to the bar.
+     */
+    void flush() {
+        if (pending > 0) {
+            update(System.nanoTime());
+        }
+    }
+
+    private void update(final long now) {
+        bar.add(pending);
+        pending = 0;
+        lastUpdateNanos = now;
+    }
+
+    /**
+     * Transfer the rest of a file to a channel, without copying the bytes through the heap.
+     * Transferred in chunks, so progress is updated during the transfer. Position of the file is moved by the
+     * transferred bytes.
+     *
+     * @param source file to read from its current position
+     * @param target channel to write to
+     * @return number of transferred bytes
+     * @throws IOException in case the transfer fails
+     */
+    long transfer(final FileChannel source, final WritableByteChannel target) throws IOException {
+        long position = source.position();
+        long start = position;
+        try {
+            long size = source.size();
+            while (position < size) {
+                long count = source.transferTo(position, Math.min(CHUNK, size - position), target);
+                if (count <= 0) {
+                    //target does not accept more bytes
+                    break;
+                }
+                position += count;
+                transferred(count);
+            }
+        } finally {
+            source.position(position);
+            flush();
+        }
+
+        return position - start;
+    }
+
+    /**
+     * Transfer all bytes of a channel to a file, without copying the bytes through the heap.
+     * Transferred in chunks, so progress is updated during the transfer. Position of the file is moved by the
+     * transferred bytes.
+     *
+     * @param source channel to read until its end
+     * @param target file to write to at its current position
+     * @return number of transferred bytes
+     * @throws IOException in case the transfer fails
+     */
+    long transfer(final ReadableByteChannel source, final FileChannel target) throws IOException {
+        long position = target.position();
+        long start = position;
+        try {
+            while (true) {
+                long count = target.transferFrom(source, position, CHUNK);
+                if (count <= 0) {
+                    //end of source
+                    break;
+                }
+                position += count;
+                transferred(count);
+            }
+        } finally {
+            target.position(position);
+            flush();
+        }
+
+        return position - start;
+    }
+
+    /**
+     * Copy all bytes of a channel to another channel through a buffer, for channels that are not files.
+     *
+     * @param source channel to read until its end
+     * @param target channel to write to
+     * @return number of transferred bytes
+     * @throws IOException in case the transfer fails
+     */
+    long copy(final ReadableByteChannel source, final WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long total = 0;
+        try {
+            while (source.read(buffer) >= 0 || buffer.position() > 0) {
+                buffer.flip();
+                int count = target.write(buffer);
+                buffer.compact();
+                total += count;
+                transferred(count);
+            }
+        } finally {
+            flush();
+        }
+
+        return total;
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writable channel updating a progress bar with the number of bytes written.
+ * Small writes are folded into one update of the bar per a number of bytes (a thousandth of max of the bar by
+ * default) or per 50 milliseconds. Pending progress is added to the bar on {@link #close()}.
+ * <p>
+ * To copy to a file without copying the bytes through the heap, use {@link #transferFrom(ReadableByteChannel)}.
+ * Not thread safe - concurrent writes are not expected.
+ */
+public class ProgressWritableChannel implements WritableByteChannel {
+    private final WritableByteChannel channel;
+    private final ProgressUpdates updates;
+
+    /**
+     * Create a channel updating the bar with default threshold and time slice.
+     *
+     * @param channel channel to write to
+     * @param bar     bar to update
+     */
+    public ProgressWritableChannel(final WritableByteChannel channel, final ProgressBar bar) {
+        this.channel = channel;
+        this.updates = new ProgressUpdates(bar);
+    }
+
+    /**
+     * Create a channel updating the bar once per the number of bytes written (or at least each 50 milliseconds).
+     *
+     * @param channel   channel to write to
+     * @param bar       bar to update
+     * @param threshold number of bytes to write before the bar is updated
+     */
+    public ProgressWritableChannel(final WritableByteChannel channel, final ProgressBar bar, final long threshold) {
+        this.channel = channel;
+        this.updates = new ProgressUpdates(bar, threshold);
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        int result = channel.write(src);
+        updates.transferred(result);
+        return result;
+    }
+
+    /**
+     * Read all bytes of the source and write them to this channel.
+     * If this channel or the source is a file, bytes are transferred by {@link FileChannel} without copying them
+     * through the heap, in chunks, so the bar is updated during the transfer.
+     *
+     * @param source channel to read until its end
+     * @return number of transferred bytes
+     * @throws IOException in case reading or writing fails
+     */
+    public long transferFrom(final ReadableByteChannel source) throws IOException {
+        if (channel instanceof FileChannel) {
+            return updates.transfer(source, (FileChannel) channel);
+        }
+        if (source instanceof FileChannel) {
+            return updates.transfer((FileChannel) source, channel);
+        }
+
+        return updates.copy(source, channel);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            updates.flush();
+        }
+    }
+}
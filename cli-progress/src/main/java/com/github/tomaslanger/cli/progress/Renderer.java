@@ -0,0 +1,223 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single daemon thread repainting all progress bars that render in background (see
+ * {@link ProgressBarBase.Builder#setFps(int)}).
+ * Updates of such bars only record the wanted state and mark the bar dirty, this thread paints at most one frame
+ * per frame interval of each bar and parks when nothing has changed.
+ * A bar that fails to render is reported to the uncaught exception handler and no longer rendered, other bars are not
+ * affected. Should the thread die anyway, it is started again on the next request for a frame.
+ */
+final class Renderer implements Runnable, RendererMXBean {
+    private static final Renderer INSTANCE = new Renderer();
+
+    private final List<ProgressBarBase> targets = new CopyOnWriteArrayList<>();
+
+    private volatile Thread thread;
+    private volatile boolean parked;
+
+    /*
+     * Metrics, written only by the render thread (except bytes written by all bars)
+     */
+    private volatile long framesRendered;
+    private volatile long framesDeferred;
+    private final LatencyHistogram renderTimes = new LatencyHistogram();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    private Renderer() {
+    }
+
+    static Renderer getInstance() {
+        return INSTANCE;
+    }
+
+    void register(final ProgressBarBase target) {
+        targets.add(target);
+        ensureStarted();
+        requestFrame();
+    }
+
+    void unregister(final ProgressBarBase target) {
+        targets.remove(target);
+    }
+
+    /**
+     * Wake up the render thread if it is parked waiting for changes. Called only when a bar becomes dirty, so
+     * repeated updates between two frames do not touch the thread at all.
+     */
+    void requestFrame() {
+        if (parked) {
+            Thread toWake = thread;
+            if (null != toWake) {
+                LockSupport.unpark(toWake);
+            }
+        } else if (null == thread) {
+            ensureStarted();
+        }
+    }
+
+    /**
+     * Wake up the render thread even if waiting for the next frame.
+     */
+    void wakeUp() {
+        Thread toWake = thread;
+        if (null != toWake) {
+            LockSupport.unpark(toWake);
+        }
+    }
+
+    private synchronized void ensureStarted() {
+        if (null != thread) {
+            return;
+        }
+
+        Thread renderThread = new Thread(this, "cli-progress-renderer");
+        renderThread.setDaemon(true);
+        thread = renderThread;
+        renderThread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            renderLoop();
+        } finally {
+            threadEnded();
+        }
+    }
+
+    private synchronized void threadEnded() {
+        if (thread == Thread.currentThread()) {
+            thread = null;
+            parked = false;
+        }
+        if (!targets.isEmpty() && anyDirty()) {
+            ensureStarted();
+        }
+    }
+
+    private void renderLoop() {
+        while (true) {
+            long now = System.nanoTime();
+            long nextFrame = Long.MAX_VALUE;
+
+            for (final ProgressBarBase target : targets) {
+                if (!target.isDirty()) {
+                    continue;
+                }
+                long due = target.lastFrameNanos + target.frameNanos;
+                if (due - now <= 0 || target.isImmediate()) {
+                    target.clearDirty();
+                    target.lastFrameNanos = now;
+                    //time of this target only, earlier targets of this pass are not included
+                    long start = System.nanoTime();
+                    try {
+                        target.renderFrame();
+                    } catch (Throwable e) {
+                        //never let a single bar kill rendering of all the others
+                        targets.remove(target);
+                        renderFailed(e);
+                    }
+                    renderTimes.record(System.nanoTime() - start);
+                    framesRendered++;
+                } else {
+                    nextFrame = Math.min(nextFrame, due);
+                    framesDeferred++;
+                }
+            }
+
+            if (nextFrame == Long.MAX_VALUE) {
+                parked = true;
+                //re-check after publishing that we park, so a bar that became dirty meanwhile is not lost
+                if (!anyDirty()) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+            } else {
+                LockSupport.parkNanos(this, nextFrame - now);
+            }
+        }
+    }
+
+    private static void renderFailed(final Throwable e) {
+        if (e instanceof VirtualMachineError) {
+            //reported when the thread dies, a new one is started if needed
+            throw (VirtualMachineError) e;
+        }
+        Thread current = Thread.currentThread();
+        try {
+            current.getUncaughtExceptionHandler().uncaughtException(current, e);
+        } catch (Throwable ignored) {
+            //nothing else to report to
+        }
+    }
+
+    /**
+     * Record bytes of a frame painted by any bar.
+     *
+     * @param bytes bytes written
+     */
+    void framePainted(final int bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    @Override
+    public int getBarsRendering() {
+        return targets.size();
+    }
+
+    @Override
+    public long getFramesRendered() {
+        return framesRendered;
+    }
+
+    @Override
+    public long getFramesDeferred() {
+        return framesDeferred;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getRenderTimeP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(renderTimes.percentile(0.5));
+    }
+
+    @Override
+    public long getRenderTimeP90Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(renderTimes.percentile(0.9));
+    }
+
+    @Override
+    public long getRenderTimeP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(renderTimes.percentile(0.99));
+    }
+
+    @Override
+    public long getRenderTimeMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(renderTimes.getMax());
+    }
+
+    @Override
+    public long getCapturedBytes() {
+        return StreamHandler.getCapturedBytes();
+    }
+
+    private boolean anyDirty() {
+        for (final ProgressBarBase target : targets) {
+            if (target.isDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.tomaslanger.cli.progress;
+
+/**
+ * Management interface of rendering of all progress bars, registered with the first bar that has JMX enabled
+ * (see {@link ProgressBarBase.Builder#setJmx(boolean)}).
+ */
+public interface RendererMXBean {
+    /**
+     * Number of bars currently rendered by the background render thread.
+     *
+     * @return bars
+     */
+    int getBarsRendering();
+
+    /**
+     * Frames painted by the render thread.
+     *
+     * @return frames
+     */
+    long getFramesRendered();
+
+    /**
+     * Number of times the render thread found a changed bar, but waited for its frame interval - all updates until
+     * then are painted in one frame.
+     *
+     * @return deferred frames
+     */
+    long getFramesDeferred();
+
+    /**
+     * Bytes written by all progress bars (painted by the render thread or synchronously).
+     *
+     * @return bytes
+     */
+    long getBytesWritten();
+
+    long getRenderTimeP50Micros();
+
+    long getRenderTimeP90Micros();
+
+    long getRenderTimeP99Micros();
+
+    long getRenderTimeMaxMicros();
+
+    /**
+     * Bytes written to standard and error outputs replaced by the currently running bar.
+     *
+     * @return bytes, zero if outputs are not replaced
+     */
+    long getCapturedBytes();
+}
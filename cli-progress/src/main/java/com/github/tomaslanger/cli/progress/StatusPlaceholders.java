@@ -0,0 +1,79 @@
+package com.github.tomaslanger.cli.progress;
+
+/**
+ * Expands placeholders in status text with values measured when a frame is painted:
+ * <ul>
+ * <li>{progress} - current progress</li>
+ * <li>{max} - max progress</li>
+ * <li>{percent} - percentage done</li>
+ * <li>{rate} - smoothed progress per second</li>
+ * <li>{elapsed} - time since the bar was started (m:ss or h:mm:ss)</li>
+ * <li>{eta} - estimated time until done, "--:--" until known</li>
+ * </ul>
+ * Unknown placeholders are kept as they are. See {@link StatusTemplate} for formatting options.
+ */
+final class StatusPlaceholders {
+    //names of placeholders with values that change over time, see StatusTemplate
+    private static final String[] NAMES = {"progress", "current", "max", "percent", "rate", "elapsed", "eta"};
+
+    private StatusPlaceholders() {
+    }
+
+    /**
+     * Whether the status contains anything to expand - a known placeholder name in braces (with or without options).
+     * Other text in braces (such as JSON or "{1}") does not make the status live. Called for each frame, nothing is
+     * allocated.
+     *
+     * @param status status text, may be null
+     * @return true if status contains placeholders
+     */
+    static boolean hasPlaceholders(final String status) {
+        if (null == status) {
+            return false;
+        }
+
+        int open = status.indexOf('{');
+        while (open >= 0) {
+            int close = status.indexOf('}', open);
+            if (close < 0) {
+                return false;
+            }
+            if (isPlaceholder(status, open + 1, close)) {
+                return true;
+            }
+            open = status.indexOf('{', open + 1);
+        }
+
+        return false;
+    }
+
+    private static boolean isPlaceholder(final String status, final int start, final int end) {
+        int options = status.indexOf(':', start);
+        int nameEnd = (options < 0 || options > end) ? end : options;
+        for (final String name : NAMES) {
+            if (name.length() == nameEnd - start && status.regionMatches(start, name, 0, name.length())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Expand placeholders of a status once. Statuses expanded on each frame should be compiled to a
+     * {@link StatusTemplate} instead.
+     *
+     * @param status   status text
+     * @param target   buffer to append to
+     * @param snapshot values of placeholders
+     */
+    static void expand(final String status, final StringBuilder target, final ProgressSnapshot snapshot) {
+        StatusTemplate.compile(status, null).render(target,
+                                                    null,
+                                                    snapshot.getProgress(),
+                                                    snapshot.getMax(),
+                                                    snapshot.getElapsedNanos(),
+                                                    snapshot.getRate(),
+                                                    snapshot.getEtaNanos());
+    }
+}
@@ -0,0 +1,351 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Status text with placeholders, parsed once and rendered into a reused buffer on each frame without creating any
+ * intermediate strings. Placeholders:
+ * <ul>
+ * <li>{status} - status set on the bar (with its own placeholders expanded)</li>
+ * <li>{current} or {progress} - current progress</li>
+ * <li>{max} - max progress</li>
+ * <li>{percent} - percentage done</li>
+ * <li>{rate} - smoothed progress per second</li>
+ * <li>{elapsed} - time since the bar was started (m:ss or h:mm:ss)</li>
+ * <li>{eta} - estimated time until done, "--:--" until known</li>
+ * <li>{unit} - unit of progress (see {@link ProgressBar.Builder#setUnit(String)})</li>
+ * </ul>
+ * A placeholder may be followed by options separated by colons: "bytes" to print current, max or rate in human readable
+ * binary units (such as "1.5 MB") and a number for fixed width - right aligned if positive, left aligned if negative.
+ * For example "{current:bytes:9}/{max:bytes} {rate:bytes:9}/s ETA {eta}". Unknown placeholders are kept as they are.
+ */
+final class StatusTemplate {
+    private static final String[] BYTE_UNITS = {"B", "KB", "MB", "GB", "TB", "PB", "EB"};
+    private static final double KILO = 1024;
+
+    private static final int LITERAL = 0;
+    private static final int STATUS = 1;
+    private static final int CURRENT = 2;
+    private static final int MAX = 3;
+    private static final int PERCENT = 4;
+    private static final int RATE = 5;
+    private static final int ELAPSED = 6;
+    private static final int ETA = 7;
+
+    private final String source;
+    //parallel arrays of segments, so rendering does not chase objects
+    private final int[] kinds;
+    private final String[] literals;
+    private final int[] widths;
+    private final boolean[] bytes;
+    private final boolean live;
+    private final boolean hasStatus;
+
+    private StatusTemplate(final String source, final List<Segment> segments) {
+        this.source = source;
+        int count = segments.size();
+        this.kinds = new int[count];
+        this.literals = new String[count];
+        this.widths = new int[count];
+        this.bytes = new boolean[count];
+
+        boolean isLive = false;
+        boolean status = false;
+        for (int i = 0; i < count; i++) {
+            Segment segment = segments.get(i);
+            kinds[i] = segment.kind;
+            literals[i] = segment.literal;
+            widths[i] = segment.width;
+            bytes[i] = segment.bytes;
+            isLive |= segment.kind > STATUS;
+            status |= segment.kind == STATUS;
+        }
+        this.live = isLive;
+        this.hasStatus = status;
+    }
+
+    /**
+     * Parse a template.
+     *
+     * @param template template text
+     * @param unit     text of {unit} placeholder, null to keep the placeholder as it is
+     * @return compiled template
+     */
+    static StatusTemplate compile(final String template, final String unit) {
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < template.length()) {
+            int open = template.indexOf('{', i);
+            int close = (open < 0) ? -1 : template.indexOf('}', open);
+            if (close < 0) {
+                literal.append(template, i, template.length());
+                break;
+            }
+            literal.append(template, i, open);
+            Segment placeholder = parsePlaceholder(template.substring(open + 1, close));
+            if (null != placeholder) {
+                addLiteral(segments, literal);
+                segments.add(placeholder);
+            } else if (null != unit && "unit".equals(template.substring(open + 1, close))) {
+                literal.append(unit);
+            } else {
+                literal.append(template, open, close + 1);
+            }
+            i = close + 1;
+        }
+        addLiteral(segments, literal);
+
+        return new StatusTemplate(template, segments);
+    }
+
+    private static void addLiteral(final List<Segment> segments, final StringBuilder literal) {
+        if (literal.length() > 0) {
+            segments.add(new Segment(LITERAL, literal.toString(), 0, false));
+            literal.setLength(0);
+        }
+    }
+
+    private static Segment parsePlaceholder(final String placeholder) {
+        String[] parts = placeholder.split(":");
+        int kind = kind(parts[0]);
+        if (kind == LITERAL) {
+            return null;
+        }
+
+        int width = 0;
+        boolean isBytes = false;
+        for (int i = 1; i < parts.length; i++) {
+            if ("bytes".equals(parts[i])) {
+                isBytes = true;
+            } else {
+                try {
+                    width = Integer.parseInt(parts[i]);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+
+        return new Segment(kind, null, width, isBytes);
+    }
+
+    private static int kind(final String name) {
+        switch (name) {
+            case "status":
+                return STATUS;
+            case "current":
+            case "progress":
+                return CURRENT;
+            case "max":
+                return MAX;
+            case "percent":
+                return PERCENT;
+            case "rate":
+                return RATE;
+            case "elapsed":
+                return ELAPSED;
+            case "eta":
+                return ETA;
+            default:
+                return LITERAL;
+        }
+    }
+
+    /**
+     * Text this template was compiled from.
+     *
+     * @return template text
+     */
+    String getSource() {
+        return source;
+    }
+
+    /**
+     * Whether the rendered text depends on progress or time, so it changes without the status being changed.
+     *
+     * @return true if there are placeholders other than {status}
+     */
+    boolean isLive() {
+        return live;
+    }
+
+    /**
+     * Whether the template shows the status set on the bar.
+     *
+     * @return true if there is a {status} placeholder
+     */
+    boolean hasStatus() {
+        return hasStatus;
+    }
+
+    /**
+     * Append the rendered template.
+     *
+     * @param target       buffer to append to
+     * @param status       text of {status}, null for empty
+     * @param progress     current progress
+     * @param max          max progress
+     * @param elapsedNanos nanoseconds since the bar was started
+     * @param rate         progress per second
+     * @param etaNanos     nanoseconds until done, negative if not known
+     */
+    void render(final StringBuilder target,
+                final CharSequence status,
+                final long progress,
+                final long max,
+                final long elapsedNanos,
+                final double rate,
+                final long etaNanos) {
+        for (int i = 0; i < kinds.length; i++) {
+            int start = target.length();
+            switch (kinds[i]) {
+                case LITERAL:
+                    target.append(literals[i]);
+                    break;
+                case STATUS:
+                    if (null != status) {
+                        target.append(status);
+                    }
+                    break;
+                case CURRENT:
+                    appendCount(target, progress, bytes[i]);
+                    break;
+                case MAX:
+                    appendCount(target, max, bytes[i]);
+                    break;
+                case PERCENT:
+                    target.append(percentage(progress, max)).append('%');
+                    break;
+                case RATE:
+                    if (bytes[i]) {
+                        appendBytes(target, rate);
+                    } else {
+                        appendRate(target, rate);
+                    }
+                    break;
+                case ELAPSED:
+                    appendDuration(target, elapsedNanos);
+                    break;
+                case ETA:
+                    if (etaNanos < 0) {
+                        target.append("--:--");
+                    } else {
+                        appendDuration(target, etaNanos);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            pad(target, start, widths[i]);
+        }
+    }
+
+    /**
+     * Pad text appended since start with spaces to a fixed width. Escape sequences do not count to the width.
+     *
+     * @param target buffer with the text
+     * @param start  index where the text starts
+     * @param width  width, right aligned if positive, left aligned if negative, zero for no padding
+     */
+    static void pad(final StringBuilder target, final int start, final int width) {
+        if (width == 0) {
+            return;
+        }
+        int missing = Math.abs(width) - AnsiStyle.visibleLength(target, start, target.length());
+        if (width > 0) {
+            for (int i = 0; i < missing; i++) {
+                target.insert(start, ' ');
+            }
+        } else {
+            for (int i = 0; i < missing; i++) {
+                target.append(' ');
+            }
+        }
+    }
+
+    private static int percentage(final long progress, final long max) {
+        int percentage = ProgressBar.fraction(progress, max, 100);
+        return (percentage == 100 && progress < max) ? 99 : percentage;
+    }
+
+    private static void appendCount(final StringBuilder target, final long count, final boolean isBytes) {
+        if (isBytes) {
+            appendBytes(target, count);
+        } else {
+            target.append(count);
+        }
+    }
+
+    /**
+     * Append amount of bytes in binary units, with one decimal place from kilobytes up (such as "1.5 MB").
+     *
+     * @param target buffer to append to
+     * @param amount number of bytes
+     */
+    static void appendBytes(final StringBuilder target, final double amount) {
+        long rounded = Math.round(Math.max(0, amount));
+        if (rounded < KILO) {
+            target.append(rounded).append(' ').append(BYTE_UNITS[0]);
+            return;
+        }
+
+        int unit = 1;
+        double value = amount / KILO;
+        //move to a bigger unit when the value would be rounded to 1024.0
+        while (Math.round(value * 10) >= KILO * 10 && unit < BYTE_UNITS.length - 1) {
+            value /= KILO;
+            unit++;
+        }
+        long tenths = Math.round(value * 10);
+        target.append(tenths / 10).append('.').append(tenths % 10).append(' ').append(BYTE_UNITS[unit]);
+    }
+
+    static void appendRate(final StringBuilder target, final double rate) {
+        if (rate >= 10) {
+            target.append(Math.round(rate));
+        } else {
+            //one decimal place for slow progress
+            long tenths = Math.round(rate * 10);
+            target.append(tenths / 10).append('.').append(tenths % 10);
+        }
+    }
+
+    static void appendDuration(final StringBuilder target, final long nanos) {
+        long seconds = nanos / 1_000_000_000L;
+        long hours = seconds / 3600;
+        long minutes = (seconds / 60) % 60;
+        seconds = seconds % 60;
+
+        if (hours > 0) {
+            target.append(hours).append(':');
+            appendTwoDigits(target, minutes);
+        } else {
+            target.append(minutes);
+        }
+        target.append(':');
+        appendTwoDigits(target, seconds);
+    }
+
+    private static void appendTwoDigits(final StringBuilder target, final long value) {
+        if (value < 10) {
+            target.append('0');
+        }
+        target.append(value);
+    }
+
+    private static final class Segment {
+        private final int kind;
+        private final String literal;
+        private final int width;
+        private final boolean bytes;
+
+        private Segment(final int kind, final String literal, final int width, final boolean bytes) {
+            this.kind = kind;
+            this.literal = literal;
+            this.width = width;
+            this.bytes = bytes;
+        }
+    }
+}
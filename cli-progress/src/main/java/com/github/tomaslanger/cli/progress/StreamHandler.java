@@ -1,11 +1,13 @@
 package com.github.tomaslanger.cli.progress;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.function.Consumer;
 
 /**
  * Utility to handle buffering and replacement of system and error outputs.
+ * Each thread writes to its own buffer (see {@link ThreadCapture}), so printing threads do not block each other.
+ * Captured output is kept in memory up to a limit, the rest in a temporary file (see {@link CaptureBuffer}).
  *
  * User: Tomas.Langer
  * Date: 21.12.2015
@@ -29,12 +31,35 @@ class StreamHandler {
         NOT_REPLACED
     }
     private static boolean replaced;
-    private static ByteArrayOutputStream stdOutBuffer = new ByteArrayOutputStream();
-    private static ByteArrayOutputStream stdErrBuffer = new ByteArrayOutputStream();
+    private static CaptureBuffer stdOutBuffer = new CaptureBuffer();
+    private static CaptureBuffer stdErrBuffer = new CaptureBuffer();
+    //output passed through while a bar runs, null when captured until the end
+    private static LiveOutput liveOutput;
+    //capture of outputs, merged to the buffers above or to live output
+    private static ThreadCapture capture;
     private static PrintStream sysOut;
     private static PrintStream sysErr;
 
-    static synchronized Replace replace(final boolean replaceOut, final boolean replaceErr, final Consumer<PrintStream> setter) {
+    static Replace replace(final boolean replaceOut, final boolean replaceErr, final Consumer<PrintStream> setter) {
+        return replace(replaceOut, replaceErr, null, null, setter);
+    }
+
+    /**
+     * Replace outputs.
+     *
+     * @param replaceOut     whether to replace standard output
+     * @param replaceErr     whether to replace error output
+     * @param linesAvailable if not null, output is not kept until the end, but passed through while the bar runs
+     *                       (see {@link #getLiveOutput()}), this is called when lines are waiting to be printed
+     * @param flushNow       called when lines should be printed without waiting for next frame (with live output)
+     * @param setter         accepts stream the bar should print to
+     * @return result of replacement
+     */
+    static synchronized Replace replace(final boolean replaceOut,
+                                        final boolean replaceErr,
+                                        final Runnable linesAvailable,
+                                        final Runnable flushNow,
+                                        final Consumer<PrintStream> setter) {
         if (replaced) {
             //currently configured system output (writing to one of my buffers above)
             setter.accept(System.out);
@@ -42,21 +67,44 @@ class StreamHandler {
             return Replace.IMPOSSIBLE;
         }
 
+        if (!(replaceOut || replaceErr)) {
+            setter.accept(System.out);
+
+            return Replace.NOT_REPLACED;
+        }
+
         sysOut = System.out;
         sysErr = System.err;
 
+        if (null == linesAvailable) {
+            liveOutput = null;
+            CaptureBuffer out = stdOutBuffer;
+            CaptureBuffer err = stdErrBuffer;
+            capture = new ThreadCapture((isErr, bytes, offset, length) -> captured(isErr ? err : out,
+                                                                                    bytes,
+                                                                                    offset,
+                                                                                    length),
+                                        null,
+                                        null);
+        } else {
+            //error lines go with the frame only if both outputs are the same terminal
+            boolean sameTerminal = Terminal.isTerminal() && Terminal.isErrorTerminal();
+            liveOutput = new LiveOutput(linesAvailable, flushNow, sameTerminal ? null : sysErr);
+            capture = liveOutput.getCapture();
+        }
+
         if (replaceOut) {
-            System.setOut(new PrintStream(stdOutBuffer));
+            System.setOut(capture.stdout());
         }
         if (replaceErr) {
-            System.setErr(new PrintStream(stdErrBuffer));
+            System.setErr(capture.stderr());
         }
 
         setter.accept(sysOut);
 
-        replaced = replaceOut || replaceErr;
+        replaced = true;
 
-        return (replaced? Replace.DONE: Replace.NOT_REPLACED);
+        return Replace.DONE;
     }
 
     static synchronized void replaceBack(final Replace replace) {
@@ -74,20 +122,74 @@ class StreamHandler {
         System.setOut(sysOut);
         System.setErr(sysErr);
 
-        if (stdOutBuffer.size() > 0) {
-            System.out.println(new String(stdOutBuffer.toByteArray()));
-        }
-        if (stdErrBuffer.size() > 0) {
-            System.err.println(new String(stdErrBuffer.toByteArray()));
+        if (null == liveOutput) {
+            capture.merge();
+        } else {
+            //whatever was not printed by the bar yet (error lines are written to error output, if separated)
+            liveOutput.completeLines();
+            FrameBuffer rest = new FrameBuffer(1024);
+            if (liveOutput.drainTo(rest, false)) {
+                rest.writeTo(System.out);
+            }
+            liveOutput = null;
         }
+        capture = null;
+
+        printCaptured(stdOutBuffer, System.out);
+        printCaptured(stdErrBuffer, System.err);
 
         sysOut = null;
         sysErr = null;
 
-        stdOutBuffer = new ByteArrayOutputStream();
-        stdErrBuffer = new ByteArrayOutputStream();
+        stdOutBuffer.close();
+        stdErrBuffer.close();
+        stdOutBuffer = new CaptureBuffer();
+        stdErrBuffer = new CaptureBuffer();
 
         replaced = false;
     }
 
+    /**
+     * Number of bytes written to standard and error outputs since they were replaced.
+     *
+     * @return captured bytes, zero if streams are not replaced
+     */
+    static synchronized long getCapturedBytes() {
+        if (!replaced) {
+            return 0;
+        }
+        return capture.size();
+    }
+
+    private static void captured(final CaptureBuffer buffer, final byte[] bytes, final int offset, final int length) {
+        try {
+            buffer.write(bytes, offset, length);
+        } catch (IOException ignored) {
+            //same as print stream, output that cannot be kept is lost
+        }
+    }
+
+    /**
+     * Output passed through while a bar runs, if requested when replacing.
+     *
+     * @return live output or null if output is captured until the end (or not replaced at all)
+     */
+    static synchronized LiveOutput getLiveOutput() {
+        return liveOutput;
+    }
+
+    private static void printCaptured(final CaptureBuffer buffer, final PrintStream out) {
+        if (buffer.size() == 0) {
+            return;
+        }
+
+        try {
+            buffer.writeTo(out);
+        } catch (IOException e) {
+            out.println();
+            out.print("Failed to print captured output: " + e.getMessage());
+        }
+        out.println();
+    }
+
 }
@@ -0,0 +1,293 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.util.Collection;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of submitted, running and finished tasks, driving a progress bar - each finished task adds one to its
+ * progress. Counters are striped ({@link LongAdder}), so threads finishing tasks at the same time do not wait for
+ * each other. Build the bar with {@link ProgressBar.Builder#setFps(int)} (or add it to a {@link ProgressBarGroup}),
+ * so tasks only record progress and the render thread paints it; a synchronously painted bar is painted by the
+ * thread finishing the task.
+ * <p>
+ * Failed and cancelled tasks are counted separately and shown in status of the bar (e.g. "2 failed, 1 cancelled"),
+ * the status is only changed when a task fails or is cancelled - the thread finishing the task only publishes that
+ * the status changed, its text is built from the counters when a frame is painted.
+ * <p>
+ * Use with {@link ProgressExecutorService}, or track {@link CompletableFuture}s:
+ * <pre>
+ * ProgressBar bar = new ProgressBar.Builder().setMax(futures.size()).setFps(10).build();
+ * bar.begin();
+ * try {
+ *     new TaskProgress(bar).trackAll(futures).join();
+ * } finally {
+ *     bar.end();
+ * }
+ * </pre>
+ */
+public final class TaskProgress {
+    private final ProgressBar bar;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder running = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    /**
+     * Create counters without a bar.
+     */
+    public TaskProgress() {
+        this(null);
+    }
+
+    /**
+     * Create counters driving a bar.
+     *
+     * @param bar bar to add finished tasks to, may be null
+     */
+    public TaskProgress(final ProgressBar bar) {
+        this.bar = bar;
+    }
+
+    /**
+     * Track a future - counted as submitted now and finished when it completes.
+     *
+     * @param future future to track
+     * @param <T>    type of the result
+     * @return the same future
+     */
+    public <T> CompletableFuture<T> track(final CompletableFuture<T> future) {
+        submitted();
+        future.whenComplete((result, throwable) -> finished(throwable));
+        return future;
+    }
+
+    /**
+     * Track all futures.
+     *
+     * @param futures futures to track
+     * @return future completed when all tracked futures complete (see {@link CompletableFuture#allOf})
+     */
+    public CompletableFuture<Void> trackAll(final Collection<? extends CompletableFuture<?>> futures) {
+        CompletableFuture<?>[] all = futures.toArray(new CompletableFuture<?>[0]);
+        for (CompletableFuture<?> future : all) {
+            track(future);
+        }
+        return CompletableFuture.allOf(all);
+    }
+
+    /**
+     * Track a group of futures as a task of a master/detail bar and wait until all of them complete.
+     * Failures and cancellations are counted, they do not end the wait.
+     * <p>
+     * With parallel tasks (see {@link ProgressBarMasterDetail.Builder#setParallelTasks(boolean)}) the group is a
+     * task of its own, see {@link #trackGroup(ProgressBarMasterDetail, String, Collection)} - groups awaited by
+     * several threads are shown at the same time. Otherwise the group is the next task, the calling thread paints
+     * it when futures complete (master/detail bar with sequential tasks is painted synchronously, so it must not be
+     * painted from many threads).
+     *
+     * @param bar   master/detail bar, a child bar is created for the group
+     * @param name  name of the group shown above the child bar
+     * @param group futures of the group
+     * @throws InterruptedException in case the waiting thread is interrupted
+     */
+    public void awaitGroup(final ProgressBarMasterDetail bar,
+                           final String name,
+                           final Collection<? extends CompletableFuture<?>> group) throws InterruptedException {
+        if (bar.isParallel()) {
+            try {
+                trackGroup(bar, name, group).get();
+            } catch (ExecutionException e) {
+                //never completed exceptionally
+                throw new IllegalStateException(e.getCause());
+            }
+            return;
+        }
+
+        Semaphore changes = new Semaphore(0);
+        LongAdder done = new LongAdder();
+        CompletableFuture<?>[] all = group.toArray(new CompletableFuture<?>[0]);
+        bar.nextTask(all.length, name);
+        for (CompletableFuture<?> future : all) {
+            submitted();
+            future.whenComplete((result, throwable) -> {
+                finished(throwable);
+                done.increment();
+                changes.release();
+            });
+        }
+
+        //woken up by completed futures, all completed since the last paint are painted at once
+        long painted = 0;
+        while (painted < all.length) {
+            changes.acquire();
+            changes.drainPermits();
+            painted = done.sum();
+            bar.setProgress(painted, name + statusSuffix());
+        }
+    }
+
+    /**
+     * Track a group of futures as a task of a master/detail bar with parallel tasks (see
+     * {@link ProgressBarMasterDetail.Builder#setParallelTasks(boolean)}). The group is a child bar of its own, that
+     * is updated by threads completing the futures and painted by the render thread. Any number of groups can be in
+     * progress at the same time. Failures and cancellations are counted, they do not fail the returned future.
+     *
+     * @param bar   master/detail bar with parallel tasks
+     * @param name  name of the group shown above its child bar
+     * @param group futures of the group
+     * @return future completed (normally) when all futures of the group complete and its child bar ended
+     */
+    public CompletableFuture<Void> trackGroup(final ProgressBarMasterDetail bar,
+                                              final String name,
+                                              final Collection<? extends CompletableFuture<?>> group) {
+        CompletableFuture<?>[] all = group.toArray(new CompletableFuture<?>[0]);
+        ProgressBar task = bar.startTask(all.length, name);
+        LongAdder groupFailed = new LongAdder();
+        //completed after each future is counted, so the task is not ended before its last increment
+        CompletableFuture<?>[] counted = new CompletableFuture<?>[all.length];
+        for (int i = 0; i < all.length; i++) {
+            submitted();
+            counted[i] = all[i].whenComplete((result, throwable) -> {
+                finished(throwable);
+                if (null != throwable) {
+                    groupFailed.increment();
+                }
+                task.increment();
+            });
+        }
+
+        return CompletableFuture.allOf(counted).handle((result, throwable) -> {
+            long failures = groupFailed.sum();
+            if (failures > 0) {
+                task.setStatus(name + ", " + failures + " failed or cancelled");
+            }
+            task.end();
+            return null;
+        });
+    }
+
+    /**
+     * Number of tasks submitted (or futures tracked).
+     *
+     * @return submitted tasks
+     */
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * Number of tasks currently executed by a thread. Futures are not counted, as it is not known when they start.
+     *
+     * @return running tasks
+     */
+    public long getRunning() {
+        return running.sum();
+    }
+
+    /**
+     * Number of tasks completed normally.
+     *
+     * @return completed tasks
+     */
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    /**
+     * Number of tasks completed with an exception.
+     *
+     * @return failed tasks
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Number of tasks cancelled (including tasks not started because the executor was shut down).
+     *
+     * @return cancelled tasks
+     */
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    /**
+     * Number of tasks finished in any way - completed, failed or cancelled.
+     *
+     * @return finished tasks
+     */
+    public long getFinished() {
+        return completed.sum() + failed.sum() + cancelled.sum();
+    }
+
+    void submitted() {
+        submitted.increment();
+    }
+
+    void started() {
+        running.increment();
+    }
+
+    void stopped() {
+        running.decrement();
+    }
+
+    /**
+     * Record a finished task.
+     *
+     * @param throwable null if completed normally, otherwise cause of failure or cancellation
+     */
+    void finished(final Throwable throwable) {
+        if (null == throwable) {
+            completed.increment();
+            if (null != bar) {
+                bar.add(1);
+            }
+            return;
+        }
+
+        Throwable cause = throwable;
+        if (cause instanceof CompletionException && null != cause.getCause()) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof CancellationException) {
+            cancelled.increment();
+        } else {
+            failed.increment();
+        }
+        if (null != bar) {
+            //only publishes a new supplier, status text is built when a frame is painted
+            bar.setStatus(this::getStatus);
+            bar.add(1);
+        }
+    }
+
+    /**
+     * Status shown on the bar, such as "2 failed, 1 cancelled".
+     *
+     * @return failures and cancellations, empty if there are none
+     */
+    String getStatus() {
+        String suffix = statusSuffix();
+        return suffix.isEmpty() ? suffix : suffix.substring(2);
+    }
+
+    private String statusSuffix() {
+        long failedCount = failed.sum();
+        long cancelledCount = cancelled.sum();
+        StringBuilder result = new StringBuilder();
+        if (failedCount > 0) {
+            result.append(", ").append(failedCount).append(" failed");
+        }
+        if (cancelledCount > 0) {
+            result.append(", ").append(cancelledCount).append(" cancelled");
+        }
+        return result.toString();
+    }
+}
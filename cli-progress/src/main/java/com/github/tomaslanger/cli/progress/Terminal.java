@@ -0,0 +1,194 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Information about the terminal we print to, detected once per process. Detection may start a process, so it is
+ * done when the first bar is created (see {@link ProgressBarBase}), never while a bar begins.
+ */
+final class Terminal {
+    private static final File TTY = new File("/dev/tty");
+    //bits of result of ttys(...)
+    static final int STDOUT = 1;
+    static final int STDERR = 2;
+
+    private Terminal() {
+    }
+
+    /**
+     * Whether standard output is connected to a terminal (standard input does not matter, so {@code cmd < input} or
+     * {@code producer | cmd} still print to a terminal). Detected once per process. If it cannot be detected, or
+     * it does not matter (headless mode other than auto is configured with system property cliprogress.headless),
+     * output is considered a terminal.
+     *
+     * @return true for a terminal, false if output is redirected
+     */
+    static boolean isTerminal() {
+        return Detected.TERMINAL;
+    }
+
+    /**
+     * Whether error output is connected to a terminal, detected once per process together with standard output (see
+     * {@link #isTerminal()}).
+     *
+     * @return true for a terminal, false if error output is redirected
+     */
+    static boolean isErrorTerminal() {
+        return Detected.ERROR_TERMINAL;
+    }
+
+    /**
+     * Whether we run in a continuous integration server (Jenkins or Hudson). Detected once per process.
+     *
+     * @return true in a CI server
+     */
+    static boolean isCi() {
+        return Ci.CI;
+    }
+
+    /**
+     * Number of rows of the terminal, from system property "cliprogress.terminalRows", environment variable LINES
+     * or "stty size" (in this order). The property is read on each call (an application may update it when the
+     * terminal is resized), the rest is detected once per process.
+     *
+     * @return number of rows, 0 if not known
+     */
+    static int getRows() {
+        Integer configured = Integer.getInteger("cliprogress.terminalRows");
+        if (null != configured) {
+            return Math.max(0, configured);
+        }
+
+        return Rows.ROWS;
+    }
+
+    private static int detectRows() {
+        try {
+            String lines = System.getenv("LINES");
+            if (null != lines) {
+                return Math.max(0, Integer.parseInt(lines.trim()));
+            }
+        } catch (NumberFormatException ignored) {
+            //try stty
+        }
+
+        return sttyRows();
+    }
+
+    private static int sttyRows() {
+        if (!TTY.exists()) {
+            return 0;
+        }
+
+        try {
+            Process process = new ProcessBuilder("stty", "size")
+                    .redirectInput(TTY)
+                    .redirectError(ProcessBuilder.Redirect.to(new File("/dev/null")))
+                    .start();
+            String size;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                size = reader.readLine();
+            }
+            if (!process.waitFor(1, TimeUnit.SECONDS)) {
+                process.destroy();
+                return 0;
+            }
+            if (null == size) {
+                return 0;
+            }
+            //"rows columns"
+            String[] parts = size.trim().split("\\s+");
+            return Math.max(0, Integer.parseInt(parts[0]));
+        } catch (Exception e) {
+            //not a terminal, no stty etc.
+            return 0;
+        }
+    }
+
+    /**
+     * Ask the system which outputs are a tty ({@code test -t 1} and {@code test -t 2} run with the outputs as standard
+     * and error outputs of a single process).
+     *
+     * @param output output of the test process, {@link ProcessBuilder.Redirect#INHERIT} for our standard output
+     * @param error  error output of the test process, {@link ProcessBuilder.Redirect#INHERIT} for our error output
+     * @return {@link #STDOUT} and {@link #STDERR} bits of outputs that are a tty, -1 if it cannot be found out
+     * (no shell etc.)
+     */
+    static int ttys(final ProcessBuilder.Redirect output, final ProcessBuilder.Redirect error) {
+        if (!new File("/bin/sh").exists()) {
+            return -1;
+        }
+
+        try {
+            Process process = new ProcessBuilder("/bin/sh", "-c", "t=0; test -t 1 && t=1; test -t 2 && t=$((t+2)); exit $t")
+                    .redirectOutput(output)
+                    .redirectError(error)
+                    .start();
+            if (!process.waitFor(1, TimeUnit.SECONDS)) {
+                process.destroy();
+                return -1;
+            }
+            int ttys = process.exitValue();
+            return (ttys > (STDOUT | STDERR)) ? -1 : ttys;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Whether outputs are a terminal, detected when first used.
+     */
+    private static final class Detected {
+        private static final String CONFIGURED = System.getProperty("cliprogress.terminal");
+        private static final int TTYS = probe();
+        private static final boolean TERMINAL = detectTerminal(STDOUT);
+        private static final boolean ERROR_TERMINAL = detectTerminal(STDERR);
+
+        private static int probe() {
+            if (null != CONFIGURED) {
+                return 0;
+            }
+            String headless = System.getProperty("cliprogress.headless");
+            if (null != headless && !"auto".equalsIgnoreCase(headless.trim())) {
+                //not needed to choose headless mode, do not start a process
+                return -1;
+            }
+
+            //Console#isTerminal (Java 22) and System.console() of older versions also require input to be a terminal
+            return ttys(ProcessBuilder.Redirect.INHERIT, ProcessBuilder.Redirect.INHERIT);
+        }
+
+        private static boolean detectTerminal(final int output) {
+            if (null != CONFIGURED) {
+                return Boolean.parseBoolean(CONFIGURED);
+            }
+
+            //not known (e.g. Windows) - render, as we always did
+            return TTYS < 0 || (TTYS & output) != 0;
+        }
+    }
+
+    /**
+     * Whether we run in a continuous integration server, detected when first used (by builders of bars, so they do
+     * not probe the terminal).
+     */
+    private static final class Ci {
+        private static final boolean CI = detectCi();
+
+        private static boolean detectCi() {
+            Map<String, String> env = System.getenv();
+            return env.containsKey("HUDSON_URL") || env.containsKey("JENKINS_URL");
+        }
+    }
+
+    /**
+     * Rows of the terminal, detected when first used.
+     */
+    private static final class Rows {
+        private static final int ROWS = detectRows();
+    }
+}
@@ -0,0 +1,360 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Capture of standard and error outputs without contention between writing threads.
+ * Each thread writes to its own buffer, each write is stamped with a sequence number. Buffers are merged in order of
+ * the sequence numbers into a {@link Target} - when the output is printed (see {@link #merge()}), or by a thread
+ * whose buffer is full.
+ * <p>
+ * When the target is printed live by the render thread, threads with full buffers ask for a frame and wait for it
+ * instead of merging themselves (with a time limit), so memory used is bounded.
+ */
+final class ThreadCapture {
+    //bytes kept by a thread before its buffer is merged
+    private static final int THREAD_LIMIT = 16 * 1024;
+    private static final long MAX_WAIT_MILLIS = 1000;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadLocal<ThreadBuffer> buffers = ThreadLocal.withInitial(this::newBuffer);
+    private final Queue<ThreadBuffer> allBuffers = new ConcurrentLinkedQueue<>();
+    //all bytes ever written, also by threads whose buffers were removed, so it never goes back
+    private final LongAdder written = new LongAdder();
+    private final Target target;
+    //null if merged by writing threads, otherwise called when there is output to merge
+    private final Runnable outputAvailable;
+    //called when a buffer is full and must be merged as soon as possible
+    private final Runnable bufferFull;
+    private final CapturePrintStream stdout;
+    private final CapturePrintStream stderr;
+
+    /*
+     * Guarded by this instance (only one merge at a time)
+     */
+    private final List<ThreadBuffer> merging = new ArrayList<>();
+    private Records[] heap = new Records[16];
+
+    /**
+     * Create new capture.
+     *
+     * @param target          where to merge captured output
+     * @param outputAvailable if null, threads with full buffers merge all buffers to target, otherwise this is
+     *                        called after each write and threads with full buffers wait for {@link #merge()}
+     * @param bufferFull      called before a thread waits for merge of its full buffer (ignored if
+     *                        outputAvailable is null)
+     */
+    ThreadCapture(final Target target, final Runnable outputAvailable, final Runnable bufferFull) {
+        this.target = target;
+        this.outputAvailable = outputAvailable;
+        this.bufferFull = bufferFull;
+        this.stdout = new CapturePrintStream(this, false);
+        this.stderr = new CapturePrintStream(this, true);
+    }
+
+    CapturePrintStream stdout() {
+        return stdout;
+    }
+
+    CapturePrintStream stderr() {
+        return stderr;
+    }
+
+    /**
+     * Number of bytes written by all threads.
+     *
+     * @return captured bytes
+     */
+    long size() {
+        return written.sum();
+    }
+
+    void write(final boolean isErr, final byte[] bytes, final int offset, final int length) {
+        write(isErr, bytes, offset, length, null);
+    }
+
+    /**
+     * Write bytes as a single record, so they are never mixed with output of other threads.
+     *
+     * @param isErr   whether written to error output
+     * @param bytes   bytes to write
+     * @param offset  first byte
+     * @param length  number of bytes
+     * @param lineEnd bytes to add after the written ones (line separator), may be null
+     */
+    void write(final boolean isErr, final byte[] bytes, final int offset, final int length, final byte[] lineEnd) {
+        write(buffers.get(), isErr, bytes, offset, length, lineEnd);
+    }
+
+    /**
+     * Write a single byte, without allocation. Consecutive writes of a thread (with no write of another thread in
+     * between) are kept as one record, so printing byte by byte does not create a record per byte.
+     *
+     * @param isErr whether written to error output
+     * @param b     byte to write
+     */
+    void write(final boolean isErr, final int b) {
+        ThreadBuffer buffer = buffers.get();
+        //only used by the owner thread
+        buffer.oneByte[0] = (byte) b;
+        write(buffer, isErr, buffer.oneByte, 0, 1, null);
+    }
+
+    private void write(final ThreadBuffer buffer,
+                       final boolean isErr,
+                       final byte[] bytes,
+                       final int offset,
+                       final int length,
+                       final byte[] lineEnd) {
+        boolean full;
+        synchronized (buffer) {
+            //sequence is taken while holding the lock, see merge()
+            buffer.add(sequence.getAndIncrement(), isErr, bytes, offset, length, lineEnd);
+            full = buffer.size > THREAD_LIMIT;
+        }
+        written.add(length + ((null == lineEnd) ? 0 : lineEnd.length));
+
+        if (null == outputAvailable) {
+            if (full) {
+                merge();
+            }
+            return;
+        }
+
+        outputAvailable.run();
+        if (full) {
+            bufferFull.run();
+            buffer.awaitMerge();
+        }
+    }
+
+    /**
+     * Write output of all threads to the target, ordered by time of writes.
+     * Only writes that happened before this method started are merged. A write that took its sequence number before
+     * that holds the lock of its buffer, so it is not missed, and any later write has a higher number.
+     */
+    synchronized void merge() {
+        long cutoff = sequence.get();
+
+        merging.clear();
+        for (Iterator<ThreadBuffer> it = allBuffers.iterator(); it.hasNext(); ) {
+            ThreadBuffer buffer = it.next();
+            synchronized (buffer) {
+                if (buffer.takeBefore(cutoff)) {
+                    merging.add(buffer);
+                } else if (buffer.current.count == 0 && !buffer.owner.isAlive()) {
+                    //a thread that ended after cutoff may still have records for the next merge
+                    it.remove();
+                }
+                buffer.notifyAll();
+            }
+        }
+
+        //k-way merge of records sorted by sequence in each buffer, using a binary heap of buffers
+        int size = merging.size();
+        if (heap.length < size) {
+            heap = new Records[size];
+        }
+        for (int i = 0; i < size; i++) {
+            heap[i] = merging.get(i).taken;
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i, size);
+        }
+        while (size > 0) {
+            Records first = heap[0];
+            first.writeNext(target);
+            if (!first.hasNext()) {
+                heap[0] = heap[--size];
+                heap[size] = null;
+            }
+            siftDown(0, size);
+        }
+    }
+
+    private void siftDown(final int index, final int size) {
+        int parent = index;
+        while (true) {
+            int smallest = parent;
+            int left = 2 * parent + 1;
+            int right = left + 1;
+            if (left < size && heap[left].nextSequence() < heap[smallest].nextSequence()) {
+                smallest = left;
+            }
+            if (right < size && heap[right].nextSequence() < heap[smallest].nextSequence()) {
+                smallest = right;
+            }
+            if (smallest == parent) {
+                return;
+            }
+            Records swap = heap[parent];
+            heap[parent] = heap[smallest];
+            heap[smallest] = swap;
+            parent = smallest;
+        }
+    }
+
+    private ThreadBuffer newBuffer() {
+        ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread());
+        allBuffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Receives merged output.
+     */
+    interface Target {
+        void write(boolean isErr, byte[] bytes, int offset, int length);
+    }
+
+    /**
+     * Records of one thread.
+     */
+    private static final class Records {
+        private byte[] bytes = new byte[1024];
+        private long[] sequences = new long[64];
+        //end offset of each record in bytes
+        private int[] ends = new int[64];
+        private boolean[] errs = new boolean[64];
+        private int count;
+        private int size;
+        //index of next record to write, when merging
+        private int next;
+
+        private void add(final long sequence,
+                         final boolean isErr,
+                         final byte[] source,
+                         final int offset,
+                         final int length,
+                         final byte[] lineEnd) {
+            int total = length + ((null == lineEnd) ? 0 : lineEnd.length);
+            if (size + total > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + total));
+            }
+            System.arraycopy(source, offset, bytes, size, length);
+            if (null != lineEnd) {
+                System.arraycopy(lineEnd, 0, bytes, size + length, lineEnd.length);
+            }
+            size += total;
+
+            if (count > 0 && sequences[count - 1] == sequence - 1 && errs[count - 1] == isErr) {
+                //nobody wrote in between, continue the last record (it is ordered by its last write)
+                sequences[count - 1] = sequence;
+                ends[count - 1] = size;
+                return;
+            }
+            if (count == sequences.length) {
+                sequences = Arrays.copyOf(sequences, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                errs = Arrays.copyOf(errs, count * 2);
+            }
+            sequences[count] = sequence;
+            ends[count] = size;
+            errs[count] = isErr;
+            count++;
+        }
+
+        private void clear() {
+            count = 0;
+            size = 0;
+            next = 0;
+        }
+
+        private boolean hasNext() {
+            return next < count;
+        }
+
+        private long nextSequence() {
+            return sequences[next];
+        }
+
+        private void writeNext(final Target target) {
+            int start = (next == 0) ? 0 : ends[next - 1];
+            target.write(errs[next], bytes, start, ends[next] - start);
+            next++;
+        }
+    }
+
+    /**
+     * Buffer of a single thread. Records are written to {@code current} by the owner thread, merge swaps them to
+     * {@code taken}, so the owner can continue writing while they are merged.
+     */
+    private static final class ThreadBuffer {
+        private final Thread owner;
+        private final byte[] oneByte = new byte[1];
+        private Records current = new Records();
+        private Records taken = new Records();
+        private int size;
+
+        private ThreadBuffer(final Thread owner) {
+            this.owner = owner;
+        }
+
+        private void add(final long sequence,
+                         final boolean isErr,
+                         final byte[] source,
+                         final int offset,
+                         final int length,
+                         final byte[] lineEnd) {
+            current.add(sequence, isErr, source, offset, length, lineEnd);
+            size = current.size;
+        }
+
+        /**
+         * Take records written before cutoff for merging. Called while holding the lock of this buffer.
+         *
+         * @param cutoff first sequence not to take
+         * @return true if there is anything to merge
+         */
+        private boolean takeBefore(final long cutoff) {
+            taken.clear();
+            if (current.count == 0 || current.sequences[0] >= cutoff) {
+                return false;
+            }
+
+            Records swap = taken;
+            taken = current;
+            current = swap;
+
+            //records written after merge started stay for the next one
+            int keep = taken.count;
+            while (keep > 0 && taken.sequences[keep - 1] >= cutoff) {
+                keep--;
+            }
+            for (int i = keep; i < taken.count; i++) {
+                int start = taken.ends[i - 1];
+                current.add(taken.sequences[i], taken.errs[i], taken.bytes, start, taken.ends[i] - start, null);
+            }
+            taken.count = keep;
+            size = current.size;
+
+            return true;
+        }
+
+        /**
+         * Wait until this buffer is merged, at most for a time limit (nobody may be merging).
+         */
+        private synchronized void awaitMerge() {
+            long waitUntil = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+            while (size > THREAD_LIMIT) {
+                long now = System.currentTimeMillis();
+                if (now >= waitUntil) {
+                    return;
+                }
+                try {
+                    wait(waitUntil - now);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
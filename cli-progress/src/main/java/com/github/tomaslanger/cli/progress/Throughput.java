@@ -0,0 +1,82 @@
+package com.github.tomaslanger.cli.progress;
+
+/**
+ * Exponentially weighted moving average of progress per second.
+ * Sampled when a frame is painted (or a snapshot is taken), never on progress updates. Weight of a sample depends on
+ * time elapsed since the previous one, so the average does not depend on how often frames are painted: progress
+ * made a {@link #TIME_CONSTANT_NANOS} ago has about third of the weight of current progress.
+ */
+final class Throughput {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    //time constant of the moving average
+    static final long TIME_CONSTANT_NANOS = 3 * NANOS_PER_SECOND;
+    //samples closer to each other are merged, so the rate is not computed from noise
+    private static final long MIN_SAMPLE_NANOS = 100_000_000L;
+
+    private long beginNanos;
+    private long lastSampleNanos;
+    private long lastSampleProgress;
+    //progress per second, negative until first rate is known
+    private double rate = -1;
+
+    /**
+     * Add a sample of current progress. When the bar was started again since the last sample, measuring starts
+     * from scratch (with zero progress at begin).
+     *
+     * @param beginNanos {@link System#nanoTime()} when the bar was started
+     * @param nanos      {@link System#nanoTime()} of the sample
+     * @param progress   progress at that time
+     */
+    synchronized void sample(final long beginNanos, final long nanos, final long progress) {
+        if (beginNanos != this.beginNanos) {
+            this.beginNanos = beginNanos;
+            lastSampleNanos = beginNanos;
+            lastSampleProgress = 0;
+            rate = -1;
+        }
+
+        long elapsed = nanos - lastSampleNanos;
+        if (elapsed < MIN_SAMPLE_NANOS) {
+            return;
+        }
+
+        double current = (double) (progress - lastSampleProgress) * NANOS_PER_SECOND / elapsed;
+        if (rate < 0) {
+            rate = Math.max(0, current);
+        } else {
+            double alpha = 1 - Math.exp(-(double) elapsed / TIME_CONSTANT_NANOS);
+            rate = Math.max(0, rate + alpha * (current - rate));
+        }
+
+        lastSampleNanos = nanos;
+        lastSampleProgress = progress;
+    }
+
+    /**
+     * Smoothed progress per second.
+     *
+     * @return rate, or zero if not known yet
+     */
+    synchronized double getRate() {
+        return Math.max(0, rate);
+    }
+
+    /**
+     * Estimated nanoseconds until max is reached at current rate.
+     *
+     * @param progress current progress
+     * @param max      max progress
+     * @return remaining nanoseconds, zero if done, -1 if not known (nothing measured yet or no progress)
+     */
+    synchronized long etaNanos(final long progress, final long max) {
+        if (progress >= max) {
+            return 0;
+        }
+        if (rate <= 0) {
+            return -1;
+        }
+        double eta = (max - progress) / rate * NANOS_PER_SECOND;
+
+        return (eta >= Long.MAX_VALUE) ? -1 : (long) eta;
+    }
+}
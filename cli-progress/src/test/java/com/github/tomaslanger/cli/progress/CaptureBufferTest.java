@@ -0,0 +1,97 @@
+package com.github.tomaslanger.cli.progress;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests for capture of outputs.
+ */
+public class CaptureBufferTest {
+    @Test
+    public void testSpillToFile() throws IOException {
+        CaptureBuffer buffer = new CaptureBuffer(16);
+        PrintStream out = new PrintStream(buffer);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            out.print("Line " + i + "\n");
+            expected.append("Line ").append(i).append('\n');
+        }
+        out.write('!');
+        expected.append('!');
+        out.flush();
+
+        assertEquals(expected.length(), buffer.size());
+        assertEquals(expected.length() - 16, buffer.spilledSize());
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        buffer.writeTo(result);
+        assertEquals(expected.toString(), result.toString());
+
+        buffer.close();
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        CaptureBuffer buffer = new CaptureBuffer(1024);
+        buffer.write("Hello".getBytes());
+        assertEquals(5, buffer.size());
+        assertEquals(0, buffer.spilledSize());
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        buffer.writeTo(result);
+        assertEquals("Hello", result.toString());
+        buffer.close();
+    }
+
+    @Test
+    public void testLiveOutputPassesCompleteLines() throws IOException {
+        int[] notified = new int[1];
+        LiveOutput live = new LiveOutput(() -> notified[0]++, () -> { }, null);
+        live.getCapture().stdout().write("first\nsec".getBytes());
+        live.getCapture().stderr().write("error\n".getBytes());
+        assertEquals(2, notified[0]);
+
+        FrameBuffer frame = new FrameBuffer(16);
+        live.drainTo(frame, true);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        frame.writeTo(new PrintStream(result));
+        assertEquals("\r\nfirst\r\nerror", result.toString());
+
+        live.getCapture().stdout().write("ond\n".getBytes());
+        live.getCapture().stdout().write("last".getBytes());
+        live.completeLines();
+        frame.reset();
+        result.reset();
+        live.drainTo(frame, false);
+        frame.writeTo(new PrintStream(result));
+        assertEquals("second\nlast\n", result.toString());
+        assertEquals(23, live.size());
+    }
+
+    @Test
+    public void testLiveOutputWritesSeparatedErrors() {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        LiveOutput live = new LiveOutput(() -> { }, () -> { }, new PrintStream(errors));
+        live.getCapture().stdout().print("out\n");
+        live.getCapture().stderr().print("error\nincomplete");
+
+        FrameBuffer frame = new FrameBuffer(16);
+        live.drainTo(frame, false);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        frame.writeTo(new PrintStream(result));
+        assertEquals("out\n", result.toString());
+        assertEquals("error\n", errors.toString());
+
+        live.completeLines();
+        frame.reset();
+        assertFalse(live.drainTo(frame, false));
+        assertEquals("error\nincomplete\n", errors.toString());
+    }
+}
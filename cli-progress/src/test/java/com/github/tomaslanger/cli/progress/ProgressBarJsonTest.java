@@ -0,0 +1,120 @@
+package com.github.tomaslanger.cli.progress;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for JSON lines events.
+ */
+public class ProgressBarJsonTest {
+    private static String[] lines(final ByteArrayOutputStream bytes) {
+        return bytes.toString().split(System.lineSeparator());
+    }
+
+    @Test
+    public void testPercentStep() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBar pb = new ProgressBar.Builder()
+                .setJsonEvents(true)
+                .setJsonName("download \"a\"")
+                .setJsonInterval(0)
+                .setJsonPercentStep(10)
+                .setMax(1_000_000)
+                .build();
+        pb.begin(new PrintStream(bytes));
+        for (int i = 0; i < 1_000_000; i++) {
+            pb.setProgress(i, "file.zip");
+        }
+        pb.end();
+
+        String[] lines = lines(bytes);
+        //begin, one event per 10 percent (status waits for the first of them), end
+        assertEquals(String.join("\n", lines), 12, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("{\"event\":\"begin\",\"name\":\"download \\\"a\\\"\",\"time\":"));
+        assertTrue(lines[1], lines[1].contains("\"progress\":100000,\"max\":1000000,\"percent\":10,"));
+        assertTrue(lines[1], lines[1].endsWith(",\"status\":\"file.zip\"}"));
+        assertTrue(lines[10], lines[10].contains("\"progress\":1000000,\"max\":1000000,\"percent\":100,"));
+        assertTrue(lines[11], lines[11].startsWith("{\"event\":\"end\""));
+        assertTrue(lines[11], lines[11].contains("\"progress\":1000000,\"max\":1000000,\"percent\":100,"));
+    }
+
+    @Test
+    public void testIntervalLimitsEvents() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBar pb = new ProgressBar.Builder().setJsonEvents(true).setJsonInterval(60_000).build();
+        pb.begin(new PrintStream(bytes));
+        for (int i = 0; i < 100; i++) {
+            pb.setProgress(i, "status " + i);
+        }
+        pb.cancel();
+
+        String[] lines = lines(bytes);
+        assertEquals(String.join("\n", lines), 2, lines.length);
+        assertTrue(lines[1], lines[1].startsWith("{\"event\":\"cancel\",\"name\":null,"));
+        assertTrue(lines[1], lines[1].contains("\"progress\":99,"));
+        assertTrue(lines[1], lines[1].endsWith("\"status\":\"status 99\"}"));
+    }
+
+    @Test
+    public void testLastChangeWrittenWhenIntervalExpires() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBar pb = new ProgressBar.Builder().setJsonEvents(true).setJsonInterval(200).build();
+        pb.begin(new PrintStream(bytes));
+        for (int i = 1; i <= 50; i++) {
+            pb.setProgress(i, "status " + i);
+        }
+
+        long waitUntil = System.currentTimeMillis() + 5000;
+        while (!bytes.toString().contains("\"progress\":50,") && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(20);
+        }
+        String[] lines = lines(bytes);
+        pb.end();
+
+        assertEquals(String.join("\n", lines), 2, lines.length);
+        assertTrue(lines[1], lines[1].startsWith("{\"event\":\"progress\""));
+        assertTrue(lines[1], lines[1].contains("\"progress\":50,"));
+        assertTrue(lines[1], lines[1].endsWith("\"status\":\"status 50\"}"));
+    }
+
+    @Test
+    public void testBytesWrittenAreEncoded() throws UnsupportedEncodingException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBar pb = new ProgressBar.Builder().setJsonEvents(true).setJsonInterval(0).build();
+        pb.begin(new PrintStream(bytes, true, Charset.defaultCharset().name()));
+        pb.setProgress(10, "Stažení souboru \u2713");
+        pb.end();
+
+        assertEquals(bytes.size(), pb.getBytesWritten());
+    }
+
+    @Test
+    public void testMasterDetailTasks() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBarMasterDetail pb = new ProgressBarMasterDetail.Builder()
+                .setMasterPbBuilder(new ProgressBar.Builder().setJsonEvents(true).setJsonInterval(0).setMax(20))
+                .setChildPbBuilder(new ProgressBar.Builder())
+                .build();
+        pb.begin(new PrintStream(bytes));
+        pb.nextTask(10, "first");
+        pb.setProgress(10, "first done");
+        pb.nextTask(10, "second");
+        pb.end();
+
+        String[] lines = lines(bytes);
+        assertEquals(String.join("\n", lines), 6, lines.length);
+        assertTrue(lines[1], lines[1].startsWith("{\"event\":\"task\""));
+        assertTrue(lines[1], lines[1].endsWith(",\"task\":\"first\",\"taskMax\":10}"));
+        assertTrue(lines[2], lines[2].contains("\"progress\":10,"));
+        assertTrue(lines[3], lines[3].endsWith(",\"task\":\"second\",\"taskMax\":10}"));
+        assertTrue(lines[4], lines[4].contains("\"progress\":20,"));
+        assertTrue(lines[5], lines[5].startsWith("{\"event\":\"end\""));
+    }
+}
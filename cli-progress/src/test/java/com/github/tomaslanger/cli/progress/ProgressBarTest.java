@@ -0,0 +1,674 @@
+package com.github.tomaslanger.cli.progress;
+
+import com.github.tomaslanger.chalk.Ansi;
+import com.github.tomaslanger.chalk.Chalk;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Tests for progress bar.
+ */
+public class ProgressBarTest {
+    private static final long FIVE_GB = 5L * 1024 * 1024 * 1024;
+
+    @Test
+    public void testFraction() {
+        assertEquals(0, ProgressBar.fraction(0, 100, 32));
+        assertEquals(16, ProgressBar.fraction(50, 100, 32));
+        assertEquals(32, ProgressBar.fraction(100, 100, 32));
+        assertEquals("Progress over max is the whole scale", 32, ProgressBar.fraction(150, 100, 32));
+        assertEquals("Negative progress is nothing", 0, ProgressBar.fraction(-1, 100, 32));
+    }
+
+    @Test
+    public void testFractionDoesNotOverflow() {
+        assertEquals(50, ProgressBar.fraction(FIVE_GB / 2, FIVE_GB, 100));
+        assertEquals(50, ProgressBar.fraction(Long.MAX_VALUE / 2, Long.MAX_VALUE, 100));
+        assertEquals(99, ProgressBar.fraction(Long.MAX_VALUE - 1, Long.MAX_VALUE, 100));
+    }
+
+    @Test
+    public void testLongProgress() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBar pb = new ProgressBar.Builder().setMax(FIVE_GB).noColors().build();
+
+        pb.begin(new PrintStream(bytes));
+        pb.setProgress(FIVE_GB / 4);
+        assertEquals(FIVE_GB / 4, pb.getProgress());
+        String printed = bytes.toString();
+        assertTrue("Must print quarter of the bar: " + printed, printed.contains("********------------------------  25%"));
+
+        pb.add(FIVE_GB / 4);
+        assertEquals(FIVE_GB / 2, pb.getProgress());
+        assertEquals(FIVE_GB, pb.getMaxLong());
+        assertEquals("int max of callers compiled against int progress", Integer.MAX_VALUE, pb.getMax());
+        pb.end();
+    }
+
+    @Test
+    public void testConcurrentAdd() throws InterruptedException {
+        final int threads = 8;
+        final int increments = 10_000;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        //no render thread, frames are painted by the adding threads
+        ProgressBar pb = new ProgressBar.Builder()
+                .setMax(threads * increments)
+                .setCharCount(10)
+                .noColors()
+                .build();
+        pb.begin(new PrintStream(bytes));
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final boolean useAdd = (i % 2 == 0);
+            Thread worker = new Thread(() -> {
+                for (int j = 0; j < increments; j++) {
+                    if (useAdd) {
+                        pb.add(1);
+                    } else {
+                        pb.increment();
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(threads * increments, pb.getProgress());
+        pb.end();
+        assertEquals("********** 100%", Screen.of(bytes.toString()).lastLine());
+    }
+
+    @Test
+    public void testSetProgressWithConcurrentAdd() throws InterruptedException {
+        final long step = 1_000_000;
+        ProgressBar pb = new ProgressBar.Builder()
+                .setMax(Long.MAX_VALUE)
+                .setHeadless(HeadlessMode.SILENT)
+                .build();
+        pb.begin();
+
+        AtomicBoolean done = new AtomicBoolean();
+        Thread adder = new Thread(() -> {
+            while (!done.get()) {
+                pb.add(1);
+            }
+        });
+        Thread setter = new Thread(() -> {
+            for (long i = 1; i <= 20_000; i++) {
+                pb.setProgress(i * step);
+            }
+        });
+        adder.start();
+        setter.start();
+        //absolute progress only grows and additions are positive, so a reader must never see progress go back
+        long last = 0;
+        while (setter.isAlive()) {
+            long progress = pb.getProgress();
+            assertTrue("Progress went back from " + last + " to " + progress, progress >= last);
+            last = progress;
+        }
+        setter.join();
+        done.set(true);
+        adder.join();
+        assertTrue(pb.getProgress() >= 20_000 * step);
+
+        pb.setProgress(42);
+        assertEquals(42, pb.getProgress());
+        pb.add(8);
+        assertEquals(50, pb.getProgress());
+        pb.end();
+    }
+
+    @Test
+    public void testFillIsSameAsChalk() {
+        ProgressBar pb = new ProgressBar.Builder().setProgressChar('#').setBgColor(Ansi.BgColor.RED).build();
+        pb.addModifier(Ansi.Modifier.BOLD);
+
+        Chalk expected = Chalk.on("###").apply(Ansi.BgColor.RED).apply(Ansi.Modifier.BOLD);
+        assertEquals(expected.toString(), pb.fill(3));
+        assertEquals("", pb.fill(0));
+
+        pb.setBgColor(Ansi.BgColor.BLUE);
+        expected = Chalk.on("###").apply(Ansi.BgColor.BLUE).apply(Ansi.Modifier.BOLD);
+        assertEquals("Changed style must not use cached characters", expected.toString(), pb.fill(3));
+    }
+
+    @Test
+    public void testFrameIsSingleWrite() {
+        final int[] writes = new int[1];
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream counting = new OutputStream() {
+            @Override
+            public void write(final int b) {
+                writes[0]++;
+                bytes.write(b);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+                writes[0]++;
+                bytes.write(b, off, len);
+            }
+        };
+        ProgressBar pb = new ProgressBar.Builder().setStatusLocation(StatusLoc.LAST_LINE).build();
+        pb.begin(new PrintStream(counting));
+
+        pb.setProgress(50, "Half way");
+        assertEquals("Whole frame must be written at once", 1, writes[0]);
+        assertEquals(1, pb.getFramesPainted());
+        assertEquals(bytes.size(), pb.getLastFrameBytes());
+        assertEquals(bytes.size(), pb.getBytesWritten());
+
+        pb.setProgress(75, "Almost there");
+        assertEquals("Whole frame must be written at once", 2, writes[0]);
+        assertEquals(bytes.size(), pb.getBytesWritten());
+        pb.end();
+    }
+
+    @Test
+    public void testPartialRepaint() {
+        assumeFalse("Partial repaint requires cursor commands", ProgressBarBase.ONE_LINE_ONLY);
+
+        ByteArrayOutputStream fullBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream partialBytes = new ByteArrayOutputStream();
+        ProgressBar full = new ProgressBar.Builder()
+                .setFullRepaint(true)
+                .setStatusLocation(StatusLoc.SAME_LINE)
+                .build();
+        ProgressBar partial = new ProgressBar.Builder().setStatusLocation(StatusLoc.SAME_LINE).build();
+        full.begin(new PrintStream(fullBytes));
+        partial.begin(new PrintStream(partialBytes));
+
+        for (int i = 0; i <= 100; i++) {
+            full.setProgress(i, (i % 10 == 0) ? "Done " + i : "Downloading file number " + i);
+            partial.setProgress(i, (i % 10 == 0) ? "Done " + i : "Downloading file number " + i);
+            //what is visible must be the same, including columns of changed parts and erased rest of longer status
+            assertEquals("Frame " + i, Screen.of(fullBytes.toString()).lastLine(), Screen.of(partialBytes.toString()).lastLine());
+        }
+
+        assertEquals(full.getFramesPainted(), partial.getFramesPainted());
+        assertTrue("Partial repaint must write much less: " + partial.getBytesWritten() + " of " + full.getBytesWritten(),
+                   partial.getBytesWritten() * 3 < full.getBytesWritten());
+        full.end();
+        partial.end();
+
+        //one more character and percentage, written at their columns
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBar pb = new ProgressBar.Builder().setCharCount(10).noColors().build();
+        pb.begin(new PrintStream(bytes));
+        pb.setProgress(10);
+        int painted = bytes.size();
+        pb.setProgress(20);
+        //changed progress character and percentage, each at its column
+        assertEquals("\u001B[2G*\u001B[11G  20%", bytes.toString().substring(painted));
+        assertEquals("**--------  20%", Screen.of(bytes.toString()).lastLine());
+        pb.end();
+    }
+
+    @Test
+    public void testGroupPrintsEndedBars() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBarGroup group = new ProgressBarGroup.Builder().setViewport(2).build();
+        group.begin(new PrintStream(bytes));
+
+        ProgressBar first = group.add(new ProgressBar.Builder().noColors());
+        ProgressBar second = group.add(new ProgressBar.Builder().noColors());
+        ProgressBar third = group.add(new ProgressBar.Builder().noColors());
+        assertEquals(3, group.size());
+
+        first.add(25);
+        second.setStatus("second");
+        second.end();
+        assertEquals(2, group.size());
+        group.remove(third);
+        assertEquals(1, group.size());
+        group.end();
+
+        String output = bytes.toString();
+        assertTrue(output, output.contains("******************************** 100% second"));
+        first.end();
+    }
+
+    @Test
+    public void testParallelMasterDetail() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBarMasterDetail pb = new ProgressBarMasterDetail.Builder()
+                .setMasterPbBuilder(new ProgressBar.Builder().setMax(8000))
+                .setChildPbBuilder(new ProgressBar.Builder())
+                .setParallelTasks(true)
+                .setFps(100)
+                .build();
+        pb.begin(new PrintStream(bytes));
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            ProgressBar task = pb.startTask(1000, "file " + i);
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    task.increment();
+                }
+                task.end();
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8000, pb.getSnapshot().getProgress());
+        pb.end();
+        assertTrue(bytes.size() > 0);
+    }
+
+    @Test
+    public void testParallelMasterDetailHeadless() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBarMasterDetail pb = new ProgressBarMasterDetail.Builder()
+                .setMasterPbBuilder(new ProgressBar.Builder().setMax(30))
+                .setChildPbBuilder(new ProgressBar.Builder())
+                .setParallelTasks(true)
+                .setHeadless(HeadlessMode.SUMMARY)
+                .build();
+        pb.begin(new PrintStream(bytes));
+        ProgressBar first = pb.startTask(10, "first");
+        ProgressBar second = pb.startTask(20, "second");
+        first.end();
+        second.add(5);
+        pb.cancel();
+        assertEquals("cancelled at 15/30 (50%) after 0:00" + System.lineSeparator(), bytes.toString());
+    }
+
+    @Test
+    public void testBatchFlush() {
+        final int[] writes = new int[1];
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream counting = new OutputStream() {
+            @Override
+            public void write(final int b) {
+                writes[0]++;
+                bytes.write(b);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+                writes[0]++;
+                bytes.write(b, off, len);
+            }
+        };
+        ProgressBar pb = new ProgressBar.Builder()
+                .setBatch()
+                .noColors()
+                .setCharCount(32)
+                .setBatchHeader(true)
+                .setBatchFlush(BatchFlush.everyChars(8))
+                .build();
+        pb.begin(new PrintStream(counting));
+        assertEquals("Header is a single write", 1, writes[0]);
+
+        for (int i = 0; i <= 50; i++) {
+            pb.setProgress(i);
+        }
+        //16 characters in two chunks of 8
+        assertEquals(3, writes[0]);
+        pb.end();
+        assertEquals("Rest of the bar is written with its end", 4, writes[0]);
+        String separator = System.lineSeparator();
+        assertEquals(repeat('-', 32) + separator + repeat('*', 32) + separator, bytes.toString());
+
+        bytes.reset();
+        writes[0] = 0;
+        ProgressBar atEnd = new ProgressBar.Builder()
+                .setBatch()
+                .noColors()
+                .setCharCount(10)
+                .setBatchFlush(BatchFlush.atEnd())
+                .build();
+        atEnd.begin(new PrintStream(counting));
+        for (int i = 0; i <= 50; i++) {
+            atEnd.setProgress(i);
+        }
+        assertEquals(0, writes[0]);
+        atEnd.cancel();
+        assertEquals(1, writes[0]);
+        assertEquals("*****-----" + separator, bytes.toString());
+    }
+
+    @Test
+    public void testTimedBatchFlushWhenStalled() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBar pb = new ProgressBar.Builder()
+                .setBatch()
+                .noColors()
+                .setCharCount(10)
+                .setBatchFlush(BatchFlush.everyMillis(100))
+                .build();
+        pb.begin(new PrintStream(bytes));
+        pb.setProgress(50);
+
+        //no more updates, waiting characters must be flushed when the interval expires
+        long waitUntil = System.currentTimeMillis() + 5000;
+        while (bytes.size() == 0 && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(20);
+        }
+        assertEquals("*****", bytes.toString());
+
+        pb.end();
+        assertEquals("**********" + System.lineSeparator(), bytes.toString());
+    }
+
+    private static String repeat(final char c, final int count) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testMasterDetailWritesChangedFrames() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBarMasterDetail pb = new ProgressBarMasterDetail.Builder()
+                .setMasterPbBuilder(new ProgressBar.Builder().setMax(2000))
+                .setChildPbBuilder(new ProgressBar.Builder())
+                .build();
+        pb.begin(new PrintStream(bytes));
+        pb.nextTask(1000, "first");
+        pb.setProgress(500, "first");
+        int size = bytes.size();
+
+        //nothing visible changes
+        pb.setProgress(501, "first");
+        pb.setProgress(502, "first");
+        assertEquals(size, bytes.size());
+
+        pb.setProgress(600, "first");
+        assertTrue(bytes.size() > size);
+        pb.end();
+
+        String out = bytes.toString();
+        //saved cursor belongs to bars pinned to the bottom
+        assertTrue(out, !out.contains("\u001B7") && !out.contains("\u001B8"));
+        Screen screen = Screen.of(out);
+        assertTrue(screen.line(0), screen.line(0).contains(" 30%"));
+        assertEquals("first", screen.line(1));
+        assertTrue(screen.line(2), screen.line(2).contains(" 60%"));
+        assertEquals(3, screen.getRow());
+    }
+
+    @Test
+    public void testMasterDetailStatusIsTimed() throws InterruptedException {
+        assumeFalse("Master is composed only with cursor commands", ProgressBarBase.ONE_LINE_ONLY);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBarMasterDetail pb = new ProgressBarMasterDetail.Builder()
+                .setMasterPbBuilder(new ProgressBar.Builder().setMax(1000).noColors())
+                .setChildPbBuilder(new ProgressBar.Builder().noColors())
+                .build();
+        pb.begin(new PrintStream(bytes));
+        pb.nextTask(1000, "first");
+        Thread.sleep(200);
+        pb.setProgress(500, "first {rate}");
+        pb.end();
+
+        //bars painted as rows are not begun, they must still measure time of the task
+        String info = Screen.of(bytes.toString()).line(1);
+        assertTrue(info, info.startsWith("first "));
+        assertTrue(info, Long.parseLong(info.substring("first ".length())) > 0);
+    }
+
+    @Test
+    public void testMasterDetailWithBatchMaster() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBarMasterDetail pb = new ProgressBarMasterDetail.Builder()
+                .setMasterPbBuilder(new ProgressBar.Builder().setMax(20).setCharCount(10).noColors().setBatch())
+                .setChildPbBuilder(new ProgressBar.Builder())
+                .build();
+        pb.begin(new PrintStream(bytes));
+        pb.nextTask(10, "first");
+        pb.setProgress(10, "first");
+        pb.nextTask(10, "second");
+        assertEquals("*****", bytes.toString());
+
+        pb.end();
+        assertEquals("**********" + System.lineSeparator(), bytes.toString());
+    }
+
+    @Test
+    public void testBatchMicroTasks() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBarMasterDetail pb = new ProgressBarMasterDetail.Builder()
+                .setMasterPbBuilder(new ProgressBar.Builder().setMax(1000).setCharCount(10).noColors())
+                .setChildPbBuilder(new ProgressBar.Builder())
+                .setMicroTasks(true)
+                .setBatch()
+                .build();
+        pb.begin(new PrintStream(bytes));
+        for (int i = 0; i < 500; i++) {
+            pb.nextTask(1, "task " + i);
+            pb.setProgress(1, "task " + i);
+        }
+        assertEquals("*****", bytes.toString());
+
+        pb.end();
+        assertEquals("**********" + System.lineSeparator(), bytes.toString());
+    }
+
+    @Test
+    public void testMicroTasks() {
+        final Thread caller = Thread.currentThread();
+        final int[] callerWrites = new int[1];
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream byCaller = new OutputStream() {
+            @Override
+            public void write(final int b) {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+                if (Thread.currentThread() == caller) {
+                    callerWrites[0]++;
+                }
+                bytes.write(b, off, len);
+            }
+        };
+        ProgressBarMasterDetail pb = new ProgressBarMasterDetail.Builder()
+                .setMasterPbBuilder(new ProgressBar.Builder().setMax(200_000).noColors())
+                .setChildPbBuilder(new ProgressBar.Builder().noColors())
+                .setMicroTasks(true)
+                .build();
+        pb.begin(new PrintStream(byCaller));
+        callerWrites[0] = 0;
+        for (int i = 0; i < 100_000; i++) {
+            pb.nextTask(2, "task " + i);
+            pb.setProgress(2, "task " + i);
+        }
+        pb.nextTask(0, "last");
+        assertEquals(200_000, pb.getSnapshot().getProgress());
+        //tasks are only recorded, frames are painted by the render thread
+        assertEquals(0, callerWrites[0]);
+        pb.end();
+
+        Screen screen = Screen.of(bytes.toString());
+        assertTrue(screen.line(0), screen.line(0).endsWith("100%"));
+        assertEquals("last", screen.line(1));
+    }
+
+    @Test
+    public void testThroughputIsSmoothed() {
+        long second = 1_000_000_000L;
+        Throughput throughput = new Throughput();
+        assertEquals(-1, throughput.etaNanos(0, 100));
+
+        throughput.sample(1, 1 + second, 10);
+        assertEquals(10, throughput.getRate(), 0.001);
+        assertEquals(9 * second, throughput.etaNanos(10, 100));
+
+        //sudden change of speed is not taken whole
+        throughput.sample(1, 1 + 2 * second, 40);
+        assertTrue(String.valueOf(throughput.getRate()), throughput.getRate() > 10 && throughput.getRate() < 30);
+
+        //new begin starts from scratch
+        throughput.sample(5 * second, 6 * second, 5);
+        assertEquals(5, throughput.getRate(), 0.001);
+    }
+
+    @Test
+    public void testStatusPlaceholders() {
+        long second = 1_000_000_000L;
+        ProgressSnapshot snapshot = new ProgressSnapshot(30, 100, 65 * second, 2.54, 3725 * second);
+        StringBuilder text = new StringBuilder();
+        StatusPlaceholders.expand("{progress}/{max} {percent} {rate}/s {elapsed} {eta} {unknown} {", text, snapshot);
+        assertEquals("30/100 30% 2.5/s 1:05 1:02:05 {unknown} {", text.toString());
+
+        text.setLength(0);
+        StatusPlaceholders.expand("eta {eta}", text, new ProgressSnapshot(0, 100, 0, 0, -1));
+        assertEquals("eta --:--", text.toString());
+    }
+
+    @Test
+    public void testBracesAreNotPlaceholders() {
+        assertTrue(StatusPlaceholders.hasPlaceholders("ETA {eta}"));
+        assertTrue(StatusPlaceholders.hasPlaceholders("{unknown} {rate:bytes:9}/s"));
+        assertFalse(StatusPlaceholders.hasPlaceholders("Parsing { of file.json"));
+        assertFalse(StatusPlaceholders.hasPlaceholders("{\"key\": 1} {} {etas}"));
+        assertFalse(StatusPlaceholders.hasPlaceholders(null));
+
+        //status with a plain brace is painted once, not again for each update
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBar pb = new ProgressBar.Builder().build();
+        pb.begin(new PrintStream(bytes));
+        pb.setProgress(50, "Parsing { of file.json");
+        long frames = pb.getFramesPainted();
+        pb.setProgress(50, "Parsing { of file.json");
+        assertEquals(frames, pb.getFramesPainted());
+        pb.end();
+    }
+
+    @Test
+    public void testStatusTemplate() {
+        long second = 1_000_000_000L;
+        StatusTemplate template = StatusTemplate.compile("{status:-6}|{current:bytes:9}/{max:bytes} {rate:bytes}/s {percent:4} {eta} {unit}", "files");
+        StringBuilder text = new StringBuilder();
+        template.render(text, "copy", 1536, 5L * 1024 * 1024 * 1024, 10 * second, 1023.6, 65 * second);
+        assertEquals("copy  |   1.5 KB/5.0 GB 1.0 KB/s   0% 1:05 files", text.toString());
+        assertTrue(template.isLive());
+        assertTrue(template.hasStatus());
+
+        text.setLength(0);
+        StatusTemplate.compile("{current:5}|{elapsed:-6}|{status}{unknown}{current:x}", null)
+                .render(text, null, 42, 100, 3725 * second, 0, -1);
+        assertEquals("   42|1:02:05|{unknown}{current:x}", text.toString());
+
+        text.setLength(0);
+        StatusTemplate.appendBytes(text, 1023.96 * 1024);
+        assertEquals("1.0 MB", text.toString());
+    }
+
+    @Test
+    public void testStatusTemplateOnScreen() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBar pb = new ProgressBar.Builder()
+                .setMax(2048)
+                .setStatusLocation(StatusLoc.SAME_LINE)
+                .setStatusTemplate("{status:-8} {current:bytes:8}")
+                .build();
+        pb.begin(new PrintStream(bytes));
+        pb.setProgress(1024, "copying");
+        pb.end();
+        assumeFalse("Batch does not print status", pb instanceof ProgressBarBatch);
+
+        assertTrue(bytes.toString(), bytes.toString().contains("copying    1.0 KB"));
+    }
+
+    @Test
+    public void testStatusSupplierCalledPerFrame() {
+        AtomicInteger calls = new AtomicInteger();
+        ProgressBar pb = new ProgressBar.Builder().setMax(100_000).setStatusLocation(StatusLoc.SAME_LINE).build();
+        pb.begin(new PrintStream(new ByteArrayOutputStream()));
+        for (int i = 0; i <= 100_000; i++) {
+            final int at = i;
+            pb.setProgress(i, () -> {
+                calls.incrementAndGet();
+                return "Downloading file number " + at;
+            });
+        }
+
+        assertTrue("Supplier must be called only for painted frames: " + calls.get() + " of " + pb.getFramesPainted(),
+                   calls.get() <= pb.getFramesPainted());
+        assertTrue(calls.get() < 1000);
+        pb.end();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        calls.set(0);
+        ProgressBar headless = new ProgressBar.Builder().setHeadless(HeadlessMode.SUMMARY).build();
+        headless.begin(new PrintStream(bytes));
+        for (int i = 0; i <= 100; i++) {
+            final int at = i;
+            headless.setProgress(i, () -> {
+                calls.incrementAndGet();
+                return "File " + at;
+            });
+        }
+        headless.end();
+        assertEquals(1, calls.get());
+        assertEquals("File 100: 100/100 (100%) in 0:00" + System.lineSeparator(), bytes.toString());
+    }
+
+    @Test
+    public void testHeadless() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBar pb = new ProgressBar.Builder().setHeadless(HeadlessMode.SUMMARY).build();
+        pb.begin(new PrintStream(bytes));
+        for (int i = 0; i <= 100; i++) {
+            pb.setProgress(i, "Downloading");
+        }
+        assertEquals(100, pb.getProgress());
+        pb.end();
+        assertEquals(0, pb.getFramesPainted());
+        assertEquals("Downloading: 100/100 (100%) in 0:00" + System.lineSeparator(), bytes.toString());
+
+        bytes.reset();
+        ProgressBar cancelled = new ProgressBar.Builder().setHeadless(HeadlessMode.SUMMARY).build();
+        cancelled.begin(new PrintStream(bytes));
+        cancelled.add(25);
+        cancelled.cancel();
+        assertEquals("cancelled at 25/100 (25%) after 0:00" + System.lineSeparator(), bytes.toString());
+
+        bytes.reset();
+        ProgressBar silent = new ProgressBar.Builder().setHeadless(HeadlessMode.SILENT).build();
+        silent.begin(new PrintStream(bytes));
+        silent.setProgress(50);
+        silent.end();
+        assertEquals(0, bytes.size());
+    }
+
+    @Test
+    public void testHeadlessGroup() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBarGroup group = new ProgressBarGroup.Builder().setHeadless(HeadlessMode.SUMMARY).build();
+        group.begin(new PrintStream(bytes));
+        ProgressBar first = group.add(new ProgressBar.Builder().setMax(10));
+        first.setProgress(5, "first");
+        first.end();
+        group.end();
+        assertEquals("first: 10/10 (100%) in 0:00" + System.lineSeparator(), bytes.toString());
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.tomaslanger.cli.progress;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for registration of bars over JMX.
+ */
+public class ProgressMBeansTest {
+    private static Set<ObjectName> bars(final MBeanServer server) throws Exception {
+        return server.queryNames(new ObjectName(ProgressMBeans.DOMAIN + ":type=ProgressBar,*"), null);
+    }
+
+    @Test
+    public void testRegisteredWhileRunning() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        int before = bars(server).size();
+
+        ProgressBar pb = new ProgressBar.Builder().setJmx(true).setMax(200).build();
+        pb.begin(new PrintStream(new ByteArrayOutputStream()));
+        pb.setProgress(50, "half way");
+
+        Set<ObjectName> names = bars(server);
+        assertEquals(before + 1, names.size());
+        ObjectName name = null;
+        for (ObjectName candidate : names) {
+            if ((Long) server.getAttribute(candidate, "Progress") == 50L) {
+                name = candidate;
+            }
+        }
+        assertTrue("bar not found in " + names, null != name);
+        assertEquals(200L, server.getAttribute(name, "Max"));
+        assertEquals(25, server.getAttribute(name, "Percentage"));
+        assertEquals("half way", server.getAttribute(name, "Status"));
+        assertTrue(server.isRegistered(new ObjectName(ProgressMBeans.DOMAIN + ":type=Renderer")));
+
+        pb.end();
+        assertEquals(before, bars(server).size());
+    }
+
+    @Test
+    public void testSnapshotDoesNotCallSupplier() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> before = bars(server);
+
+        ProgressBar pb = new ProgressBar.Builder().setJmx(true).setMax(200).build();
+        pb.begin(new PrintStream(new ByteArrayOutputStream()));
+        AtomicInteger calls = new AtomicInteger();
+        pb.setProgress(100, () -> "painted " + calls.incrementAndGet());
+        assertEquals(1, calls.get());
+
+        Set<ObjectName> names = bars(server);
+        names.removeAll(before);
+        assertEquals(1, names.size());
+        ObjectName name = names.iterator().next();
+
+        CompositeData snapshot = (CompositeData) server.getAttribute(name, "Snapshot");
+        assertEquals(100L, snapshot.get("progress"));
+        assertEquals(200L, snapshot.get("max"));
+        assertEquals(50, snapshot.get("percentage"));
+        assertEquals("painted 1", snapshot.get("status"));
+        assertEquals("painted 1", server.getAttribute(name, "Status"));
+        assertEquals(1, calls.get());
+
+        pb.end();
+    }
+
+    @Test
+    public void testNotRegisteredByDefault() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        int before = bars(server).size();
+
+        ProgressBar pb = new ProgressBar.Builder().setMax(10).build();
+        pb.begin(new PrintStream(new ByteArrayOutputStream()));
+        assertEquals(before, bars(server).size());
+        pb.end();
+    }
+}
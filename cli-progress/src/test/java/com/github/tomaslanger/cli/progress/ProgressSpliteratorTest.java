@@ -0,0 +1,94 @@
+package com.github.tomaslanger.cli.progress;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterators;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for progress of streams.
+ */
+public class ProgressSpliteratorTest {
+    private static List<Integer> items(final int count) {
+        List<Integer> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    @Test
+    public void testParallelStream() {
+        List<Integer> items = items(100_000);
+        ProgressBar bar = new ProgressBar.Builder().setMax(items).setFps(20).claimNoOuts().build();
+        assertEquals(100_000, bar.getMaxLong());
+        bar.begin(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            long sum = ProgressSpliterator.stream(items, bar, true).mapToLong(Integer::longValue).sum();
+            assertEquals(99_999L * 100_000 / 2, sum);
+            assertEquals(100_000, bar.getProgress());
+        } finally {
+            bar.end();
+        }
+    }
+
+    @Test
+    public void testBatches() {
+        ProgressBar bar = new ProgressBar.Builder().setMax(100).claimNoOuts().build();
+        bar.begin(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            Iterator<Integer> it = Spliterators.iterator(new ProgressSpliterator<>(items(100).spliterator(), bar, 10));
+            for (int i = 0; i < 19; i++) {
+                it.next();
+            }
+            assertEquals(10, bar.getProgress());
+            while (it.hasNext()) {
+                it.next();
+            }
+            assertEquals(100, bar.getProgress());
+        } finally {
+            bar.end();
+        }
+    }
+
+    @Test
+    public void testUnknownSize() {
+        Iterator<Integer> iterator = items(10).iterator();
+        ProgressBar bar = new ProgressBar.Builder()
+                .setMax(Spliterators.spliteratorUnknownSize(iterator, 0))
+                .claimNoOuts()
+                .build();
+        assertEquals(100, bar.getMaxLong());
+    }
+
+    @Test
+    public void testDefaultBatch() {
+        assertEquals("Unknown size must not add each element", 64, ProgressSpliterator.defaultBatch(-1));
+        assertEquals("Small source is added each percent", 1, ProgressSpliterator.defaultBatch(100));
+        assertEquals(64, ProgressSpliterator.defaultBatch(10_000));
+        assertEquals(1000, ProgressSpliterator.defaultBatch(1_000_000));
+        assertEquals(4096, ProgressSpliterator.defaultBatch(Long.MAX_VALUE));
+
+        //batch is taken from the source, not from max of the bar
+        ProgressBar bar = new ProgressBar.Builder().claimNoOuts().build();
+        bar.begin();
+        try {
+            Iterator<Integer> it = Spliterators.iterator(new ProgressSpliterator<>(
+                    Spliterators.spliteratorUnknownSize(items(1000).iterator(), 0), bar));
+            for (int i = 0; i < 63; i++) {
+                it.next();
+            }
+            assertEquals(0, bar.getProgress());
+            it.next();
+            assertEquals(64, bar.getProgress());
+        } finally {
+            bar.end();
+        }
+    }
+}
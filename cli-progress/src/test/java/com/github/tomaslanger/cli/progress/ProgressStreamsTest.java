@@ -0,0 +1,156 @@
+package com.github.tomaslanger.cli.progress;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for streams and channels updating progress bars.
+ */
+public class ProgressStreamsTest {
+    private static ProgressBar bar(final long max) {
+        ProgressBar bar = new ProgressBar.Builder().setMax(max).claimNoOuts().build();
+        bar.begin(new PrintStream(new ByteArrayOutputStream()));
+        return bar;
+    }
+
+    private static byte[] data(final int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    @Test
+    public void testInputStreamFoldsReads() throws IOException {
+        ProgressBar bar = bar(100_000);
+        try (InputStream in = new ProgressInputStream(new ByteArrayInputStream(data(100_000)), bar, 10_000)) {
+            for (int i = 0; i < 9_999; i++) {
+                in.read();
+            }
+            byte[] buffer = new byte[1000];
+            while (in.read(buffer) >= 0) {
+                //read all
+            }
+            assertEquals(100_000, bar.getProgress());
+        } finally {
+            bar.end();
+        }
+    }
+
+    @Test
+    public void testInputStreamThreshold() throws IOException {
+        ProgressBar bar = bar(100);
+        try (InputStream in = new ProgressInputStream(new ByteArrayInputStream(data(100)), bar, 50)) {
+            assertEquals(10, in.read(new byte[10]));
+            assertEquals(0, bar.getProgress());
+            assertEquals(20, in.skip(20));
+            assertEquals(30, in.read(new byte[30]));
+            assertEquals(60, bar.getProgress());
+        } finally {
+            bar.end();
+        }
+    }
+
+    @Test
+    public void testOutputStreamFlush() throws IOException {
+        ProgressBar bar = bar(1000);
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        try (OutputStream out = new ProgressOutputStream(target, bar, 500)) {
+            out.write(data(100));
+            out.write(1);
+            assertEquals(0, bar.getProgress());
+            out.flush();
+            assertEquals(101, bar.getProgress());
+        } finally {
+            bar.end();
+        }
+        assertEquals(101, target.size());
+    }
+
+    @Test
+    public void testFileTransfer() throws IOException {
+        byte[] data = data(3 * 1024 * 1024 + 17);
+        Path source = Files.createTempFile("cli-progress", ".in");
+        Path target = Files.createTempFile("cli-progress", ".out");
+        try {
+            Files.write(source, data);
+            ProgressBar bar = new ProgressBar.Builder().setMax(source).claimNoOuts().build();
+            assertEquals(data.length, bar.getMaxLong());
+            bar.begin(new PrintStream(new ByteArrayOutputStream()));
+            try (InputStream in = new ProgressInputStream(new FileInputStream(source.toFile()), bar);
+                 OutputStream out = new FileOutputStream(target.toFile())) {
+                assertEquals(data.length, ((ProgressInputStream) in).transferTo(out));
+                assertEquals(data.length, bar.getProgress());
+                //position of the stream moved
+                assertEquals(-1, in.read());
+            } finally {
+                bar.end();
+            }
+            assertArrayEquals(data, Files.readAllBytes(target));
+        } finally {
+            Files.delete(source);
+            Files.delete(target);
+        }
+    }
+
+    @Test
+    public void testChannels() throws IOException {
+        byte[] data = data(100_000);
+        File target = File.createTempFile("cli-progress", ".out");
+        try {
+            ProgressBar bar = bar(data.length);
+            try (ProgressReadableChannel in = new ProgressReadableChannel(
+                    Channels.newChannel(new ByteArrayInputStream(data)), bar);
+                 FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+                //transferred to a file channel by transferFrom
+                assertEquals(data.length, in.transferTo(out));
+                assertEquals(data.length, bar.getProgress());
+            } finally {
+                bar.end();
+            }
+            assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+
+            ProgressBar fileBar;
+            try (FileChannel in = FileChannel.open(target.toPath())) {
+                in.position(1000);
+                fileBar = new ProgressBar.Builder().setMax(in).claimNoOuts().build();
+            }
+            assertEquals(data.length - 1000, fileBar.getMaxLong());
+
+            ProgressBar writeBar = bar(data.length);
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            try (ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(data, 10, data.length - 10));
+                 ProgressWritableChannel out = new ProgressWritableChannel(Channels.newChannel(copy), writeBar)) {
+                out.write(ByteBuffer.wrap(data, 0, 10));
+                assertEquals(data.length - 10, out.transferFrom(in));
+                assertEquals(data.length, writeBar.getProgress());
+            } finally {
+                writeBar.end();
+            }
+            assertEquals(data.length, copy.size());
+        } finally {
+            assertTrue(target.delete());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.tomaslanger.cli.progress;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for progress tree.
+ */
+public class ProgressTreeTest {
+    @Test
+    public void testWeightsRollUp() {
+        ProgressTree tree = new ProgressTree.Builder()
+                .setMax(2)
+                .setHeadless(HeadlessMode.SILENT)
+                .build();
+        tree.begin();
+        ProgressNode root = tree.getRoot();
+
+        //two modules worth one unit each, files of a module worth a third of it
+        ProgressNode first = root.child("first", 3, 1);
+        ProgressNode second = root.child("second", 3, 1);
+        ProgressNode a = first.child("a", 1000, 1);
+        ProgressNode b = first.child("b", 7, 1);
+        ProgressNode c = first.child("c", 1, 1);
+
+        a.add(999);
+        assertEquals("Share is not rounded up until done", 0, first.getProgress());
+        a.increment();
+        b.end();
+        assertEquals(2, first.getProgress());
+        assertEquals(0, root.getProgress());
+        assertEquals(4, tree.getRunning());
+
+        c.end();
+        assertEquals(1, root.getProgress());
+        second.end();
+        assertEquals(2, root.getProgress());
+        assertEquals(2, tree.getRunning());
+
+        tree.end();
+    }
+
+    @Test
+    public void testSetProgressBack() {
+        ProgressTree tree = new ProgressTree.Builder()
+                .setMax(100)
+                .setHeadless(HeadlessMode.SILENT)
+                .build();
+        tree.begin();
+        ProgressNode leaf = tree.getRoot().child("module", 10, 100).child("file", 10);
+
+        leaf.setProgress(8);
+        assertEquals(80, tree.getRoot().getProgress());
+        leaf.setProgress(1);
+        assertEquals(10, tree.getRoot().getProgress());
+
+        tree.end();
+    }
+
+    @Test
+    public void testConcurrentLeaves() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressTree tree = new ProgressTree.Builder()
+                .setMax(8 * 100 * 10)
+                .setFps(100)
+                .build();
+        tree.begin(new PrintStream(bytes));
+        ProgressNode root = tree.getRoot();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            ProgressNode module = root.child("module " + i, 100 * 10);
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 100; j++) {
+                    ProgressNode file = module.child("file " + j, 10);
+                    for (int k = 0; k < 10; k++) {
+                        file.increment();
+                    }
+                    file.end();
+                }
+                module.end();
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8000, root.getProgress());
+        assertEquals(8000, tree.getSnapshot().getProgress());
+        assertEquals(0, tree.getRunning());
+        root.end();
+        assertEquals("Root is not a running node", 0, tree.getRunning());
+        tree.end();
+        assertFalse(bytes.toString(), bytes.toString().contains("(-1 running)"));
+    }
+
+    @Test
+    public void testHeadlessSummary() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressTree tree = new ProgressTree.Builder()
+                .setMax(4)
+                .setName("build")
+                .setHeadless(HeadlessMode.SUMMARY)
+                .build();
+        tree.begin(new PrintStream(bytes));
+        tree.getRoot().child("compile", 1).end();
+        tree.cancel();
+
+        String out = bytes.toString();
+        assertTrue(out, out.contains("build"));
+        assertTrue(out, out.contains("1/4"));
+    }
+}
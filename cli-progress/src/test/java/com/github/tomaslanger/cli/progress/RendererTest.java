@@ -0,0 +1,89 @@
+package com.github.tomaslanger.cli.progress;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for rendering in background.
+ */
+public class RendererTest {
+    private static final int THREADS = 4;
+    private static final int INCREMENTS = 5000;
+
+    @Test
+    public void testUpdatesFromManyThreads() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ProgressBar pb = new ProgressBar.Builder()
+                .setMax(THREADS * INCREMENTS)
+                .setCharCount(10)
+                .noColors()
+                .setFps(50)
+                .build();
+        pb.begin(new PrintStream(bytes));
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < INCREMENTS; j++) {
+                    pb.increment();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(THREADS * INCREMENTS, pb.getProgress());
+        pb.end();
+        assertEquals("********** 100%", Screen.of(bytes.toString()).lastLine());
+    }
+
+    @Test
+    public void testFailingBarDoesNotStopRendering() throws InterruptedException {
+        AtomicReference<Throwable> reported = new AtomicReference<>();
+        CountDownLatch failed = new CountDownLatch(1);
+        Thread.UncaughtExceptionHandler original = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> {
+            reported.set(e);
+            failed.countDown();
+        });
+        try {
+            ProgressBar failing = new ProgressBar.Builder().setFps(50).build();
+            failing.begin(new PrintStream(new ByteArrayOutputStream()));
+            failing.setProgress(10, () -> {
+                throw new AssertionError("failed to render");
+            });
+            assertTrue("Failure must be reported", failed.await(5, TimeUnit.SECONDS));
+            assertEquals("failed to render", reported.get().getMessage());
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ProgressBar pb = new ProgressBar.Builder().setCharCount(10).noColors().setFps(50).build();
+            pb.begin(new PrintStream(bytes));
+            pb.setProgress(50);
+            long waitUntil = System.currentTimeMillis() + 5000;
+            while (pb.getFramesPainted() == 0 && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(10);
+            }
+            assertTrue("Other bars must still be rendered", pb.getFramesPainted() > 0);
+            assertTrue(bytes.toString(), bytes.toString().contains("*****-----  50%"));
+
+            pb.end();
+            failing.setStatus("recovered");
+            failing.end();
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(original);
+        }
+    }
+}
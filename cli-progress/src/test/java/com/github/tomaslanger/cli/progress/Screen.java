@@ -0,0 +1,174 @@
+package com.github.tomaslanger.cli.progress;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal terminal for tests - replays printed text with cursor movement and erasing, so tests can check what is
+ * visible instead of which bytes were written. Colors and other unknown escape sequences are ignored.
+ */
+final class Screen {
+    private final List<StringBuilder> lines = new ArrayList<>();
+    private int row;
+    private int column;
+    private int savedRow;
+    private int savedColumn;
+
+    /**
+     * Replay printed text.
+     *
+     * @param printed text written to the terminal
+     * @return screen with the text replayed
+     */
+    static Screen of(final String printed) {
+        Screen screen = new Screen();
+        screen.print(printed);
+        return screen;
+    }
+
+    void print(final String printed) {
+        int i = 0;
+        while (i < printed.length()) {
+            char c = printed.charAt(i++);
+            if (c == '\u001B') {
+                i = escape(printed, i);
+            } else if (c == '\r') {
+                column = 0;
+            } else if (c == '\n') {
+                row++;
+                column = 0;
+            } else {
+                put(c);
+            }
+        }
+    }
+
+    /**
+     * Visible text of a line, trailing spaces removed.
+     *
+     * @param index line from the top
+     * @return text of the line
+     */
+    String line(final int index) {
+        if (index >= lines.size()) {
+            return "";
+        }
+        int end = lines.get(index).length();
+        while (end > 0 && lines.get(index).charAt(end - 1) == ' ') {
+            end--;
+        }
+        return lines.get(index).substring(0, end);
+    }
+
+    /**
+     * Visible text of the last line that is not empty.
+     *
+     * @return text of the line, empty if nothing is visible
+     */
+    String lastLine() {
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            String line = line(i);
+            if (!line.isEmpty()) {
+                return line;
+            }
+        }
+        return "";
+    }
+
+    int getRow() {
+        return row;
+    }
+
+    private int escape(final String printed, final int start) {
+        if (start >= printed.length()) {
+            return start;
+        }
+        char kind = printed.charAt(start);
+        if (kind == '7') {
+            savedRow = row;
+            savedColumn = column;
+            return start + 1;
+        }
+        if (kind == '8') {
+            row = savedRow;
+            column = savedColumn;
+            return start + 1;
+        }
+        if (kind != '[') {
+            return start + 1;
+        }
+
+        int i = start + 1;
+        //private modes (such as auto wrap) start with '?'
+        boolean isPrivate = i < printed.length() && printed.charAt(i) == '?';
+        if (isPrivate) {
+            i++;
+        }
+        int from = i;
+        while (i < printed.length() && (Character.isDigit(printed.charAt(i)) || printed.charAt(i) == ';')) {
+            i++;
+        }
+        String parameter = printed.substring(from, i);
+        if (isPrivate) {
+            return i + 1;
+        }
+        int n = (parameter.isEmpty() || parameter.contains(";")) ? -1 : Integer.parseInt(parameter);
+        char command = printed.charAt(i);
+        switch (command) {
+            case 'A':
+                row = Math.max(0, row - Math.max(1, n));
+                break;
+            case 'B':
+                row += Math.max(1, n);
+                break;
+            case 'C':
+                column += Math.max(1, n);
+                break;
+            case 'D':
+                column = Math.max(0, column - Math.max(1, n));
+                break;
+            case 'G':
+                column = Math.max(1, n) - 1;
+                break;
+            case 'K':
+                erase(n);
+                break;
+            default:
+                //colors, scroll region and others do not change text
+        }
+        return i + 1;
+    }
+
+    private void erase(final int mode) {
+        StringBuilder line = line();
+        if (mode == 2) {
+            line.setLength(0);
+        } else if (mode == 1) {
+            for (int i = 0; i <= column && i < line.length(); i++) {
+                line.setCharAt(i, ' ');
+            }
+        } else if (line.length() > column) {
+            line.setLength(column);
+        }
+    }
+
+    private void put(final char c) {
+        StringBuilder line = line();
+        while (line.length() < column) {
+            line.append(' ');
+        }
+        if (line.length() == column) {
+            line.append(c);
+        } else {
+            line.setCharAt(column, c);
+        }
+        column++;
+    }
+
+    private StringBuilder line() {
+        while (lines.size() <= row) {
+            lines.add(new StringBuilder());
+        }
+        return lines.get(row);
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.tomaslanger.cli.progress;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for replacement of outputs.
+ */
+public class StreamHandlerTest {
+    @Test
+    public void testCaptureAfterLiveOutputNotReplaced() {
+        PrintStream original = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true));
+        try {
+            //live output of a bar that claims no outputs
+            StreamHandler.Replace live = StreamHandler.replace(false, false, () -> { }, () -> { }, out -> { });
+            assertEquals(StreamHandler.Replace.NOT_REPLACED, live);
+            assertNull(StreamHandler.getLiveOutput());
+            StreamHandler.replaceBack(live);
+
+            StreamHandler.Replace captured = StreamHandler.replace(true, true, out -> { });
+            assertEquals(StreamHandler.Replace.DONE, captured);
+            assertNull(StreamHandler.getLiveOutput());
+            System.out.print("captured line");
+            assertEquals(0, bytes.size());
+            StreamHandler.replaceBack(captured);
+
+            assertTrue(bytes.toString(), bytes.toString().startsWith("captured line"));
+        } finally {
+            System.setOut(original);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.github.tomaslanger.cli.progress;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for tracking of tasks and futures.
+ */
+public class TaskProgressTest {
+    @Test
+    public void testExecutor() throws Exception {
+        ProgressBar bar = new ProgressBar.Builder().setMax(101).setFps(20).claimNoOuts().build();
+        ProgressExecutorService executor = new ProgressExecutorService(Executors.newFixedThreadPool(4), bar);
+        TaskProgress progress = executor.getProgress();
+        CountDownLatch block = new CountDownLatch(1);
+        bar.begin(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            for (int i = 0; i < 100; i++) {
+                int task = i;
+                executor.submit(() -> {
+                    if (task % 10 == 0) {
+                        throw new IllegalStateException("Task " + task);
+                    }
+                });
+            }
+            executor.execute(() -> { });
+            //wait for the tasks above
+            executor.submit(() -> { }).get();
+            Future<?> blocked = executor.submit(() -> {
+                block.await();
+                return null;
+            });
+            blocked.cancel(false);
+            block.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+            assertEquals(103, progress.getSubmitted());
+            assertEquals(0, progress.getRunning());
+            assertEquals(92, progress.getCompleted());
+            assertEquals(10, progress.getFailed());
+            assertEquals(1, progress.getCancelled());
+            assertEquals(103, progress.getFinished());
+            assertEquals(101, bar.getProgress());
+            assertEquals("10 failed, 1 cancelled", progress.getStatus());
+        } finally {
+            bar.end();
+        }
+    }
+
+    @Test
+    public void testRejectedTasksAreFailed() {
+        ExecutorService delegate = Executors.newSingleThreadExecutor();
+        ProgressExecutorService executor = new ProgressExecutorService(delegate, new TaskProgress());
+        TaskProgress progress = executor.getProgress();
+        delegate.shutdown();
+
+        try {
+            executor.submit(() -> { });
+            fail("Task must be rejected by the executor that is shut down");
+        } catch (RejectedExecutionException expected) {
+            //counted below
+        }
+        try {
+            executor.execute(() -> { });
+            fail("Task must be rejected by the executor that is shut down");
+        } catch (RejectedExecutionException expected) {
+            //counted below
+        }
+
+        assertEquals(2, progress.getSubmitted());
+        assertEquals(2, progress.getFailed());
+        assertEquals(2, progress.getFinished());
+    }
+
+    @Test
+    public void testFutures() {
+        TaskProgress progress = new TaskProgress();
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(new CompletableFuture<String>());
+        }
+        CompletableFuture<Void> all = progress.trackAll(futures);
+
+        futures.get(0).complete(null);
+        futures.get(1).completeExceptionally(new IllegalStateException());
+        futures.get(2).cancel(false);
+        assertEquals(10, progress.getSubmitted());
+        assertEquals(1, progress.getCompleted());
+        assertEquals(1, progress.getFailed());
+        assertEquals(1, progress.getCancelled());
+
+        futures.forEach(future -> future.complete(null));
+        assertTrue(all.isDone());
+        assertEquals(8, progress.getCompleted());
+    }
+
+    @Test
+    public void testMasterDetailGroup() throws InterruptedException {
+        ProgressBarMasterDetail bar = new ProgressBarMasterDetail.Builder()
+                .setMasterPbBuilder(new ProgressBar.Builder().setMax(4))
+                .setChildPbBuilder(new ProgressBar.Builder())
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TaskProgress progress = new TaskProgress();
+        bar.begin(new PrintStream(out));
+        try {
+            List<CompletableFuture<?>> group = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                int task = i;
+                group.add(CompletableFuture.runAsync(() -> {
+                    if (task == 3) {
+                        throw new IllegalStateException();
+                    }
+                }));
+            }
+            progress.awaitGroup(bar, "Group", group);
+        } finally {
+            bar.end();
+        }
+        assertEquals(4, progress.getFinished());
+        assertEquals(1, progress.getFailed());
+    }
+
+    @Test
+    public void testParallelGroups() throws Exception {
+        ProgressBarMasterDetail bar = new ProgressBarMasterDetail.Builder()
+                .setMasterPbBuilder(new ProgressBar.Builder().setMax(8))
+                .setChildPbBuilder(new ProgressBar.Builder())
+                .setParallelTasks(true)
+                .setFps(50)
+                .build();
+        TaskProgress progress = new TaskProgress();
+        bar.begin(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            List<CompletableFuture<?>> first = new ArrayList<>();
+            List<CompletableFuture<?>> second = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                first.add(new CompletableFuture<String>());
+                second.add(new CompletableFuture<String>());
+            }
+            //both groups are in progress at the same time
+            CompletableFuture<Void> firstDone = progress.trackGroup(bar, "First", first);
+            CompletableFuture<Void> secondDone = progress.trackGroup(bar, "Second", second);
+            first.get(0).complete(null);
+            second.get(0).completeExceptionally(new IllegalStateException());
+            assertEquals(2, bar.getSnapshot().getProgress());
+
+            first.forEach(future -> future.complete(null));
+            second.forEach(future -> future.complete(null));
+            firstDone.get(10, TimeUnit.SECONDS);
+            secondDone.get(10, TimeUnit.SECONDS);
+            assertEquals(8, bar.getSnapshot().getProgress());
+        } finally {
+            bar.end();
+        }
+        assertEquals(8, progress.getFinished());
+        assertEquals(1, progress.getFailed());
+    }
+
+    @Test
+    public void testAwaitGroupWithParallelTasks() throws InterruptedException {
+        ProgressBarMasterDetail bar = new ProgressBarMasterDetail.Builder()
+                .setMasterPbBuilder(new ProgressBar.Builder().setMax(4))
+                .setChildPbBuilder(new ProgressBar.Builder())
+                .setParallelTasks(true)
+                .build();
+        TaskProgress progress = new TaskProgress();
+        bar.begin(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            List<CompletableFuture<?>> group = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                group.add(CompletableFuture.runAsync(() -> { }));
+            }
+            progress.awaitGroup(bar, "Group", group);
+            assertEquals(4, bar.getSnapshot().getProgress());
+        } finally {
+            bar.end();
+        }
+        assertEquals(4, progress.getCompleted());
+    }
+}
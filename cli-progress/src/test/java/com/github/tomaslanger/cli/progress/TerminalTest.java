@@ -0,0 +1,138 @@
+package com.github.tomaslanger.cli.progress;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests for terminal detection.
+ */
+public class TerminalTest {
+    @Test
+    public void testRedirectedOutputIsNotTty() throws IOException {
+        assumeTrue(new File("/bin/sh").exists());
+
+        File file = File.createTempFile("terminal", ".txt");
+        try {
+            assertEquals(0, Terminal.ttys(ProcessBuilder.Redirect.to(file), ProcessBuilder.Redirect.to(file)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testPipedOutputIsNotTerminal() throws Exception {
+        assumeTrue(new File("/bin/sh").exists());
+
+        assertEquals("false", runProbe(javaCommand()));
+    }
+
+    @Test
+    public void testRedirectedInputWithTerminalOutput() throws Exception {
+        assumeTrue(new File("/bin/sh").exists() && new File("/usr/bin/script").exists());
+
+        //script runs the command with a pseudo terminal as its output, input is redirected from /dev/null
+        StringBuilder command = new StringBuilder();
+        for (final String part : javaCommand()) {
+            command.append('\'').append(part).append("' ");
+        }
+        command.append("< /dev/null");
+        assertEquals("true", runProbe("/usr/bin/script", "-qec", command.toString(), "/dev/null"));
+    }
+
+    @Test
+    public void testScrollRegionResetOnExit() throws Exception {
+        assumeTrue(new File("/bin/sh").exists() && new File("/usr/bin/script").exists());
+
+        StringBuilder command = new StringBuilder();
+        for (final String part : javaCommand(PinnedProbe.class, "-Dcliprogress.terminalRows=20")) {
+            command.append('\'').append(part).append("' ");
+        }
+        Process process = new ProcessBuilder("/usr/bin/script", "-qec", command.toString(), "/dev/null")
+                .redirectInput(new File("/dev/null"))
+                .redirectErrorStream(true)
+                .start();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream in = process.getInputStream()) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                output.write(buffer, 0, read);
+            }
+        }
+        process.waitFor(30, TimeUnit.SECONDS);
+
+        String printed = output.toString();
+        assumeTrue("Bar not pinned (no cursor commands)", printed.contains("\u001B[1;19r"));
+        int reset = printed.lastIndexOf("\u001B[r");
+        assertTrue("Scroll region must be reset: " + printed.replace("\u001B", "ESC"), reset > 0);
+        assertTrue(printed.replace("\u001B", "ESC"), printed.startsWith("\u001B[20;1H", reset + 3));
+    }
+
+    private static String[] javaCommand() {
+        return javaCommand(Probe.class);
+    }
+
+    private static String[] javaCommand(final Class<?> mainClass, final String... properties) {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(Arrays.asList(properties));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+
+        return command.toArray(new String[0]);
+    }
+
+    private static String runProbe(final String... command) throws Exception {
+        Process process = new ProcessBuilder(command)
+                .redirectInput(new File("/dev/null"))
+                .redirectErrorStream(true)
+                .start();
+        String line;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            line = reader.readLine();
+        }
+        process.waitFor(30, TimeUnit.SECONDS);
+
+        return (null == line) ? null : line.trim();
+    }
+
+    /**
+     * Prints whether standard output is detected as a terminal.
+     */
+    public static final class Probe {
+        public static void main(final String[] args) {
+            System.out.println(Terminal.isTerminal());
+        }
+    }
+
+    /**
+     * Pins a bar with live output to the bottom of terminal and exits without ending it.
+     */
+    public static final class PinnedProbe {
+        public static void main(final String[] args) {
+            ProgressBar pb = new ProgressBar.Builder()
+                    .setLiveOutput(true)
+                    .setStatusLocation(StatusLoc.SAME_LINE)
+                    .setHeadless(HeadlessMode.NEVER)
+                    .build();
+            pb.begin();
+            pb.setProgress(50, "Half way");
+            System.exit(0);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.tomaslanger.cli.progress;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for capture of outputs per thread.
+ */
+public class ThreadCaptureTest {
+    @Test
+    public void testKeepsOrderOfWrites() throws InterruptedException {
+        StringBuilder merged = new StringBuilder();
+        ThreadCapture capture = new ThreadCapture((isErr, bytes, offset, length) ->
+                merged.append(isErr ? "E:" : "O:").append(new String(bytes, offset, length)), null, null);
+
+        capture.stdout().print("first ");
+        Thread other = new Thread(() -> capture.stderr().println(42));
+        other.start();
+        other.join();
+        capture.stdout().printf("%s", "third");
+        capture.merge();
+
+        assertEquals("O:first E:42" + System.lineSeparator() + "O:third", merged.toString());
+        assertEquals(("first 42" + System.lineSeparator() + "third").length(), capture.size());
+    }
+
+    @Test
+    public void testCapturedBytesOfFinishedThreadsAreKept() throws InterruptedException {
+        ThreadCapture capture = new ThreadCapture((isErr, bytes, offset, length) -> { }, null, null);
+
+        Thread writer = new Thread(() -> capture.stdout().print("0123456789"));
+        writer.start();
+        writer.join();
+        assertEquals(10, capture.size());
+
+        //first merge takes the records, second removes the buffer of the finished thread
+        capture.merge();
+        capture.merge();
+        assertEquals(10, capture.size());
+
+        capture.stdout().print("abc");
+        capture.merge();
+        assertEquals(13, capture.size());
+    }
+
+    @Test
+    public void testLinesOfManyThreads() throws InterruptedException {
+        ByteArrayOutputStream merged = new ByteArrayOutputStream();
+        ThreadCapture capture = new ThreadCapture((isErr, bytes, offset, length) -> merged.write(bytes, offset, length),
+                                                  null, null);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            String prefix = "thread " + t + " line ";
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    capture.stdout().println(prefix + i);
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        capture.merge();
+
+        String[] lines = merged.toString().split(System.lineSeparator());
+        assertEquals(8000, lines.length);
+        //lines of each thread are whole and in order
+        int[] nextLine = new int[threads.length];
+        for (final String line : lines) {
+            String[] parts = line.split(" ");
+            int thread = Integer.parseInt(parts[1]);
+            assertEquals(line, nextLine[thread]++, Integer.parseInt(parts[3]));
+        }
+    }
+
+    @Test
+    public void testInterleavedWritesAreReplayedInOrder() throws InterruptedException {
+        final int threads = 8;
+        final int lines = 2000;
+        List<String> merged = new ArrayList<>();
+        ThreadCapture capture = new ThreadCapture((isErr, bytes, offset, length) -> {
+            for (String line : new String(bytes, offset, length).split("\n")) {
+                merged.add(line);
+            }
+        }, null, null);
+        //threads take turns, so order of stamps is the order of writes; buffers get full and are merged by writers
+        Object turn = new Object();
+        long[] stamp = new long[1];
+        AtomicBoolean done = new AtomicBoolean();
+        Thread merger = new Thread(() -> {
+            while (!done.get()) {
+                capture.merge();
+            }
+        });
+        merger.start();
+
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final boolean isErr = (t % 2 == 1);
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < lines; i++) {
+                    synchronized (turn) {
+                        (isErr ? capture.stderr() : capture.stdout()).print("stamp " + stamp[0]++ + "\n");
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (final Thread writer : writers) {
+            writer.join();
+        }
+        done.set(true);
+        merger.join();
+        capture.merge();
+
+        assertEquals(threads * lines, merged.size());
+        for (int i = 0; i < merged.size(); i++) {
+            assertEquals("stamp " + i, merged.get(i));
+        }
+    }
+
+    @Test
+    public void testSingleBytesAreOneRecord() {
+        List<String> records = new ArrayList<>();
+        ThreadCapture capture = new ThreadCapture((isErr, bytes, offset, length) ->
+                records.add((isErr ? "E:" : "O:") + new String(bytes, offset, length)), null, null);
+
+        for (final char c : "bytes".toCharArray()) {
+            capture.stdout().write(c);
+        }
+        capture.stderr().write('!');
+        capture.stdout().write('\n');
+        capture.merge();
+
+        assertEquals(3, records.size());
+        assertEquals("O:bytes", records.get(0));
+        assertEquals("E:!", records.get(1));
+        assertEquals("O:\n", records.get(2));
+        assertEquals(7, capture.size());
+    }
+}